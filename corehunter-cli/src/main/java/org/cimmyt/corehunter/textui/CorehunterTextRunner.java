@@ -14,6 +14,12 @@
 
 package org.cimmyt.corehunter.textui;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -35,6 +41,8 @@ import org.cimmyt.corehunter.search.CoreSubsetSearch;
 import org.cimmyt.corehunter.search.HeuristicSingleNeighborhood;
 import org.cimmyt.corehunter.search.Neighborhood;
 import org.cimmyt.corehunter.search.RandomSingleNeighborhood;
+import org.cimmyt.corehunter.search.RemoteReplicaPool;
+import org.cimmyt.corehunter.search.RemoteReplicaServer;
 
 /**
  * A simple text based driver for Corehunter.
@@ -58,6 +66,9 @@ public final class CorehunterTextRunner {
     private final int DEFAULT_GEN_NR_OF_CHILDREN = 2;
     private final int DEFAULT_GEN_TOURNAMENT_SIZE = 4;
     private final double DEFAULT_GEN_MUTATION_RATE = 0.4;
+    private final int DEFAULT_GEN_NR_OF_ISLANDS = 1;
+    private final int DEFAULT_GEN_MIGRATION_PERIOD = 10;
+    private final int DEFAULT_GEN_NR_OF_MIGRANTS = 2;
 
     private final int DEFAULT_MERGEREP_NR_OF_REPLICAS = 6;
     private final int DEFAULT_MERGEREP_NR_OF_CHILDREN = 1;
@@ -66,6 +77,7 @@ public final class CorehunterTextRunner {
 
     private final int DEFAULT_MIXREP_NR_OF_TABU_REPLICAS = 2;
     private final int DEFAULT_MIXREP_NR_OF_NON_TABU_REPLICAS = 3;
+    private final int DEFAULT_MIXREP_NR_OF_VNS_REPLICAS = 0;
     private final int DEFAULT_MIXREP_ROUNDS_WITHOUT_TABU = 10;
     private final int DEFAULT_MIXREP_TOURNAMENT_SIZE = 2;
     private final int DEFAULT_MIXREP_NR_OF_TABU_STEPS = 5;
@@ -89,6 +101,7 @@ public final class CorehunterTextRunner {
     private Options mergerepSearchOpts;
     private Options mixrepSearchOpts;
     private Options lrSearchOpts;
+    private Options distributedOpts;
     private Options opts;
 
     private double sampleIntensity;
@@ -103,15 +116,33 @@ public final class CorehunterTextRunner {
     private int sampleMax;
     private int replicas;
     private int mcSteps;
+    private boolean adaptReplicas = false;
+    private int mcBatch = 1;
+
+    // distributed replica search
+    private int nrOfWorkers = 0;
+    private int workerPort = -1;
+    private String coordinatorHost = null;
+    private int coordinatorPort;
+    private InetAddress workerAddress = InetAddress.getLoopbackAddress();
+    private String secret = "";
+
+    // environment variable holding the shared secret of a distributed search
+    private static final String SECRET_VARIABLE = "COREHUNTER_SECRET";
     private boolean sampleSizesSpecified = false;
 
     private int tabuListSize;
     private boolean tabuListSizeSpecified = false;
+    private int candidateListSize = -1;
+    private boolean parallelScan = false;
 
     private int genPopSize;
     private int genNrOfChildren;
     private int genTournamentSize;
     private double genMutationRate;
+    private int genNrOfIslands;
+    private int genMigrationPeriod;
+    private int genNrOfMigrants;
 
     private int mergerepNrOfReplicas;
     private int mergerepNrOfSteps;
@@ -120,6 +151,7 @@ public final class CorehunterTextRunner {
 
     private int mixrepNrOfTabuReplicas;
     private int mixrepNrOfNonTabuReplicas;
+    private int mixrepNrOfVnsReplicas;
     private int mixrepRoundsWithoutTabu;
     private int mixrepNrOfTabuSteps;
     private int mixrepTournamentSize;
@@ -132,6 +164,7 @@ public final class CorehunterTextRunner {
 
     private int lr_l;
     private int lr_r;
+    private boolean lazyGreedy = false;
 
     private String collectionFile;
     private String coresubsetFile;
@@ -140,6 +173,7 @@ public final class CorehunterTextRunner {
     private boolean remcSearch = false;
     private boolean parRemcSearch = false;
     private boolean exhSearch = false;
+    private boolean bnbSearch = false;
     private boolean randSearch = false;
     private boolean tabuSearch = false;
     private boolean localSearch = false;
@@ -169,6 +203,7 @@ public final class CorehunterTextRunner {
         mergerepSearchOpts = new Options();
         mixrepSearchOpts = new Options();
         lrSearchOpts = new Options();
+        distributedOpts = new Options();
 	opts = new Options();
 
 	measureWeights = new HashMap<String,Double>();
@@ -187,6 +222,9 @@ public final class CorehunterTextRunner {
         genNrOfChildren = DEFAULT_GEN_NR_OF_CHILDREN;
         genMutationRate = DEFAULT_GEN_MUTATION_RATE;
         genTournamentSize = DEFAULT_GEN_TOURNAMENT_SIZE;
+        genNrOfIslands = DEFAULT_GEN_NR_OF_ISLANDS;
+        genMigrationPeriod = DEFAULT_GEN_MIGRATION_PERIOD;
+        genNrOfMigrants = DEFAULT_GEN_NR_OF_MIGRANTS;
 
         mergerepNrOfReplicas = DEFAULT_MERGEREP_NR_OF_REPLICAS;
         mergerepNrOfChildren = DEFAULT_MERGEREP_NR_OF_CHILDREN;
@@ -195,6 +233,7 @@ public final class CorehunterTextRunner {
 
         mixrepNrOfTabuReplicas = DEFAULT_MIXREP_NR_OF_TABU_REPLICAS;
         mixrepNrOfNonTabuReplicas = DEFAULT_MIXREP_NR_OF_NON_TABU_REPLICAS;
+        mixrepNrOfVnsReplicas = DEFAULT_MIXREP_NR_OF_VNS_REPLICAS;
         mixrepRoundsWithoutTabu = DEFAULT_MIXREP_ROUNDS_WITHOUT_TABU;
         mixrepTournamentSize = DEFAULT_MIXREP_TOURNAMENT_SIZE;
         mixrepNrOfTabuSteps = DEFAULT_MIXREP_NR_OF_TABU_STEPS;
@@ -335,6 +374,28 @@ public final class CorehunterTextRunner {
 
 	//System.out.println("Collection score: " + pm.calculate(ac.getAccessions()));
 
+        // run as worker process of a distributed replica search
+        if(coordinatorHost != null){
+            RemoteReplicaServer.serve(ac, pm, coordinatorHost, coordinatorPort, secret);
+            System.exit(0);
+        }
+
+        // connect to worker processes, if requested
+        RemoteReplicaPool workers = null;
+        if(nrOfWorkers > 0){
+            if(workerPort < 0 && secret.isEmpty()){
+                // only our own workers have to know it
+                secret = new BigInteger(128, new SecureRandom()).toString(16);
+            }
+            workers = new RemoteReplicaPool(ac, pm, Math.max(workerPort, 0), secret, workerAddress);
+            if(workerPort < 0){
+                startLocalWorkers(args, workers.getPort());
+            } else {
+                System.out.println("Waiting for " + nrOfWorkers + " workers on port " + workers.getPort() + "...");
+            }
+            workers.acceptWorkers(nrOfWorkers);
+        }
+
 	// search for the core subset
 	AccessionCollection core = null;
         if(randSearch){
@@ -343,11 +404,22 @@ public final class CorehunterTextRunner {
         } else if(exhSearch) {
             System.out.println("---\nExhaustive search\n---");
             core = CoreSubsetSearch.exhaustiveSearch(ac, pm, sampleMin, sampleMax);
+        } else if(bnbSearch) {
+            System.out.println("---\nBranch and bound search\n---");
+            core = CoreSubsetSearch.branchAndBoundSearch(ac, pm, sampleMin, sampleMax, runtime);
         } else if(geneticSearch) {
-            System.out.println("---\nGenetic algorithm search\n---");
-            core = CoreSubsetSearch.geneticSearch(ac, pm, sampleMin, sampleMax, runtime,
-                                                  minProg, stuckTime, genPopSize, genNrOfChildren,
-                                                  genTournamentSize, genMutationRate);
+            if(genNrOfIslands > 1){
+                System.out.println("---\nGenetic algorithm search (island model)\n---");
+                core = CoreSubsetSearch.islandGeneticSearch(ac, pm, sampleMin, sampleMax, runtime,
+                                                            minProg, stuckTime, genPopSize, genNrOfChildren,
+                                                            genTournamentSize, genMutationRate, genNrOfIslands,
+                                                            genMigrationPeriod, genNrOfMigrants);
+            } else {
+                System.out.println("---\nGenetic algorithm search\n---");
+                core = CoreSubsetSearch.geneticSearch(ac, pm, sampleMin, sampleMax, runtime,
+                                                      minProg, stuckTime, genPopSize, genNrOfChildren,
+                                                      genTournamentSize, genMutationRate);
+            }
         } else if(lrSearch) {
             // check (l,r) setting
             if(Math.abs(lr_l-lr_r) > 1){
@@ -355,7 +427,7 @@ public final class CorehunterTextRunner {
                                     "in core size slightly different from desired size");
             }
             System.out.println("---\nLR Search (deterministic)\n---");
-            core = CoreSubsetSearch.lrSearch(ac, pm, sampleMin, sampleMax, lr_l, lr_r);
+            core = CoreSubsetSearch.lrSearch(ac, pm, sampleMin, sampleMax, lr_l, lr_r, true, lazyGreedy);
         } else if(semiLrSearch) {
             // check (l,r) setting
             if(Math.abs(lr_l-lr_r) > 1){
@@ -363,13 +435,13 @@ public final class CorehunterTextRunner {
                                     "in core size slightly different from desired size");
             }
             System.out.println("---\nSemi LR Search (semi-deterministic)\n---");
-            core = CoreSubsetSearch.semiLrSearch(ac, pm, sampleMin, sampleMax, lr_l, lr_r);
+            core = CoreSubsetSearch.lrSearch(ac, pm, sampleMin, sampleMax, lr_l, lr_r, false, lazyGreedy);
         } else if(forwardSelection) {
             System.out.println("---\nSequential Forward Selection (deterministic)\n---");
-            core = CoreSubsetSearch.forwardSelection(ac, pm, sampleMin, sampleMax);
+            core = CoreSubsetSearch.lrSearch(ac, pm, sampleMin, sampleMax, 1, 0, true, lazyGreedy);
         } else if(semiForwardSelection) {
             System.out.println("---\nSemi Sequential Forward Selection (semi-deterministic)\n---");
-            core = CoreSubsetSearch.semiForwardSelection(ac, pm, sampleMin, sampleMax);
+            core = CoreSubsetSearch.lrSearch(ac, pm, sampleMin, sampleMax, 1, 0, false, lazyGreedy);
         } else if(backwardSelection) {
             System.out.println("---\nSequential Backward Selection (deterministic)\n---");
             core = CoreSubsetSearch.backwardSelection(ac, pm, sampleMin, sampleMax);
@@ -379,12 +451,20 @@ public final class CorehunterTextRunner {
                 System.out.println("---\nREMC (Replica Exchange Monte Carlo)\n---");
                 nh = new RandomSingleNeighborhood(sampleMin, sampleMax);
                 core = CoreSubsetSearch.remcSearch(ac, nh, pm, sampleMin, sampleMax,
-                                                   runtime, minProg, stuckTime, replicas, minT, maxT, mcSteps);
+                                                   runtime, minProg, stuckTime, replicas, minT, maxT, mcSteps,
+                                                   adaptReplicas, mcBatch);
             } else if(parRemcSearch){
                 System.out.println("---\nParallel REMC (Replica Exchange Monte Carlo)\n---");
                 nh = new RandomSingleNeighborhood(sampleMin, sampleMax);
-                core = CoreSubsetSearch.parRemcSearch(ac, nh, pm, sampleMin, sampleMax,
-                                                   runtime, minProg, stuckTime, replicas, minT, maxT, mcSteps);
+                if(workers == null){
+                    core = CoreSubsetSearch.parRemcSearch(ac, nh, pm, sampleMin, sampleMax,
+                                                       runtime, minProg, stuckTime, replicas, minT, maxT, mcSteps,
+                                                       mcBatch);
+                } else {
+                    core = CoreSubsetSearch.parRemcSearch(ac, pm, sampleMin, sampleMax,
+                                                       runtime, minProg, stuckTime, replicas, minT, maxT, mcSteps,
+                                                       mcBatch, workers);
+                }
             } else if(mergeReplicaSearch){
                 System.out.println("---\nMerge Replica Search\n---");
                 nh = new RandomSingleNeighborhood(sampleMin, sampleMax);
@@ -400,27 +480,29 @@ public final class CorehunterTextRunner {
             } else if(mixedReplicaSearch){
                 System.out.println("---\nParallel Mixed Replica Search\n---");
                 core = CoreSubsetSearch.mixedReplicaSearch(ac, pm, sampleMin, sampleMax, runtime,
-                                            minProg, stuckTime, mixrepNrOfTabuReplicas, mixrepNrOfNonTabuReplicas,
+                                            minProg, stuckTime, mixrepNrOfTabuReplicas, mixrepNrOfNonTabuReplicas, mixrepNrOfVnsReplicas,
                                             mixrepRoundsWithoutTabu, mixrepNrOfTabuSteps, mixrepTournamentSize, tabuListSize,
                                             false, false, mixrepBoostNr, mixrepBoostMinProg, mixrepBoostTimeFactor, mixrepMinBoostTime,
-                                            mixrepMinSimAnTemp, mixrepMaxSimAnTemp);
+                                            mixrepMinSimAnTemp, mixrepMaxSimAnTemp, workers);
             } else if (localSearch) {
                 System.out.println("---\nLocal Search\n---");
                 nh = new RandomSingleNeighborhood(sampleMin, sampleMax);
                 core = CoreSubsetSearch.localSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg, stuckTime);
             } else if (steepestDescentSearch) {
                 System.out.println("---\nSteepest Descent Search\n---");
-                nh = new RandomSingleNeighborhood(sampleMin, sampleMax);
+                RandomSingleNeighborhood randNh = new RandomSingleNeighborhood(sampleMin, sampleMax);
+                randNh.setParallelScan(parallelScan);
+                nh = randNh;
                 core = CoreSubsetSearch.steepestDescentSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg);
             } else if (mstratSearch) {
                 System.out.println("---\nMSTRAT Search (Heuristic Steepest Descent)\n---");
-                nh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+                nh = createHeuristicNeighborhood(ac.size());
                 // MSTRAT = Steepest Descent with heuristic neighborhood
                 core = CoreSubsetSearch.steepestDescentSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg);
             } else if (tabuSearch) {
                 System.out.println("---\nTabu Search\n---");
                 // Tabu Search uses heuristic neighborhood as in MSTRAT
-                nh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+                nh = createHeuristicNeighborhood(ac.size());
                 core = CoreSubsetSearch.tabuSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg, stuckTime, tabuListSize);
             } else {
                 System.err.println("Error: no known search type selected (this should not happen!)");
@@ -437,6 +519,86 @@ public final class CorehunterTextRunner {
 
 	List<String> accessions = new ArrayList<String>(core.getAccessionNames());
 	ds.writeToFile(coresubsetFile, accessions);
+
+        if(workers != null){
+            workers.close();
+        }
+    }
+
+    /**
+     * Start worker processes on this machine, running the same command with
+     * the same dataset and measures, that connect to the given port. The
+     * secret is passed through the environment, not on the command line.
+     */
+    private void startLocalWorkers(String[] args, int port) {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + "/bin/java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(CorehunterTextRunner.class.getName());
+        for(int k=0; k<args.length; k++){
+            if(args[k].equals("-workers") || args[k].equals("-port")
+                    || args[k].equals("-secret") || args[k].equals("-bind")){
+                k++; // skip option value
+            } else {
+                cmd.add(args[k]);
+            }
+        }
+        cmd.add("-worker");
+        InetAddress address = workerAddress.isAnyLocalAddress() ? InetAddress.getLoopbackAddress() : workerAddress;
+        cmd.add(address.getHostAddress() + ":" + port);
+
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.environment().put(SECRET_VARIABLE, secret);
+        pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        System.out.println("Starting " + nrOfWorkers + " local workers...");
+        for(int k=0; k<nrOfWorkers; k++){
+            try {
+                Process worker = pb.start();
+                worker.getOutputStream().close();
+                discardOutput(worker.getInputStream());
+            } catch (IOException ex) {
+                System.err.println("Error starting worker process: " + ex);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Drain (and drop) the progress output of a worker process on a daemon
+     * thread, so that the worker never blocks on a full pipe.
+     */
+    private void discardOutput(final InputStream out) {
+        Thread drain = new Thread(new Runnable() {
+            public void run() {
+                byte buffer[] = new byte[4096];
+                try {
+                    while(out.read(buffer) != -1){
+                        // discard
+                    }
+                } catch (IOException ex) {
+                    // worker has stopped
+                }
+            }
+        }, "worker-output");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    /**
+     * Heuristic neighborhood for Tabu Search and MSTRAT, using candidate lists
+     * of the requested size (or the default size for the collection).
+     */
+    private HeuristicSingleNeighborhood createHeuristicNeighborhood(int collectionSize) {
+        HeuristicSingleNeighborhood nh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+        nh.setParallelScan(parallelScan);
+        if(candidateListSize >= 0){
+            nh.setCandidateListSize(candidateListSize);
+        } else {
+            nh.setCandidateListSize(HeuristicSingleNeighborhood.defaultCandidateListSize(collectionSize));
+        }
+        return nh;
     }
 
     private void setupOptions() {
@@ -450,6 +612,7 @@ public final class CorehunterTextRunner {
 	searchTypeOpts.addOption( new Option("remc", "REMC search (Replica Exchange Monte Carlo)") );
 	searchTypeOpts.addOption( new Option("premc", "parallel REMC search (Replica Exchange Monte Carlo)") );
 	searchTypeOpts.addOption( new Option("exh", "exhaustive search") );
+	searchTypeOpts.addOption( new Option("bnb", "branch and bound search (exact, or with optimality gap if runtime is exceeded)") );
 	searchTypeOpts.addOption( new Option("rand", "random core set") );
 	searchTypeOpts.addOption( new Option("tabu", "tabu search") );
 	searchTypeOpts.addOption( new Option("local", "standard local search") );
@@ -550,12 +713,27 @@ public final class CorehunterTextRunner {
 			      .withDescription("maximum temperature of any replica, " +
 					       "defaults to " + DEFAULT_MAX_TEMPERATURE)
 			      .create("max_t") );
+	remcSearchOpts.addOption( OptionBuilder.withArgName("b")
+			      .hasArg()
+			      .withDescription("score up to b random neighbors at once in each monte carlo replica, " +
+					       "defaults to 1 (one step at a time)")
+			      .create("mc_batch") );
+	remcSearchOpts.addOption( new Option("adapt_replicas", "insert or remove replicas based on measured swap " +
+	                                     "acceptance rates (REMC only, not parallel REMC)") );
 
         // set up the Tabu advanced search option group
         tabuSearchOpts.addOption( OptionBuilder.withArgName("s")
 			      .hasArg()
 			      .withDescription("use tabu list of size s, defaults to 30% of the minimum core size")
 			      .create("list_size") );
+        tabuSearchOpts.addOption( OptionBuilder.withArgName("c")
+			      .hasArg()
+			      .withDescription("only consider c promising accessions for addition in each step, " +
+                                               "0 to consider all; by default, 300 for collections of at least " +
+                                               "5000 accessions and all otherwise (also applies to MSTRAT)")
+			      .create("candidates") );
+        tabuSearchOpts.addOption( new Option("parallel_scan", "evaluate the neighbors of the current core in " +
+                                             "parallel (also applies to Steepest Descent and MSTRAT)") );
 
         // set up the Genetic Algorithm advanced search option group
         genSearchOpts.addOption( OptionBuilder.withArgName("p")
@@ -578,6 +756,21 @@ public final class CorehunterTextRunner {
 			      .withDescription("mutate new children with probability m, defaults to " + DEFAULT_GEN_MUTATION_RATE)
 			      .create("mutation_rate") );
 
+        genSearchOpts.addOption( OptionBuilder.withArgName("i")
+			      .hasArg()
+			      .withDescription("evolve i populations in parallel (island model), defaults to " + DEFAULT_GEN_NR_OF_ISLANDS)
+			      .create("islands") );
+
+        genSearchOpts.addOption( OptionBuilder.withArgName("g")
+			      .hasArg()
+			      .withDescription("with several islands, migrate every g generations, defaults to " + DEFAULT_GEN_MIGRATION_PERIOD)
+			      .create("migration_period") );
+
+        genSearchOpts.addOption( OptionBuilder.withArgName("m")
+			      .hasArg()
+			      .withDescription("with several islands, send the m best cores to the next island, defaults to " + DEFAULT_GEN_NR_OF_MIGRANTS)
+			      .create("migrants") );
+
         // set up the Genetic Replica advanced search option group
         mergerepSearchOpts.addOption( OptionBuilder.withArgName("r")
 			      .hasArg()
@@ -609,6 +802,11 @@ public final class CorehunterTextRunner {
 			      .hasArg()
 			      .withDescription("maintain ntr non-tabu replicas (Local Search, SimAn) during search, defaults to " + DEFAULT_MIXREP_NR_OF_NON_TABU_REPLICAS)
 			      .create("non_tabu_replicas") );
+
+        mixrepSearchOpts.addOption( OptionBuilder.withArgName("vr")
+			      .hasArg()
+			      .withDescription("maintain vr variable neighborhood search replicas (multi-swap moves) during search, defaults to " + DEFAULT_MIXREP_NR_OF_VNS_REPLICAS)
+			      .create("vns_replicas") );
         
         mixrepSearchOpts.addOption( OptionBuilder.withArgName("r")
 			      .hasArg()
@@ -673,6 +871,40 @@ public final class CorehunterTextRunner {
 			      .hasArg()
 			      .withDescription("remove r accessions in each round, defaults to " + DEFAULT_LR_R)
 			      .create("r") );
+        lrSearchOpts.addOption( new Option("lazy_greedy", "only re-evaluate the most promising additions in each " +
+                                           "step, for measures with diminishing returns (SH, CV, PN); other " +
+                                           "measures use the exact scan (also applies to forward selection)") );
+
+        // set up the distributed replica search option group
+        distributedOpts.addOption( OptionBuilder.withArgName("n")
+			      .hasArg()
+			      .withDescription("host the replicas of parallel REMC or mixed replica search in n worker " +
+                                               "processes; unless a port is given, these are started on this machine")
+			      .create("workers") );
+
+        distributedOpts.addOption( OptionBuilder.withArgName("p")
+			      .hasArg()
+			      .withDescription("wait for the workers on port p, instead of starting them; each worker " +
+                                               "is started with the same options and files, plus -worker <host>:p")
+			      .create("port") );
+
+        distributedOpts.addOption( OptionBuilder.withArgName("address")
+			      .hasArg()
+			      .withDescription("listen for the workers on the given local address (e.g. 0.0.0.0 for all " +
+                                               "interfaces) instead of only on the loopback interface; requires a secret")
+			      .create("bind") );
+
+        distributedOpts.addOption( OptionBuilder.withArgName("s")
+			      .hasArg()
+			      .withDescription("shared secret that workers must present to join the search, defaults to " +
+                                               "the environment variable " + SECRET_VARIABLE + "; generated for workers " +
+                                               "started on this machine")
+			      .create("secret") );
+
+        distributedOpts.addOption( OptionBuilder.withArgName("host:port")
+			      .hasArg()
+			      .withDescription("run as worker process for the search at host:port")
+			      .create("worker") );
 
 	// add the option groups into one option collection
 	Iterator i = miscOpts.getOptions().iterator();
@@ -724,6 +956,11 @@ public final class CorehunterTextRunner {
 	while (i.hasNext()) {
 	    opts.addOption((Option)i.next());
 	}
+
+        i = distributedOpts.getOptions().iterator();
+	while (i.hasNext()) {
+	    opts.addOption((Option)i.next());
+	}
     }
 
     private boolean parseOptions(String[] args) {
@@ -854,6 +1091,10 @@ public final class CorehunterTextRunner {
             exhSearch = cl.hasOption("exh");
             if(exhSearch) j++;
 
+            // check for -bnb
+            bnbSearch = cl.hasOption("bnb");
+            if(bnbSearch) j++;
+
             // check for -rand
             randSearch = cl.hasOption("rand");
             if(randSearch) j++;
@@ -946,6 +1187,20 @@ public final class CorehunterTextRunner {
 		}
 	    }
 
+	    // check for mc_batch
+	    if (cl.hasOption("mc_batch")) {
+		try {
+		    mcBatch = Integer.parseInt(cl.getOptionValue("mc_batch"));
+		    if (mcBatch < 1 || mcBatch > 10000) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nmc_batch must be a positive integer in the range [1..10000]");
+		    return false;
+		}
+	    }
+
+	    // check for adapt_replicas
+	    adaptReplicas = cl.hasOption("adapt_replicas");
+
 	    // check for min_t
 	    if (cl.hasOption("min_t")) {
 		try {
@@ -984,6 +1239,20 @@ public final class CorehunterTextRunner {
 		}
 	    }
 
+            // check for candidates
+            if (cl.hasOption("candidates")) {
+		try {
+		    candidateListSize = Integer.parseInt(cl.getOptionValue("candidates"));
+		    if (candidateListSize < 0) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\ncandidates must be a non-negative integer");
+		    return false;
+		}
+	    }
+
+            // check for parallel_scan
+            parallelScan = cl.hasOption("parallel_scan");
+
             // check Genetic Algorithm advanced options
 
             // check for pop_size
@@ -1033,6 +1302,39 @@ public final class CorehunterTextRunner {
 		}
 	    }
 
+            // check for islands
+            if (cl.hasOption("islands")) {
+		try {
+		    genNrOfIslands = Integer.parseInt(cl.getOptionValue("islands"));
+		    if (genNrOfIslands < 1) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nislands must be a positive integer");
+		    return false;
+		}
+	    }
+
+            // check for migration_period
+            if (cl.hasOption("migration_period")) {
+		try {
+		    genMigrationPeriod = Integer.parseInt(cl.getOptionValue("migration_period"));
+		    if (genMigrationPeriod < 1) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nmigration_period must be a positive integer");
+		    return false;
+		}
+	    }
+
+            // check for migrants
+            if (cl.hasOption("migrants")) {
+		try {
+		    genNrOfMigrants = Integer.parseInt(cl.getOptionValue("migrants"));
+		    if (genNrOfMigrants < 0) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nmigrants must be a non-negative integer");
+		    return false;
+		}
+	    }
+
 
 
             // check Genetic Replica Search advanced options
@@ -1070,6 +1372,17 @@ public final class CorehunterTextRunner {
 		}
 	    }
 
+            // check for vns_replicas
+            if (cl.hasOption("vns_replicas")) {
+		try {
+		    mixrepNrOfVnsReplicas = Integer.parseInt(cl.getOptionValue("vns_replicas"));
+		    if (mixrepNrOfVnsReplicas < 0 || mixrepNrOfVnsReplicas > 100) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nvns_replicas must be an integer in the range [0..100]");
+		    return false;
+		}
+	    }
+
             // check for rounds_without_tabu
 	    if (cl.hasOption("rounds_without_tabu")) {
 		try {
@@ -1166,12 +1479,79 @@ public final class CorehunterTextRunner {
 		}
 	    }
 
+            // check for lazy_greedy
+            lazyGreedy = cl.hasOption("lazy_greedy");
+
             // ensure that l and r are not equal
             if(lr_l == lr_r){
                 System.err.println("l and r cannot be equal");
                 return false;
             }
 
+            // check distributed search options
+
+            // check for workers
+            if (cl.hasOption("workers")) {
+		try {
+		    nrOfWorkers = Integer.parseInt(cl.getOptionValue("workers"));
+		    if (nrOfWorkers < 1) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nworkers must be a postive integer >= 1");
+		    return false;
+		}
+                if (!parRemcSearch && !mixedReplicaSearch) {
+		    System.err.println("\nworkers can only be used with parallel REMC or mixed replica search");
+		    return false;
+                }
+	    }
+
+            // check for port
+            if (cl.hasOption("port")) {
+		try {
+		    workerPort = Integer.parseInt(cl.getOptionValue("port"));
+		    if (workerPort < 1 || workerPort > 65535) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nport must be an integer in the range [1..65535]");
+		    return false;
+		}
+	    }
+
+            // check for worker
+            if (cl.hasOption("worker")) {
+                String address = cl.getOptionValue("worker");
+                int sep = address.lastIndexOf(':');
+		try {
+                    if (sep <= 0) throw new NumberFormatException();
+		    coordinatorPort = Integer.parseInt(address.substring(sep+1));
+		    if (coordinatorPort < 1 || coordinatorPort > 65535) throw new NumberFormatException();
+		} catch(NumberFormatException nfe) {
+		    System.err.println("\nworker must be given as host:port");
+		    return false;
+		}
+                coordinatorHost = address.substring(0, sep);
+	    }
+
+            // check for secret
+            if (cl.hasOption("secret")) {
+                secret = cl.getOptionValue("secret");
+            } else if (System.getenv(SECRET_VARIABLE) != null) {
+                secret = System.getenv(SECRET_VARIABLE);
+            }
+
+            // check for bind address
+            if (cl.hasOption("bind")) {
+                try {
+                    workerAddress = InetAddress.getByName(cl.getOptionValue("bind"));
+                } catch(UnknownHostException uhe) {
+		    System.err.println("\nbind must be a local address");
+		    return false;
+                }
+                if (!workerAddress.isLoopbackAddress() && secret.isEmpty()) {
+		    System.err.println("\nbind to a non-loopback address requires a secret");
+		    return false;
+                }
+            }
+
 	     	    
 	} catch (ParseException e) {
 	    System.err.println("");
@@ -1217,6 +1597,8 @@ public final class CorehunterTextRunner {
 	System.out.println("");
         f.printHelp("(semi) LR Search - advanced search options:", lrSearchOpts);
 	System.out.println("");
+        f.printHelp("Distributed replica search options:", distributedOpts);
+	System.out.println("");
 	f.printHelp("misc options:", miscOpts);
 	System.out.println("");
 	System.exit(0);
@@ -35,6 +35,13 @@ public /*final*/ class Accession implements Comparable<Accession> {
     protected List<List<Double>> ssrValues;
 
     protected Double extDistance;
+
+    // sparse view of the non-zero SSR values, built on first use
+    private volatile boolean ssrIndexed = false;
+    private int[] nzMarkers;
+    private int[] nzAlleles;
+    private int[] nzFlatAlleles;
+    private double[] nzValues;
 	
     /**
      * 
@@ -77,12 +84,93 @@ public /*final*/ class Accession implements Comparable<Accession> {
 	ssrIndex = ds.getAccessionIndex(name);
 	ssrValues = ds.getValues(name);
         extDistance = ds.getExtDistance(name);
+        ssrIndexed = false;
     }
 	
     public List<List<Double>> getSSRValues() {
 	return ssrValues;
     }
 
+    /**
+     * Marker index of each non-zero SSR value of this accession. Missing (null)
+     * and zero values are left out, so measures that only accumulate allele
+     * totals can update their state by visiting these entries alone.
+     */
+    public int[] getNonZeroSSRMarkers() {
+	indexSSRValues();
+	return nzMarkers;
+    }
+
+    /**
+     * Allele index (within its marker) of each non-zero SSR value.
+     */
+    public int[] getNonZeroSSRAlleles() {
+	indexSSRValues();
+	return nzAlleles;
+    }
+
+    /**
+     * Allele index (over all markers, as used by getAlleleTotals) of each
+     * non-zero SSR value.
+     */
+    public int[] getNonZeroSSRFlatAlleles() {
+	indexSSRValues();
+	return nzFlatAlleles;
+    }
+
+    /**
+     * The non-zero SSR values themselves, in marker and allele order.
+     */
+    public double[] getNonZeroSSRValues() {
+	indexSSRValues();
+	return nzValues;
+    }
+
+    private void indexSSRValues() {
+	if (ssrIndexed) {
+	    return;
+	}
+	synchronized(this) {
+	    if (ssrIndexed) {
+		return;
+	    }
+
+	    int cnt = 0;
+	    for (List<Double> alleles : ssrValues) {
+		for (Double val : alleles) {
+		    if (val != null && val.doubleValue() != 0.0) {
+			cnt++;
+		    }
+		}
+	    }
+
+	    nzMarkers = new int[cnt];
+	    nzAlleles = new int[cnt];
+	    nzFlatAlleles = new int[cnt];
+	    nzValues = new double[cnt];
+
+	    int e = 0;
+	    int flat = 0;
+	    int m = 0;
+	    for (List<Double> alleles : ssrValues) {
+		int j = 0;
+		for (Double val : alleles) {
+		    if (val != null && val.doubleValue() != 0.0) {
+			nzMarkers[e] = m;
+			nzAlleles[e] = j;
+			nzFlatAlleles[e] = flat;
+			nzValues[e] = val.doubleValue();
+			e++;
+		    }
+		    j++;
+		    flat++;
+		}
+		m++;
+	    }
+	    ssrIndexed = true;
+	}
+    }
+
     public Double getExtDistance(){
         return extDistance;
     }
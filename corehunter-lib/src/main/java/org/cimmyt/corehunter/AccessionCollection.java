@@ -113,5 +113,19 @@ public class AccessionCollection {
         }
         return subset;
     }
-}
 
+    /**
+     * Get a subset of this accession collection, given an array of indices
+     * in the range [1..col_size]
+     *
+     * @param indices
+     * @return
+     */
+    public AccessionCollection subset(int[] indices){
+        AccessionCollection subset = new AccessionCollection();
+        for(int i : indices){
+            subset.add(accessions.get(i-1));
+        }
+        return subset;
+    }
+}
@@ -0,0 +1,87 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.measures;
+
+/**
+ * Scratch space for scoring a neighbor of a cached core: the changes of the
+ * allele totals (values) and of the nr of values per allele (counts) that the
+ * neighbor makes, indexed by flat allele index. Only the touched alleles are
+ * cleared after use, so scoring a neighbor takes time proportional to the nr
+ * of values of the added and removed accessions, without allocation. Each
+ * thread has its own instance, as neighbors of the same core may be scored
+ * concurrently.
+ *
+ * @author hermandebeukelaer
+ */
+final class AlleleDeltas {
+
+    private static final ThreadLocal<AlleleDeltas> scratch = new ThreadLocal<AlleleDeltas>() {
+	protected AlleleDeltas initialValue() {
+	    return new AlleleDeltas();
+	}
+    };
+
+    double values[];
+    int counts[];
+
+    private boolean touched[];
+    private int indices[];
+    private int nrOfTouched;
+
+    private AlleleDeltas() {
+	values = new double[0];
+	counts = new int[0];
+	touched = new boolean[0];
+	indices = new int[0];
+	nrOfTouched = 0;
+    }
+
+    /**
+     * Cleared scratch space of this thread, for alleles 0..alleleCnt-1.
+     */
+    static AlleleDeltas get(int alleleCnt) {
+	AlleleDeltas d = scratch.get();
+	if (d.values.length < alleleCnt) {
+	    d.values = new double[alleleCnt];
+	    d.counts = new int[alleleCnt];
+	    d.touched = new boolean[alleleCnt];
+	    d.indices = new int[alleleCnt];
+	}
+	return d;
+    }
+
+    /**
+     * Register that allele i is changed, before its values or counts are.
+     */
+    void touch(int i) {
+	if (!touched[i]) {
+	    touched[i] = true;
+	    indices[nrOfTouched++] = i;
+	}
+    }
+
+    /**
+     * Reset the touched alleles, so that the scratch space can be reused.
+     */
+    void clear() {
+	for (int k=0; k<nrOfTouched; k++) {
+	    int i = indices[k];
+	    touched[i] = false;
+	    values[i] = 0.0;
+	    counts[i] = 0;
+	}
+	nrOfTouched = 0;
+    }
+}
@@ -17,6 +17,7 @@ package org.cimmyt.corehunter.measures;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.cimmyt.corehunter.Accession;
 
@@ -28,7 +29,7 @@ import org.cimmyt.corehunter.Accession;
  */
 class CachedResult {
     private static final String baseId = "id:";
-    private static int nextId = 0;
+    private static final AtomicInteger nextId = new AtomicInteger(0);
     protected List<Accession> pAccessions;
 
 
@@ -41,6 +42,14 @@ class CachedResult {
 	pAccessions.addAll(accessions);
     }
 
+    /**
+     * Update the cached core with an explicit difference.
+     */
+    public void updateAccessions(List<Accession> added, List<Accession> removed) {
+	pAccessions.removeAll(removed);
+	pAccessions.addAll(added);
+    }
+
     public List<Accession> getAccessions() {
 	return pAccessions;
     }
@@ -72,9 +81,8 @@ class CachedResult {
     }
 
     public static String getUniqueId() {
-	String id = baseId + nextId;
-	nextId++;
-	return id;
+	// ids may be requested from several search threads at once
+	return baseId + nextId.getAndIncrement();
     }
 }
 
@@ -17,6 +17,7 @@ package org.cimmyt.corehunter.measures;
 import java.util.List;
 import java.util.ListIterator;
 import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.search.ClusterCentroid;
 
 /**
  * <<Class summary>>
@@ -72,5 +73,17 @@ public final class CavalliSforzaEdwardsDistance extends DistanceMeasure {
 	setMemoizedValue(a1.getId(), a2.getId(), value);
 	return value;
     }
+
+    public double calculate(ClusterCentroid c1, ClusterCentroid c2) {
+	double sumSqDiff = 0;
+	int n = Math.min(c1.getNrOfAlleles(), c2.getNrOfAlleles());
+	for (int i = 0; i < n; i++) {
+	    if (c1.isKnown(i) && c2.isKnown(i)) {
+		double diff = Math.sqrt(c1.getFrequency(i)) - Math.sqrt(c2.getFrequency(i));
+		sumSqDiff += diff * diff;
+	    }
+	}
+	return 1.0/(Math.sqrt(2.0 * c1.getNrOfMarkers()))*Math.sqrt(sumSqDiff);
+    }
 	
 }
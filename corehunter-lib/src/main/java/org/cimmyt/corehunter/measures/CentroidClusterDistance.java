@@ -14,6 +14,7 @@
 
 package org.cimmyt.corehunter.measures;
 
+import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.search.AccessionCluster;
 
 /**
@@ -36,4 +37,26 @@ public class CentroidClusterDistance extends ClusterDistanceMeasure {
         return true;
     }
 
+    /**
+     * Centroid updates hold for squared Euclidean distances, so squared
+     * distances are used (exact for Modified Rogers, which is Euclidean up
+     * to a constant factor).
+     */
+    @Override
+    public double initialDistance(Accession a, Accession b){
+        double d = dm.calculate(a, b);
+        return d * d;
+    }
+
+    @Override
+    public double mergedDistance(double dik, double djk, double dij, int ni, int nj, int nk){
+        double nij = ni + nj;
+        return (ni * dik + nj * djk) / nij - (ni * nj * dij) / (nij * nij);
+    }
+
+    @Override
+    public double toDistance(double d){
+        return Math.sqrt(Math.max(0.0, d));
+    }
+
 }
@@ -14,6 +14,8 @@
 
 package org.cimmyt.corehunter.measures;
 
+import org.cimmyt.corehunter.Accession;
+
 import org.cimmyt.corehunter.search.AccessionCluster;
 
 /**
@@ -31,6 +33,10 @@ public abstract class ClusterDistanceMeasure {
         this.dm = dm;
     }
     
+    public DistanceMeasure getDistanceMeasure(){
+        return dm;
+    }
+
     /**
      * Calculate distance between two clusters of accessions.
      *
@@ -44,4 +50,61 @@ public abstract class ClusterDistanceMeasure {
         return false;
     }
 
+    /**
+     * Called before clust2 is merged into clust1, so that distances cached
+     * for both clusters can be combined. By default nothing is cached.
+     *
+     * @param clust1
+     * @param clust2
+     */
+    public void merged(AccessionCluster clust1, AccessionCluster clust2){
+    }
+
+    /**
+     * Drop all cached cluster distances.
+     */
+    public void clear(){
+    }
+
+    /**
+     * Distance between two single accession clusters, in the form that is
+     * updated by mergedDistance (see toDistance).
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public double initialDistance(Accession a, Accession b){
+        return dm.calculate(a, b);
+    }
+
+    /**
+     * Lance-Williams update: distance between cluster k and the union of
+     * clusters i and j, from the distances dik, djk and dij (all in the form
+     * returned by initialDistance) and the cluster sizes.
+     */
+    public abstract double mergedDistance(double dik, double djk, double dij, int ni, int nj, int nk);
+
+    /**
+     * Convert a distance in the form used by the Lance-Williams updates
+     * back to a cluster distance.
+     *
+     * @param d
+     * @return
+     */
+    public double toDistance(double d){
+        return d;
+    }
+
+    /**
+     * True if merging two clusters never brings the merged cluster closer
+     * to any other cluster than the nearest of both was, which allows
+     * nearest neighbour chain clustering.
+     *
+     * @return
+     */
+    public boolean isReducible(){
+        return false;
+    }
+
 }
@@ -36,6 +36,10 @@ public final class Coverage extends Measure {
 	pn = new ProportionNonInformativeAlleles();
     }
 
+    public boolean hasDiminishingReturns() {
+	return pn.hasDiminishingReturns();
+    }
+
     public double calculate(List<Accession> accessions) {
 	return 1.0 - pn.calculate(accessions);
     }
@@ -43,5 +47,26 @@ public final class Coverage extends Measure {
     public double calculate(List<Accession> accessions, String id) {
 	return 1.0 - pn.calculate(accessions, id);
     }
-}
 
+    public void removeCache(String id) {
+	pn.removeCache(id);
+    }
+
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	return 1.0 - pn.getBound(selected, candidates, coreSize);
+    }
+
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize, String id) {
+	return 1.0 - pn.getBound(selected, candidates, coreSize, id);
+    }
+
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String id) {
+	return 1.0 - pn.calculate(accessions, added, removed, id);
+    }
+
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String id) {
+	return 1.0 - pn.calculateNeighbor(accessions, added, removed, id);
+    }
+}
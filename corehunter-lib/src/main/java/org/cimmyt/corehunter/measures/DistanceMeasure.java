@@ -14,6 +14,7 @@
 
 package org.cimmyt.corehunter.measures;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -21,6 +22,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.search.ClusterCentroid;
 
 /**
  * <<Class summary>>
@@ -34,6 +36,9 @@ public abstract class DistanceMeasure extends Measure {
     //private List<List<Double>> M;
     private double[][] M;
     private Map<String,DistanceCachedResult> cachedResults;
+    // per bound id: largest distance of each accession (by id) to any other
+    // accession given to the first getBound call with that id
+    private Map<String,double[]> boundMaxDistances;
 
     protected static final double MISSING_VAL = -1.0;
 
@@ -66,10 +71,16 @@ public abstract class DistanceMeasure extends Measure {
 	}
 
 	cachedResults = Collections.synchronizedMap(new HashMap<String,DistanceCachedResult>());
+	boundMaxDistances = Collections.synchronizedMap(new HashMap<String,double[]>());
 
         this.type = type;
     }
 
+    public void removeCache(String id) {
+	cachedResults.remove(id);
+	boundMaxDistances.remove(id);
+    }
+
     public double calculate(List<Accession> accessions, String id) {
 	DistanceCachedResult cache = cachedResults.get(id);
 
@@ -81,15 +92,258 @@ public abstract class DistanceMeasure extends Measure {
 	return calculate(accessions, cache);
     }
 
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String id) {
+	DistanceCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return calculate(accessions, id);
+	}
+
+	// accessions shared by the old and new core: the new core minus the
+	// (few) added accessions
+	List<Accession> common = new ArrayList<Accession>(accessions.size());
+	for (Accession a : accessions) {
+	    if (!added.contains(a)) {
+		common.add(a);
+	    }
+	}
+
+	double score = update(cache, added, removed, common);
+	cache.updateAccessions(added, removed);
+
+	return score;
+    }
+
+    /**
+     * Mean distance: the cached total and count are corrected for the pairs
+     * of the added and removed accessions. Minimum distance: the smallest
+     * cached distance that is not entirely accounted for by removed pairs is
+     * compared with the smallest new distance.
+     */
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String id) {
+	DistanceCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return super.calculateNeighbor(accessions, added, removed, id);
+	}
+
+	// accessions shared by the current core and its neighbour
+	List<Accession> common = new ArrayList<Accession>(accessions.size());
+	for (Accession a : accessions) {
+	    if (!removed.contains(a)) {
+		common.add(a);
+	    }
+	}
+
+        if (type == DistanceMeasureType.MEAN_DISTANCE) {
+            double total = cache.getTotal();
+            double count = cache.getCount();
+
+            for (int l=0; l<2; l++) {
+                List<Accession> changed = (l == 0) ? added : removed;
+                double sign = (l == 0) ? 1.0 : -1.0;
+                for(int i=0; i<changed.size(); i++) {
+                    Accession a = changed.get(i);
+                    for(Accession b : common) {
+                        total += sign * calculate(a,b);
+                        count += sign;
+                    }
+                    for(int j=i+1; j<changed.size(); j++) {
+                        total += sign * calculate(a, changed.get(j));
+                        count += sign;
+                    }
+                }
+            }
+
+            return total/count;
+
+        } else {
+            double minAdded = Double.MAX_VALUE;
+            for(int i=0; i<added.size(); i++) {
+                Accession a = added.get(i);
+                for(Accession b : common) {
+                    minAdded = Math.min(minAdded, calculate(a,b));
+                }
+                for(int j=i+1; j<added.size(); j++) {
+                    minAdded = Math.min(minAdded, calculate(a, added.get(j)));
+                }
+            }
+
+            // number of cached occurrences of each distance that disappear
+            Map<Double, Integer> lost = new HashMap<Double, Integer>();
+            for(int i=0; i<removed.size(); i++) {
+                Accession a = removed.get(i);
+                for(Accession b : common) {
+                    countDistance(lost, calculate(a,b));
+                }
+                for(int j=i+1; j<removed.size(); j++) {
+                    countDistance(lost, calculate(a, removed.get(j)));
+                }
+            }
+
+            for(Map.Entry<Double, Integer> entry : cache.getMinFreqTable().entrySet()) {
+                if (entry.getKey() >= minAdded) {
+                    break;
+                }
+                Integer cnt = lost.get(entry.getKey());
+                if (cnt == null || cnt < entry.getValue()) {
+                    return entry.getKey();
+                }
+            }
+            return minAdded;
+        }
+    }
+
+    private static void countDistance(Map<Double, Integer> counts, double dist) {
+        Integer freq = counts.get(dist);
+        counts.put(dist, (freq == null) ? 1 : freq+1);
+    }
+
     public double calculate(List<Accession> accessions) {
 	return calculate(accessions, new DistanceCachedResult(accessions));
     }
 
+    /**
+     * Mean distance: the distances within the selection are fixed; each
+     * candidate adds at most its distances to the selection plus, for pairs
+     * among the candidates, half of (m-1) times its largest distance to
+     * another candidate. The m largest such contributions bound the total.
+     * Minimum distance: adding accessions can only lower the minimum within
+     * the selection; without a selected pair the largest distance is used.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	return getBound(selected, candidates, coreSize, (double[]) null);
+    }
+
+    /**
+     * Same bound, where the largest distance of each accession to another
+     * one is taken over all accessions given to the first call with this
+     * id, and computed only once. This is looser than taking it over the
+     * candidates of each node, but saves O(c^2) distances per node.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize, String id) {
+	double maxDist[];
+	synchronized (boundMaxDistances) {
+	    maxDist = boundMaxDistances.get(id);
+	    if (maxDist == null) {
+		List<Accession> all = new ArrayList<Accession>(selected);
+		all.addAll(candidates);
+		maxDist = maxDistances(all);
+		boundMaxDistances.put(id, maxDist);
+	    }
+	}
+	return getBound(selected, candidates, coreSize, maxDist);
+    }
+
+    // largest distance of each accession (by id) to any other given accession
+    private double[] maxDistances(List<Accession> accessions) {
+	int maxId = 0;
+	for (Accession a : accessions) {
+	    maxId = Math.max(maxId, a.getId());
+	}
+	double maxDist[] = new double[maxId+1];
+	for (int i=0; i<accessions.size()-1; i++) {
+	    Accession a = accessions.get(i);
+	    for (int j=i+1; j<accessions.size(); j++) {
+		Accession b = accessions.get(j);
+		double d = calculate(a, b);
+		maxDist[a.getId()] = Math.max(maxDist[a.getId()], d);
+		maxDist[b.getId()] = Math.max(maxDist[b.getId()], d);
+	    }
+	}
+	return maxDist;
+    }
+
+    // maxDist: precomputed largest distances (by accession id), or null to
+    // compute them over the candidates
+    private double getBound(List<Accession> selected, List<Accession> candidates, int coreSize, double maxDist[]) {
+	int m = coreSize - selected.size();
+	int s = selected.size();
+
+        if (type == DistanceMeasureType.MEAN_DISTANCE) {
+            double fixed = 0.0;
+            for(int i=0; i<s-1; i++) {
+                for(int j=i+1; j<s; j++) {
+                    fixed += calculate(selected.get(i), selected.get(j));
+                }
+            }
+
+            double top = 0.0;
+            if (m > 0) {
+                int c = candidates.size();
+                double g[] = new double[c];
+                for(int i=0; i<c; i++) {
+                    Accession a = candidates.get(i);
+                    double toSelected = 0.0;
+                    for(Accession b : selected) {
+                        toSelected += calculate(a, b);
+                    }
+                    double maxCandDist = 0.0;
+                    if (m > 1) {
+                        if (maxDist != null) {
+                            maxCandDist = maxDist[a.getId()];
+                        } else {
+                            for(int j=0; j<c; j++) {
+                                if (j != i) {
+                                    maxCandDist = Math.max(maxCandDist, calculate(a, candidates.get(j)));
+                                }
+                            }
+                        }
+                    }
+                    g[i] = toSelected + 0.5 * (m-1) * maxCandDist;
+                }
+                top = sumOfLargest(g, m);
+            }
+
+            return (fixed + top) / (0.5 * coreSize * (coreSize-1));
+
+        } else {
+
+            double bound;
+            if (s >= 2) {
+                bound = Double.MAX_VALUE;
+                for(int i=0; i<s-1; i++) {
+                    for(int j=i+1; j<s; j++) {
+                        bound = Math.min(bound, calculate(selected.get(i), selected.get(j)));
+                    }
+                }
+            } else {
+                List<Accession> all = new ArrayList<Accession>(selected);
+                all.addAll(candidates);
+                bound = 0.0;
+                if (maxDist != null) {
+                    for(Accession a : all) {
+                        bound = Math.max(bound, maxDist[a.getId()]);
+                    }
+                } else {
+                    for(int i=0; i<all.size()-1; i++) {
+                        for(int j=i+1; j<all.size(); j++) {
+                            bound = Math.max(bound, calculate(all.get(i), all.get(j)));
+                        }
+                    }
+                }
+            }
+            return bound;
+        }
+    }
+
     public double calculate(List<Accession> accessions, DistanceCachedResult cache) {
         List<Accession> aAccessions = cache.getAddedAccessions(accessions);
         List<Accession> rAccessions = cache.getRemovedAccessions(accessions);
         List<Accession> cAccessions = cache.getCommonAccessions(accessions);
-        
+
+        double score = update(cache, aAccessions, rAccessions, cAccessions);
+
+        // recache our results under this id
+        cache.setAccessions(accessions);
+
+        return score;
+    }
+
+    private double update(DistanceCachedResult cache, List<Accession> aAccessions,
+                          List<Accession> rAccessions, List<Accession> cAccessions) {
         double dist;
         
         if (type == DistanceMeasureType.MEAN_DISTANCE){
@@ -134,7 +388,6 @@ public abstract class DistanceMeasure extends Measure {
             // recache our results under this id
             cache.setTotal(total);
             cache.setCount(count);
-            cache.setAccessions(accessions);
 
             return total/count;
 
@@ -204,9 +457,6 @@ public abstract class DistanceMeasure extends Measure {
                 }
             }
 
-            // recache results
-            cache.setAccessions(accessions);
-
             //System.out.println("Min cache size: " + minFreqTable.size());
             return minFreqTable.firstKey();
 
@@ -235,6 +485,12 @@ public abstract class DistanceMeasure extends Measure {
 	
     public abstract double calculate(Accession a1, Accession a2);
 
+    /**
+     * Distance between two cluster centroids, computed directly from their
+     * allele sums and counts. Centroids are not memoized.
+     */
+    public abstract double calculate(ClusterCentroid c1, ClusterCentroid c2);
+
     protected double getMemoizedValue(int id1, int id2) {
 
 	int a = Math.max(id1, id2);
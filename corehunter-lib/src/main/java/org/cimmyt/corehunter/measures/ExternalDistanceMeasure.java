@@ -50,6 +50,30 @@ public class ExternalDistanceMeasure extends Measure {
         return -1;
     }
 
+    /**
+     * Upper bound: the selected accessions plus the candidates with the
+     * largest external distances.
+     */
+    @Override
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+        try{
+            double sum = 0.0;
+            for(Accession a : selected){
+                sum += a.getExtDistance();
+            }
+            double ext[] = new double[candidates.size()];
+            for(int i=0; i<ext.length; i++){
+                ext[i] = candidates.get(i).getExtDistance();
+            }
+            sum += sumOfLargest(ext, coreSize - selected.size());
+            return sum/coreSize;
+        } catch (NullPointerException ne){
+            System.err.println("No external distances present in dataset! Cannot use EX measure.");
+            System.exit(1);
+        }
+        return -1;
+    }
+
     /*
     @Override
     public double calculate(List<Accession> accessions, String id) {
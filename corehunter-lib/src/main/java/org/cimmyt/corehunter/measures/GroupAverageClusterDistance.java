@@ -14,30 +14,217 @@
 
 package org.cimmyt.corehunter.measures;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.search.AccessionCluster;
 
 /**
  * Calculate cluster distance as mean distance between all cross-cluster pairs.
  *
+ * The sum of the cross-cluster distances is cached for every pair of clusters
+ * compared so far. When two clusters are merged (see merged), the sums for
+ * the merged cluster are the sums of those of both parts, so only pairs with a
+ * new cluster are ever summed over all accession pairs; large sums are
+ * computed in parallel, in blocks of rows. Each cached sum records the sizes
+ * of both clusters, and is recomputed if a cluster has changed without being
+ * reported. The cache is not thread-safe.
+ *
+ * The cache only serves callers that compare whole clusters and report their
+ * merges, i.e. Clustering; AgglomerativeClustering (and so Dendrogram) only
+ * uses initialDistance and the Lance-Williams update. Every cluster gets a
+ * slot, and the sums and sizes are kept in square primitive arrays indexed by
+ * slot, which grow as needed; the slot of a merged away cluster is reused.
+ *
  * @author hermandebeukelaer
  */
 public class GroupAverageClusterDistance extends ClusterDistanceMeasure {
 
+    // max nr of accession pairs summed sequentially by a single task
+    private static final int BLOCK_PAIRS = 4096;
+
+    private static final int INITIAL_SLOTS = 16;
+
+    // cluster id -> slot
+    private Map<Long, Integer> slots;
+    // slots of merged away clusters, to be reused
+    private int freeSlots[];
+    private int nrOfFreeSlots;
+    // nr of slots handed out so far
+    private int nrOfSlots;
+
+    // sum of distances between the clusters in slots i and j (symmetric)
+    private double sums[][];
+    // size of the cluster in slot i when sums[i][j] was computed, 0 if none
+    private int sizes[][];
+
     public GroupAverageClusterDistance(DistanceMeasure dm){
         super(dm);
+        slots = new HashMap<Long, Integer>();
+        clear();
     }
 
     @Override
     public double calculate(AccessionCluster clust1, AccessionCluster clust2) {
-        double sum = 0.0;
-        for(Accession a : clust1.getAccessions()){
-            for(Accession b: clust2.getAccessions()){
-                sum += dm.calculate(a, b);
+        int i = slot(clust1);
+        int j = slot(clust2);
+        if(sizes[i][j] != clust1.size() || sizes[j][i] != clust2.size()){
+            double sum = sum(clust1.getAccessions(), clust2.getAccessions());
+            sums[i][j] = sums[j][i] = sum;
+            sizes[i][j] = clust1.size();
+            sizes[j][i] = clust2.size();
+        }
+        return sums[i][j] / (clust1.size()*clust2.size());
+    }
+
+    /**
+     * Lance-Williams update on sums: the sum between the merged cluster and
+     * any other cluster k is the sum of the cached sums of both parts with k.
+     * Pairs for which not both sums are cached are dropped.
+     */
+    @Override
+    public void merged(AccessionCluster clust1, AccessionCluster clust2){
+        Integer s1 = slots.get(clust1.id());
+        Integer s2 = slots.remove(clust2.id());
+        if(s1 == null || s2 == null){
+            // nothing cached for one of both: drop all sums of both
+            if(s1 != null){
+                invalidate(s1);
+            }
+            if(s2 != null){
+                release(s2);
+            }
+            return;
+        }
+        int i = s1, j = s2;
+        int mergedSize = clust1.size() + clust2.size();
+        for(int k=0; k<nrOfSlots; k++){
+            if(k == i || k == j){
+                continue;
+            }
+            if(sizes[i][k] == clust1.size() && sizes[j][k] == clust2.size()
+                    && sizes[k][i] != 0 && sizes[k][i] == sizes[k][j]){
+                sums[i][k] = sums[k][i] = sums[i][k] + sums[j][k];
+                sizes[i][k] = mergedSize;
+            } else {
+                sizes[i][k] = sizes[k][i] = 0;
+            }
+        }
+        sizes[i][j] = sizes[j][i] = 0;
+        release(j);
+    }
+
+    @Override
+    public void clear(){
+        slots.clear();
+        freeSlots = new int[INITIAL_SLOTS];
+        nrOfFreeSlots = 0;
+        nrOfSlots = 0;
+        sums = new double[INITIAL_SLOTS][INITIAL_SLOTS];
+        sizes = new int[INITIAL_SLOTS][INITIAL_SLOTS];
+    }
+
+    @Override
+    public double mergedDistance(double dik, double djk, double dij, int ni, int nj, int nk){
+        return (ni * dik + nj * djk) / (ni + nj);
+    }
+
+    @Override
+    public boolean isReducible(){
+        return true;
+    }
+
+    // slot of the given cluster, a new one if it has none yet
+    private int slot(AccessionCluster clust){
+        Integer s = slots.get(clust.id());
+        if(s != null){
+            return s;
+        }
+        int i;
+        if(nrOfFreeSlots > 0){
+            i = freeSlots[--nrOfFreeSlots];
+        } else {
+            if(nrOfSlots == sums.length){
+                grow(2 * nrOfSlots);
+            }
+            i = nrOfSlots++;
+        }
+        slots.put(clust.id(), i);
+        return i;
+    }
+
+    // drop all sums of the cluster in slot i
+    private void invalidate(int i){
+        for(int k=0; k<nrOfSlots; k++){
+            sizes[i][k] = sizes[k][i] = 0;
+        }
+    }
+
+    // drop all sums of slot i and make it available for a new cluster
+    private void release(int i){
+        invalidate(i);
+        if(nrOfFreeSlots == freeSlots.length){
+            freeSlots = Arrays.copyOf(freeSlots, 2 * nrOfFreeSlots);
+        }
+        freeSlots[nrOfFreeSlots++] = i;
+    }
+
+    private void grow(int capacity){
+        double newSums[][] = new double[capacity][capacity];
+        int newSizes[][] = new int[capacity][capacity];
+        for(int i=0; i<nrOfSlots; i++){
+            System.arraycopy(sums[i], 0, newSums[i], 0, nrOfSlots);
+            System.arraycopy(sizes[i], 0, newSizes[i], 0, nrOfSlots);
+        }
+        sums = newSums;
+        sizes = newSizes;
+    }
+
+    private double sum(List<Accession> rows, List<Accession> cols){
+        if((long) rows.size() * cols.size() <= BLOCK_PAIRS){
+            return new SumTask(rows, cols, 0, rows.size()).compute();
+        }
+        return ForkJoinPool.commonPool().invoke(new SumTask(rows, cols, 0, rows.size()));
+    }
+
+    /**
+     * Sums the distances of rows from..to-1 to all columns.
+     */
+    private class SumTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<Accession> rows, cols;
+        private int from, to;
+
+        public SumTask(List<Accession> rows, List<Accession> cols, int from, int to){
+            this.rows = rows;
+            this.cols = cols;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Double compute(){
+            if(to - from <= 1 || (long) (to - from) * cols.size() <= BLOCK_PAIRS){
+                double sum = 0.0;
+                for(int i=from; i<to; i++){
+                    Accession a = rows.get(i);
+                    for(Accession b : cols){
+                        sum += dm.calculate(a, b);
+                    }
+                }
+                return sum;
             }
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(rows, cols, from, mid);
+            left.fork();
+            double right = new SumTask(rows, cols, mid, to).compute();
+            return left.join() + right;
         }
-        sum = sum / (clust1.size()*clust2.size());
-        return sum;
     }
 
 }
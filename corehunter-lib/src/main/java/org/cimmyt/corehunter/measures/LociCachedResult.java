@@ -0,0 +1,308 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.measures;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Cached state for measures that average a per-locus term computed from the
+ * sum and the sum of squares of the allele totals at each locus (HE, NE).
+ * Adding or removing an accession only visits its non-zero values, and each
+ * of them updates the sum and sum of squares of its locus in O(1); the loci
+ * it touches are marked dirty and their terms are recomputed when the score
+ * is requested, and the aggregate over all loci is kept as a running total.
+ * To bound rounding drift, a locus is re-reduced over all its alleles after
+ * REDUCE_INTERVAL updates, and reset to exactly zero when no accession in the
+ * core has a value for it.
+ *
+ * @author hermandebeukelaer
+ */
+abstract class LociCachedResult extends CachedResult {
+    // nr of incremental updates of a locus between two exact reductions
+    private static final int REDUCE_INTERVAL = 1024;
+
+    private double markerAlleleTotals[][];
+    private double lociTotals[];
+    private double lociSquares[];
+    private double lociTerms[];
+
+    // nr of non-zero values at each locus in the core
+    private int lociEntries[];
+    // nr of incremental updates of each locus since its last exact reduction
+    private int lociUpdates[];
+
+    // sum of all defined (non NaN) locus terms
+    private double termTotal;
+    // number of loci for which the term is currently undefined
+    private int undefinedLoci;
+
+    private boolean dirty[];
+    private int dirtyLoci[];
+    private int dirtyCnt;
+
+    public LociCachedResult(List<Accession> accessions) {
+	super();
+
+	List<List<Double>> values = accessions.get(0).getSSRValues();
+	int markerCnt = values.size();
+
+	markerAlleleTotals = new double[markerCnt][];
+	lociTotals = new double[markerCnt];
+	lociSquares = new double[markerCnt];
+	lociTerms = new double[markerCnt];
+	lociEntries = new int[markerCnt];
+	lociUpdates = new int[markerCnt];
+	dirty = new boolean[markerCnt];
+	dirtyLoci = new int[markerCnt];
+	dirtyCnt = 0;
+
+	termTotal = 0.0;
+	undefinedLoci = 0;
+	for (int i=0; i<markerCnt; i++) {
+	    markerAlleleTotals[i] = new double[values.get(i).size()];
+	    lociTerms[i] = locusTerm(0.0, 0.0);
+	    if (Double.isNaN(lociTerms[i])) {
+		undefinedLoci++;
+	    } else {
+		termTotal += lociTerms[i];
+	    }
+	}
+    }
+
+    /**
+     * Compute the term of a single locus from the sum and the sum of squares
+     * of its allele totals.
+     */
+    protected abstract double locusTerm(double total, double squares);
+
+    public void add(Accession a) {
+	update(a, 1);
+    }
+
+    public void remove(Accession a) {
+	update(a, -1);
+    }
+
+    private void update(Accession a, int sign) {
+	int markers[] = a.getNonZeroSSRMarkers();
+	int alleles[] = a.getNonZeroSSRAlleles();
+	double values[] = a.getNonZeroSSRValues();
+
+	for (int e=0; e<values.length; e++) {
+	    int i = markers[e];
+	    double x = markerAlleleTotals[i][alleles[e]];
+	    double d = sign * values[e];
+	    markerAlleleTotals[i][alleles[e]] = x + d;
+	    // (x+d)^2 - x^2
+	    lociTotals[i] += d;
+	    lociSquares[i] += d * (2.0 * x + d);
+	    lociEntries[i] += sign;
+	    lociUpdates[i]++;
+	    if (!dirty[i]) {
+		dirty[i] = true;
+		dirtyLoci[dirtyCnt++] = i;
+	    }
+	}
+    }
+
+    /**
+     * Recompute the sum and sum of squares of a locus from its allele totals.
+     */
+    private void reduce(int i) {
+	double totals[] = markerAlleleTotals[i];
+	if (lociEntries[i] == 0) {
+	    // no values left, clear any rounding residue
+	    Arrays.fill(totals, 0.0);
+	}
+	double total = 0.0;
+	double squares = 0.0;
+	for (int j=0; j<totals.length; j++) {
+	    double x = totals[j];
+	    total += x;
+	    squares += x * x;
+	}
+	lociTotals[i] = total;
+	lociSquares[i] = squares;
+	lociUpdates[i] = 0;
+    }
+
+    /**
+     * Recompute the terms of the dirty loci and return the mean locus term,
+     * or NaN if the term is undefined for some locus.
+     */
+    public double getScore() {
+	for (int d=0; d<dirtyCnt; d++) {
+	    int i = dirtyLoci[d];
+	    dirty[i] = false;
+	    if (lociEntries[i] == 0 || lociUpdates[i] >= REDUCE_INTERVAL) {
+		reduce(i);
+	    }
+
+	    double term = locusTerm(lociTotals[i], lociSquares[i]);
+	    if (Double.isNaN(lociTerms[i])) {
+		undefinedLoci--;
+	    } else {
+		termTotal -= lociTerms[i];
+	    }
+	    if (Double.isNaN(term)) {
+		undefinedLoci++;
+	    } else {
+		termTotal += term;
+	    }
+	    lociTerms[i] = term;
+	}
+	dirtyCnt = 0;
+
+	if (undefinedLoci > 0) {
+	    return Double.NaN;
+	}
+	return termTotal / (double)lociTerms.length;
+    }
+
+    /**
+     * Score the cached core after adding and removing the given accessions,
+     * without changing the cache: the sum and sum of squares of each touched
+     * locus are updated per changed value, on top of the cached ones. The
+     * cache has to be clean (its score requested after the last change).
+     */
+    public double getNeighborScore(List<Accession> added, List<Accession> removed) {
+	Map<Integer,LocusDelta> touched = new HashMap<Integer,LocusDelta>();
+	for (int l=0; l<2; l++) {
+	    int sign = (l == 0) ? 1 : -1;
+	    for (Accession a : (l == 0) ? added : removed) {
+		int markers[] = a.getNonZeroSSRMarkers();
+		int alleles[] = a.getNonZeroSSRAlleles();
+		double values[] = a.getNonZeroSSRValues();
+		LocusDelta delta = null;
+		for (int e=0; e<values.length; e++) {
+		    int i = markers[e];
+		    if (delta == null || delta.locus != i) {
+			delta = touched.get(i);
+			if (delta == null) {
+			    delta = new LocusDelta(i);
+			    touched.put(i, delta);
+			}
+		    }
+		    delta.update(alleles[e], sign, values[e]);
+		}
+	    }
+	}
+
+	double total = termTotal;
+	int undefined = undefinedLoci;
+	for (LocusDelta delta : touched.values()) {
+	    int i = delta.locus;
+	    double term;
+	    if (lociEntries[i] + delta.entries == 0) {
+		term = locusTerm(0.0, 0.0);
+	    } else {
+		term = locusTerm(delta.total, delta.squares);
+	    }
+	    if (Double.isNaN(lociTerms[i])) {
+		undefined--;
+	    } else {
+		total -= lociTerms[i];
+	    }
+	    if (Double.isNaN(term)) {
+		undefined++;
+	    } else {
+		total += term;
+	    }
+	}
+
+	if (undefined > 0) {
+	    return Double.NaN;
+	}
+	return total / (double)lociTerms.length;
+    }
+
+    /**
+     * Changes of a neighbor at a single locus: the allele totals it changes
+     * (few, so kept in short arrays) and the resulting sum and sum of squares.
+     */
+    private class LocusDelta {
+	private int locus;
+	private int alleles[] = new int[4];
+	private double deltas[] = new double[4];
+	private int nrOfAlleles = 0;
+	private int entries = 0;
+	private double total;
+	private double squares;
+
+	LocusDelta(int locus) {
+	    this.locus = locus;
+	    total = lociTotals[locus];
+	    squares = lociSquares[locus];
+	}
+
+	void update(int allele, int sign, double value) {
+	    int k = 0;
+	    while (k < nrOfAlleles && alleles[k] != allele) {
+		k++;
+	    }
+	    if (k == nrOfAlleles) {
+		if (k == alleles.length) {
+		    alleles = Arrays.copyOf(alleles, 2*k);
+		    deltas = Arrays.copyOf(deltas, 2*k);
+		}
+		alleles[k] = allele;
+		deltas[k] = 0.0;
+		nrOfAlleles++;
+	    }
+	    double x = markerAlleleTotals[locus][allele] + deltas[k];
+	    double d = sign * value;
+	    deltas[k] += d;
+	    total += d;
+	    squares += d * (2.0 * x + d);
+	    entries += sign;
+	}
+    }
+
+    /**
+     * Count, per locus, the alleles with a non-zero value in at least one of
+     * the given accessions.
+     */
+    static int[] countPresentAlleles(List<Accession> selected, List<Accession> candidates) {
+	if (selected.isEmpty() && candidates.isEmpty()) {
+	    return new int[0];
+	}
+	Accession a1 = selected.isEmpty() ? candidates.get(0) : selected.get(0);
+	List<List<Double>> values = a1.getSSRValues();
+	boolean present[][] = new boolean[values.size()][];
+	for (int i=0; i<present.length; i++) {
+	    present[i] = new boolean[values.get(i).size()];
+	}
+
+	int counts[] = new int[present.length];
+	for (int l=0; l<2; l++) {
+	    for (Accession a : (l == 0) ? selected : candidates) {
+		int markers[] = a.getNonZeroSSRMarkers();
+		int alleles[] = a.getNonZeroSSRAlleles();
+		for (int e=0; e<markers.length; e++) {
+		    if (!present[markers[e]][alleles[e]]) {
+			present[markers[e]][alleles[e]] = true;
+			counts[markers[e]]++;
+		    }
+		}
+	    }
+	}
+	return counts;
+    }
+}
@@ -14,6 +14,8 @@
 
 package org.cimmyt.corehunter.measures;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.cimmyt.corehunter.Accession;
 
@@ -46,9 +48,88 @@ public abstract class Measure {
 	return minimizing;
     }
 
+    /**
+     * True if the gain of adding an accession to a core never increases when
+     * the core grows (submodular measures, or the loss for minimized ones), so
+     * that gains computed for a smaller core bound those for a larger one. Used
+     * by lazy greedy selection, which only matches exact greedy selection if
+     * the property holds exactly; measures for which it nearly holds may also
+     * return true. By default no such property is assumed.
+     */
+    public boolean hasDiminishingReturns() {
+	return false;
+    }
+
     public double calculate(List<Accession> accessions, String cacheId) {
 	return calculate(accessions);
     }
 
+    /**
+     * Drop the result cached under the given id, if any, once it is no
+     * longer used. By default nothing is cached.
+     */
+    public void removeCache(String cacheId) {
+    }
+
+    /**
+     * Calculate the measure for a core that differs from the one last cached
+     * under the given id by the given added and removed accessions, and
+     * recache the result. The list of accessions is the new core itself;
+     * measures that keep a cache use the explicit difference instead of
+     * comparing it to the cached core.
+     */
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String cacheId) {
+	return calculate(accessions, cacheId);
+    }
+
+    /**
+     * Calculate the measure for a neighbour of the core last cached under the
+     * given id, obtained by adding and removing the given accessions, without
+     * changing the cache. The list of accessions is the current (cached) core.
+     * Several neighbours of the same core may be scored concurrently, as long
+     * as the core is not changed meanwhile. By default the neighbour is built
+     * and scored from scratch.
+     */
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String cacheId) {
+	List<Accession> neighbor = new ArrayList<Accession>(accessions);
+	neighbor.removeAll(removed);
+	neighbor.addAll(added);
+	return calculate(neighbor);
+    }
+
+    /**
+     * Optimistic value of this measure over all cores of the given size that
+     * contain the selected accessions and are completed from the candidates:
+     * an upper bound for maximized measures and a lower bound for minimized
+     * ones. Used to prune branch and bound search; the default prunes nothing.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	return minimizing ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Same bound, for the nodes of a single search: measures may precompute
+     * data for the accessions given to the first call with this id (all
+     * later calls only use accessions from that call), which is dropped by
+     * removeCache. By default nothing is precomputed.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize, String cacheId) {
+	return getBound(selected, candidates, coreSize);
+    }
+
+    /**
+     * Sum of the largest m values of the given array (which is reordered).
+     */
+    protected static double sumOfLargest(double values[], int m) {
+	Arrays.sort(values);
+	double sum = 0.0;
+	for (int i=values.length-1; i>=0 && i>=values.length-m; i--) {
+	    sum += values[i];
+	}
+	return sum;
+    }
+
     public abstract double calculate(List<Accession> accessions);
 }
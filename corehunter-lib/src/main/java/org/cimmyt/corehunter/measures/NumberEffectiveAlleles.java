@@ -17,7 +17,6 @@ package org.cimmyt.corehunter.measures;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
 import org.cimmyt.corehunter.Accession;
@@ -44,6 +43,10 @@ public final class NumberEffectiveAlleles extends Measure {
 	return calculate(accessions, new NECachedResult(accessions));
     }
 
+    public void removeCache(String id) {
+	cachedResults.remove(id);
+    }
+
     public double calculate(List<Accession> accessions, String id) {
 	NECachedResult cache = cachedResults.get(id);
 
@@ -55,73 +58,71 @@ public final class NumberEffectiveAlleles extends Measure {
 	return calculate(accessions, cache);
     }
 
-    protected double calculate(List<Accession> accessions, NECachedResult cache) {
-	List<Accession> aAccessions = cache.getAddedAccessions(accessions);
-	List<Accession> rAccessions = cache.getRemovedAccessions(accessions);
-
-	double markerAlleleTotals[][] = cache.getMarkerAlleleTotals();
-	double addTotals[][] = Accession.getMarkerAlleleTotals(aAccessions);
-	double remTotals[][] = Accession.getMarkerAlleleTotals(rAccessions);
-
-	for(int i=0; i<markerAlleleTotals.length; i++) {
-	    for(int j=0; j<markerAlleleTotals[i].length; j++) {
-		double diff = 0.0;
-		if (addTotals != null) {
-		    diff += addTotals[i][j];
-		}
-		if (remTotals != null) {
-		    diff -= remTotals[i][j];
-		}
-		markerAlleleTotals[i][j] += diff;
-	    }
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String id) {
+	NECachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return calculate(accessions, id);
 	}
-	
-	double diversityTotal = 0.0;
-	for(int i=0; i<markerAlleleTotals.length; i++) {
-	    double lociTotal = 0.0;
-	    double lociTerm = 0.0;
-	    for(int j=0; j<markerAlleleTotals[i].length; j++) {
-		lociTerm += Math.pow(markerAlleleTotals[i][j], 2);
-		lociTotal += markerAlleleTotals[i][j];
-	    }
-	    diversityTotal += Math.pow(lociTotal,2) / lociTerm;
+
+	update(cache, added, removed);
+	cache.updateAccessions(added, removed);
+
+	return cache.getScore();
+    }
+
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String id) {
+	NECachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return super.calculateNeighbor(accessions, added, removed, id);
 	}
-	
-	double score = (1.0 / (double)markerAlleleTotals.length) * diversityTotal;
+
+	return cache.getNeighborScore(added, removed);
+    }
+
+    protected double calculate(List<Accession> accessions, NECachedResult cache) {
+	update(cache, cache.getAddedAccessions(accessions), cache.getRemovedAccessions(accessions));
+
+	double score = cache.getScore();
 	// recache our results under this id
 	cache.setAccessions(accessions);
 
 	return score;
     }
 
-    private class NECachedResult extends CachedResult {
-	private double pMarkerAlleleTotals[][];
-	
+    /**
+     * Upper bound: at a locus with a present alleles, 1 / sum p^2 is at most a
+     * (alleles present in the selected or candidate accessions).
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	int present[] = LociCachedResult.countPresentAlleles(selected, candidates);
+	Accession a1 = selected.isEmpty() ? candidates.get(0) : selected.get(0);
+	double total = 0.0;
+	for (int i=0; i<present.length; i++) {
+	    total += (present[i] > 0) ? present[i] : a1.getSSRValues().get(i).size();
+	}
+	return total / (double)present.length;
+    }
+
+    private void update(NECachedResult cache, List<Accession> added, List<Accession> removed) {
+	for (Accession a : added) {
+	    cache.add(a);
+	}
+	for (Accession a : removed) {
+	    cache.remove(a);
+	}
+    }
+
+    private class NECachedResult extends LociCachedResult {
 	public NECachedResult(List<Accession> accessions) {
-	    super();
-
-	    Accession a1 = accessions.get(0);
-	    int markerCnt = a1.numSSRMarkers();
-	    double markerAlleleTotals[][] = new double[markerCnt][];
-	    
-	    ListIterator<List<Double>> mItr = a1.getSSRValues().listIterator();
-	    ListIterator<Double> aItr = null;
-	    
-	    int i = 0;
-	    while (mItr.hasNext()) {
-		List<Double> alleles = mItr.next();
-		
-		markerAlleleTotals[i] = new double[alleles.size()];
-		for(int j=0; j<alleles.size(); j++) {
-		    markerAlleleTotals[i][j] = 0.0;
-		}
-		i++;
-	    }
-	    pMarkerAlleleTotals = markerAlleleTotals;
+	    super(accessions);
 	}
 
-	public double[][] getMarkerAlleleTotals() {
-	    return pMarkerAlleleTotals;
+	protected double locusTerm(double total, double squares) {
+	    return (total * total) / squares;
 	}
     }
 }
@@ -40,13 +40,22 @@ public final class ProportionNonInformativeAlleles extends Measure {
 	cachedResults = Collections.synchronizedMap(new HashMap<String,PNCachedResult>());
     }
 
+    /**
+     * Each accession can only cover alleles that are not yet covered.
+     */
+    public boolean hasDiminishingReturns() {
+	return true;
+    }
+
     public double calculate(List<Accession> accessions) {
 	return calculate(accessions, new PNCachedResult(accessions));
     }
 
 
-    // TODO: not currently working, so use the slow method for now
-    //
+    public void removeCache(String id) {
+	cachedResults.remove(id);
+    }
+
     public double calculate(List<Accession> accessions, String id) {
 	PNCachedResult cache = cachedResults.get(id);
 
@@ -58,36 +67,102 @@ public final class ProportionNonInformativeAlleles extends Measure {
 	return calculate(accessions, cache);
     }
 
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String id) {
+	PNCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return calculate(accessions, id);
+	}
+
+	update(cache, added, removed);
+	cache.updateAccessions(added, removed);
+
+	return cache.getScore();
+    }
+
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String id) {
+	PNCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return super.calculateNeighbor(accessions, added, removed, id);
+	}
+
+	return cache.getNeighborScore(added, removed);
+    }
+
     protected double calculate(List<Accession> accessions, PNCachedResult cache) {
-	List<Accession> aAccessions = cache.getAddedAccessions(accessions);
-	List<Accession> rAccessions = cache.getRemovedAccessions(accessions);
-
-	int alleleCounts[] = cache.getAlleleCounts();
-	int addTotals[] = Accession.getAlleleCounts(aAccessions);
-	int remTotals[] = Accession.getAlleleCounts(rAccessions);
-
-	int alleleCnt = 0;
-	for(int i=0; i<alleleCounts.length; i++) {
-	    int diff = 0;
-	    if (addTotals != null) {
-		diff += addTotals[i];
-	    }
-	    if (remTotals != null) {
-		diff -= remTotals[i];
+	update(cache, cache.getAddedAccessions(accessions), cache.getRemovedAccessions(accessions));
+
+	cache.setAccessions(accessions);
+
+	return cache.getScore();
+    }
+
+    /**
+     * Lower bound: the selection covers some alleles, each candidate covers at
+     * most its own uncovered alleles and no core covers more than all of the
+     * selected and candidate accessions together.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	if (selected.isEmpty() && candidates.isEmpty()) {
+	    return 0.0;
+	}
+	int m = coreSize - selected.size();
+	Accession a1 = selected.isEmpty() ? candidates.get(0) : selected.get(0);
+	int alleleCnt = a1.numSSRAlleles();
+
+	boolean covered[] = new boolean[alleleCnt];
+	int coveredCnt = 0;
+	for (Accession a : selected) {
+	    int alleles[] = a.getNonZeroSSRFlatAlleles();
+	    double values[] = a.getNonZeroSSRValues();
+	    for (int e=0; e<values.length; e++) {
+		if (values[e] > 0 && !covered[alleles[e]]) {
+		    covered[alleles[e]] = true;
+		    coveredCnt++;
+		}
 	    }
-	    alleleCounts[i] += diff;
-	    if (alleleCounts[i]<=0) {
-		alleleCnt += 1;
+	}
+
+	boolean reachable[] = covered.clone();
+	int reachableCnt = coveredCnt;
+	double gains[] = new double[candidates.size()];
+	for (int i=0; i<candidates.size(); i++) {
+	    Accession a = candidates.get(i);
+	    int alleles[] = a.getNonZeroSSRFlatAlleles();
+	    double values[] = a.getNonZeroSSRValues();
+	    for (int e=0; e<values.length; e++) {
+		if (values[e] > 0) {
+		    if (!covered[alleles[e]]) {
+			gains[i]++;
+		    }
+		    if (!reachable[alleles[e]]) {
+			reachable[alleles[e]] = true;
+			reachableCnt++;
+		    }
+		}
 	    }
 	}
 
-	cache.setAccessions(accessions);
+	double maxCovered = Math.min(coveredCnt + sumOfLargest(gains, m), reachableCnt);
+	return ((double)alleleCnt - maxCovered) / (double)alleleCnt;
+    }
 
-	return (double)alleleCnt / (double)alleleCounts.length;	
+    private void update(PNCachedResult cache, List<Accession> added, List<Accession> removed) {
+	for (Accession a : added) {
+	    cache.add(a);
+	}
+	for (Accession a : removed) {
+	    cache.remove(a);
+	}
     }
 
     private class PNCachedResult extends CachedResult {
 	private int pAlleleCounts[];
+	// number of alleles not present in any accession of the core
+	private int pZeroCount;
 	
 	public PNCachedResult(List<Accession> accessions) {
 	    super();
@@ -95,13 +170,74 @@ public final class ProportionNonInformativeAlleles extends Measure {
 	    int alleleCnt = a1.numSSRAlleles();
 
 	    pAlleleCounts = new int[alleleCnt];
-	    for(int i=0; i<alleleCnt; i++) {
-		pAlleleCounts[i] = 0;
+	    pZeroCount = alleleCnt;
+	}
+
+	public void add(Accession a) {
+	    int alleles[] = a.getNonZeroSSRFlatAlleles();
+	    double values[] = a.getNonZeroSSRValues();
+
+	    for (int e=0; e<values.length; e++) {
+		if (values[e] > 0) {
+		    if (pAlleleCounts[alleles[e]]++ == 0) {
+			pZeroCount--;
+		    }
+		}
+	    }
+	}
+
+	public void remove(Accession a) {
+	    int alleles[] = a.getNonZeroSSRFlatAlleles();
+	    double values[] = a.getNonZeroSSRValues();
+
+	    for (int e=0; e<values.length; e++) {
+		if (values[e] > 0) {
+		    if (--pAlleleCounts[alleles[e]] == 0) {
+			pZeroCount++;
+		    }
+		}
 	    }
 	}
 
-	public int[] getAlleleCounts() {
-	    return pAlleleCounts;
+	/**
+	 * Score the cached core after adding and removing the given accessions,
+	 * counting the changes of the touched alleles in scratch space.
+	 */
+	public double getNeighborScore(List<Accession> added, List<Accession> removed) {
+	    AlleleDeltas d = AlleleDeltas.get(pAlleleCounts.length);
+	    int zeroCount = pZeroCount;
+
+	    try {
+		for (int l=0; l<2; l++) {
+		    int sign = (l == 0) ? 1 : -1;
+		    for (Accession a : (l == 0) ? added : removed) {
+			int alleles[] = a.getNonZeroSSRFlatAlleles();
+			double values[] = a.getNonZeroSSRValues();
+			for (int e=0; e<values.length; e++) {
+			    if (values[e] > 0) {
+				int i = alleles[e];
+				d.touch(i);
+				int x = pAlleleCounts[i] + d.counts[i];
+				int y = x + sign;
+				if (x == 0) {
+				    zeroCount--;
+				} else if (y == 0) {
+				    zeroCount++;
+				}
+				d.counts[i] += sign;
+			    }
+			}
+		    }
+		}
+	    } finally {
+		d.clear();
+	    }
+
+	    return (double)zeroCount / (double)pAlleleCounts.length;
+	}
+
+	public double getScore() {
+	    return (double)pZeroCount / (double)pAlleleCounts.length;
 	}
     }
 }
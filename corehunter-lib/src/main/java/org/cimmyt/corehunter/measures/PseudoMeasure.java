@@ -18,6 +18,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.DuplicateMeasureException;
@@ -29,6 +31,9 @@ import org.cimmyt.corehunter.DuplicateMeasureException;
  * @version $Rev$
  */
 public class PseudoMeasure {
+    // number of neighbours scored sequentially by a single batch task
+    private static final int BATCH_GRAIN = 16;
+
     private String name;
     private String description;
     private List<Measure> measures;
@@ -82,6 +87,155 @@ public class PseudoMeasure {
 	return score;
     }
 
+    /**
+     * Calculate the pseudo measure for a core that differs from the one last
+     * cached under the given id by the given added and removed accessions,
+     * passing the explicit difference on to each measure.
+     */
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String cacheId) {
+	if (cacheId == null) {
+	    return calculate(accessions);
+	}
+
+	double score = 0.0;
+	for(int i=0; i<measures.size(); i++) {
+	    Measure m = measures.get(i);
+	    double s = m.calculate(accessions, added, removed, cacheId);
+
+	    if (m.isMinimizing()) {
+		s = -s;
+	    }
+
+	    double weight = measureWeights.get(i).doubleValue();
+	    score += s * weight;
+	}
+
+	return score;
+    }
+
+    /**
+     * Calculate the pseudo measure for a neighbour of the core last cached
+     * under the given id (obtained by adding and removing the given
+     * accessions), without changing the cache. The list of accessions is the
+     * current core.
+     */
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String cacheId) {
+	double score = 0.0;
+	for(int i=0; i<measures.size(); i++) {
+	    Measure m = measures.get(i);
+	    double s = m.calculateNeighbor(accessions, added, removed, cacheId);
+
+	    if (m.isMinimizing()) {
+		s = -s;
+	    }
+
+	    double weight = measureWeights.get(i).doubleValue();
+	    score += s * weight;
+	}
+
+	return score;
+    }
+
+    /**
+     * Score many neighbours of the core cached under the given id at once,
+     * where neighbour i adds added.get(i) and removes removed.get(i). Large
+     * batches are scored in parallel on the common fork/join pool; the cache
+     * is only read, so the core must not change meanwhile.
+     */
+    public double[] calculateNeighbors(List<Accession> accessions, List<List<Accession>> added,
+				       List<List<Accession>> removed, String cacheId) {
+	double scores[] = new double[added.size()];
+	NeighborBatch batch = new NeighborBatch(accessions, added, removed, cacheId, scores, 0, added.size());
+	if (added.size() <= BATCH_GRAIN) {
+	    // not worth handing over to the pool
+	    batch.compute();
+	} else {
+	    ForkJoinPool.commonPool().invoke(batch);
+	}
+	return scores;
+    }
+
+    /**
+     * Drop the results cached under the given id by all measures, once a
+     * search no longer uses it.
+     */
+    public void removeCache(String cacheId) {
+	for (Measure m : measures) {
+	    m.removeCache(cacheId);
+	}
+    }
+
+    /**
+     * Upper bound on the pseudo measure over all cores of the given size that
+     * contain the selected accessions and are completed from the candidates,
+     * combined from the bounds of the individual measures.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	return getBound(selected, candidates, coreSize, null);
+    }
+
+    /**
+     * Same bound, for the nodes of a single search: the measures may
+     * precompute data for the accessions of the first call with the given
+     * id (see Measure.getBound), which is dropped by removeCache. A null id
+     * precomputes nothing.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize, String cacheId) {
+	double bound = 0.0;
+
+	for(int i=0; i<measures.size(); i++) {
+	    double weight = measureWeights.get(i).doubleValue();
+	    if (weight == 0.0) {
+		continue;
+	    }
+
+	    Measure m = measures.get(i);
+	    double b = (cacheId == null) ? m.getBound(selected, candidates, coreSize)
+	                                 : m.getBound(selected, candidates, coreSize, cacheId);
+	    if (m.isMinimizing()) {
+		b = -b;
+	    }
+	    bound += b * weight;
+	}
+
+	return bound;
+    }
+
+    private class NeighborBatch extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	private List<Accession> accessions;
+	private List<List<Accession>> added, removed;
+	private String cacheId;
+	private double scores[];
+	private int from, to;
+
+	public NeighborBatch(List<Accession> accessions, List<List<Accession>> added,
+			     List<List<Accession>> removed, String cacheId, double scores[], int from, int to) {
+	    this.accessions = accessions;
+	    this.added = added;
+	    this.removed = removed;
+	    this.cacheId = cacheId;
+	    this.scores = scores;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	protected void compute() {
+	    if (to - from <= BATCH_GRAIN) {
+		for (int i=from; i<to; i++) {
+		    scores[i] = calculateNeighbor(accessions, added.get(i), removed.get(i), cacheId);
+		}
+	    } else {
+		int mid = (from + to) >>> 1;
+		invokeAll(new NeighborBatch(accessions, added, removed, cacheId, scores, from, mid),
+			  new NeighborBatch(accessions, added, removed, cacheId, scores, mid, to));
+	    }
+	}
+    }
+
     public Map<String, Double> componentScores(List<Accession> accessions) {
 	return componentScores(accessions, null);
     }
@@ -102,6 +256,32 @@ public class PseudoMeasure {
 	return scores;
     }
 
+    /**
+     * True if all weighted measures have diminishing returns, which then also
+     * holds for their weighted sum.
+     */
+    public boolean hasDiminishingReturns() {
+	for(int i=0; i<measures.size(); i++) {
+	    if (measureWeights.get(i).doubleValue() > 0.0 && !measures.get(i).hasDiminishingReturns()) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Get the first (weighted) distance measure of this pseudo measure, or
+     * null if it does not contain any.
+     */
+    public DistanceMeasure getDistanceMeasure() {
+	for(int i=0; i<measures.size(); i++) {
+	    if (measures.get(i) instanceof DistanceMeasure && measureWeights.get(i).doubleValue() > 0.0) {
+		return (DistanceMeasure) measures.get(i);
+	    }
+	}
+	return null;
+    }
+
     public void addMeasure(Measure m, double weight) throws DuplicateMeasureException {
 	if (measureIndex.get(m.getName()) != null) {
 	    throw new DuplicateMeasureException("Measure having the named identifier " 
@@ -113,6 +293,24 @@ public class PseudoMeasure {
 	measureWeights.add(new Double(weight));
     }
 
+    /**
+     * Names of the measures, in the order in which they were added.
+     */
+    public List<String> getMeasureNames() {
+	List<String> names = new ArrayList<String>(measures.size());
+	for (Measure m : measures) {
+	    names.add(m.getName());
+	}
+	return names;
+    }
+
+    /**
+     * Weights of the measures, in the order in which they were added.
+     */
+    public List<Double> getMeasureWeights() {
+	return new ArrayList<Double>(measureWeights);
+    }
+
     public static String getUniqueId() {
 	return CachedResult.getUniqueId();
     }
@@ -28,6 +28,19 @@ import org.cimmyt.corehunter.Accession;
  * @version $Rev$
  */
 public final class ShannonsDiversity extends Measure {
+    // natural logarithms of small integers; allele totals are whole numbers
+    // for presence/absence and homozygous data
+    private static final int LOG_TABLE_SIZE = 4096;
+    private static final double LOG_TABLE[] = new double[LOG_TABLE_SIZE];
+    // nr of incremental updates of the cached sums between two exact reductions
+    private static final int REDUCE_INTERVAL = 1024;
+    static {
+	LOG_TABLE[0] = Double.NEGATIVE_INFINITY;
+	for (int i=1; i<LOG_TABLE_SIZE; i++) {
+	    LOG_TABLE[i] = Math.log(i);
+	}
+    }
+
     private Map<String,SHCachedResult> cachedResults;
 
     public ShannonsDiversity() {
@@ -39,10 +52,24 @@ public final class ShannonsDiversity extends Measure {
 	cachedResults = Collections.synchronizedMap(new HashMap<String,SHCachedResult>());
     }
 
+    /**
+     * Entropy of the pooled allele frequencies is close to submodular: new
+     * alleles add less as the totals grow. This is not exact, so lazy greedy
+     * selection may occasionally pick a different accession than the exact
+     * greedy scan.
+     */
+    public boolean hasDiminishingReturns() {
+	return true;
+    }
+
     public double calculate(List<Accession> accessions) {
 	return calculate(accessions, new SHCachedResult(accessions));
     }
 
+    public void removeCache(String id) {
+	cachedResults.remove(id);
+    }
+
     @Override
     public double calculate(List<Accession> accessions, String id) {
 	SHCachedResult cache = cachedResults.get(id);
@@ -55,50 +82,97 @@ public final class ShannonsDiversity extends Measure {
 	return calculate(accessions, cache);
     }
 
-    protected double calculate(List<Accession> accessions, SHCachedResult cache) {
-	List<Accession> aAccessions = cache.getAddedAccessions(accessions);
-	List<Accession> rAccessions = cache.getRemovedAccessions(accessions);
-
-	double total = cache.getTotal();
-	double alleleTotals[] = cache.getAlleleTotals();
-	double addTotals[] = Accession.getAlleleTotals(aAccessions);
-	double remTotals[] = Accession.getAlleleTotals(rAccessions);
-
-	for(int i=0; i<alleleTotals.length; i++) {
-	    double diff = 0.0;
-	    if (addTotals != null) {
-		diff += addTotals[i];
-	    }
-	    if (remTotals != null) {
-		diff -= remTotals[i];
-	    }
-	    alleleTotals[i] += diff;
-	    total += diff;
+    public double calculate(List<Accession> accessions, List<Accession> added,
+			    List<Accession> removed, String id) {
+	SHCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return calculate(accessions, id);
 	}
 
-	double sum = 0.0;
-	for(int i=0; i<alleleTotals.length; i++) {
-	    double fraction = alleleTotals[i] / total;
-	    if (!Double.isNaN(fraction) && fraction != 0) {
-		// for some reason, java's precision isn't as good as C++
-		// so needed to add this check in the port
-		double t = fraction * Math.log(fraction);
-		if (!Double.isNaN(t)) {
-		    sum += t;
-		}
-	    }
+	update(cache, added, removed);
+	cache.updateAccessions(added, removed);
+
+	return cache.getScore();
+    }
+
+    public double calculateNeighbor(List<Accession> accessions, List<Accession> added,
+				    List<Accession> removed, String id) {
+	SHCachedResult cache = cachedResults.get(id);
+
+	if (cache == null) {
+	    return super.calculateNeighbor(accessions, added, removed, id);
 	}
 
+	return cache.getNeighborScore(added, removed);
+    }
+
+    protected double calculate(List<Accession> accessions, SHCachedResult cache) {
+	update(cache, cache.getAddedAccessions(accessions), cache.getRemovedAccessions(accessions));
+
+	double score = cache.getScore();
+
 	// recache our results under this id
-	cache.setTotal(total);
 	cache.setAccessions(accessions);
 
-	return -sum;	
+	return score;
     }
 
+    /**
+     * Upper bound: entropy never exceeds the log of the number of alleles that
+     * are present in the selected or candidate accessions.
+     */
+    public double getBound(List<Accession> selected, List<Accession> candidates, int coreSize) {
+	int reachable = 0;
+	for (int cnt : LociCachedResult.countPresentAlleles(selected, candidates)) {
+	    reachable += cnt;
+	}
+	return reachable > 0 ? Math.log(reachable) : 0.0;
+    }
+
+    private static double log(double x) {
+	int n = (int)x;
+	if (n == x && n < LOG_TABLE_SIZE) {
+	    return LOG_TABLE[n];
+	}
+	return Math.log(x);
+    }
+
+    private static double xLogX(double x) {
+	// totals that drop to (or just below) zero after removals contribute nothing
+	if (x <= 0.0) {
+	    return 0.0;
+	}
+	return x * log(x);
+    }
+
+    private void update(SHCachedResult cache, List<Accession> added, List<Accession> removed) {
+	for (Accession a : added) {
+	    cache.update(a, 1);
+	}
+	for (Accession a : removed) {
+	    cache.update(a, -1);
+	}
+	cache.checkDrift();
+    }
+
+    /**
+     * Cached allele totals of a core, with their sum and sum of x log x,
+     * which are updated per changed value. To bound rounding drift, an allele
+     * total is reset to exactly zero when no accession in the core has a value
+     * for it, and both sums are recomputed exactly after REDUCE_INTERVAL
+     * updates or when the core is empty.
+     */
     private class SHCachedResult extends CachedResult {
 	private double pTotal;
+	private double pXLogXTotal;
 	private double pAlleleTotals[];
+	// nr of values of each allele in the core
+	private int pAlleleEntries[];
+	// nr of alleles with values in the core
+	private int pPresent;
+	// nr of incremental updates since the last exact reduction
+	private int pUpdates;
 	
 	public SHCachedResult(List<Accession> accessions) {
 	    super();
@@ -106,24 +180,112 @@ public final class ShannonsDiversity extends Measure {
 	    int alleleCnt = a1.numSSRAlleles();
 
 	    pAlleleTotals = new double[alleleCnt];
-	    for(int i=0; i<alleleCnt; i++) {
-		pAlleleTotals[i] = 0.0;
-	    }
-
+	    pAlleleEntries = new int[alleleCnt];
 	    pTotal = 0.0;
+	    pXLogXTotal = 0.0;
+	    pPresent = 0;
+	    pUpdates = 0;
 	}
 
-	public double getTotal() {
-	    return pTotal;
+	/**
+	 * Add (sign 1) or remove (sign -1) the values of an accession, updating
+	 * the total and the sum of x log x for the alleles it has only.
+	 */
+	public void update(Accession a, int sign) {
+	    int alleles[] = a.getNonZeroSSRFlatAlleles();
+	    double values[] = a.getNonZeroSSRValues();
+
+	    for (int e=0; e<values.length; e++) {
+		int i = alleles[e];
+		double x = pAlleleTotals[i];
+		int entries = pAlleleEntries[i] + sign;
+		double y = (entries == 0) ? 0.0 : x + sign * values[e];
+		if (pAlleleEntries[i] == 0) {
+		    pPresent++;
+		} else if (entries == 0) {
+		    pPresent--;
+		}
+		pXLogXTotal += xLogX(y) - xLogX(x);
+		pTotal += y - x;
+		pAlleleTotals[i] = y;
+		pAlleleEntries[i] = entries;
+	    }
+	    pUpdates += values.length;
 	}
 
-	public double[] getAlleleTotals() {
-	    return pAlleleTotals;
+	/**
+	 * Recompute both sums exactly if the core is empty or enough updates
+	 * have been made since the last reduction.
+	 */
+	public void checkDrift() {
+	    if (pPresent == 0) {
+		pTotal = 0.0;
+		pXLogXTotal = 0.0;
+		pUpdates = 0;
+	    } else if (pUpdates >= REDUCE_INTERVAL) {
+		double total = 0.0;
+		double xLogXTotal = 0.0;
+		for (int i=0; i<pAlleleTotals.length; i++) {
+		    total += pAlleleTotals[i];
+		    xLogXTotal += xLogX(pAlleleTotals[i]);
+		}
+		pTotal = total;
+		pXLogXTotal = xLogXTotal;
+		pUpdates = 0;
+	    }
 	}
 
-	public void setTotal(double total) {
-	    pTotal = total;
+	/**
+	 * Score the cached core after adding and removing the given accessions,
+	 * applying the same updates to the touched totals in scratch space.
+	 */
+	public double getNeighborScore(List<Accession> added, List<Accession> removed) {
+	    AlleleDeltas d = AlleleDeltas.get(pAlleleTotals.length);
+	    double total = pTotal;
+	    double xLogXTotal = pXLogXTotal;
+	    int present = pPresent;
+
+	    try {
+		for (int l=0; l<2; l++) {
+		    int sign = (l == 0) ? 1 : -1;
+		    for (Accession a : (l == 0) ? added : removed) {
+			int alleles[] = a.getNonZeroSSRFlatAlleles();
+			double values[] = a.getNonZeroSSRValues();
+			for (int e=0; e<values.length; e++) {
+			    int i = alleles[e];
+			    d.touch(i);
+			    double x = pAlleleTotals[i] + d.values[i];
+			    int before = pAlleleEntries[i] + d.counts[i];
+			    int entries = before + sign;
+			    double y = (entries == 0) ? 0.0 : x + sign * values[e];
+			    if (before == 0) {
+				present++;
+			    } else if (entries == 0) {
+				present--;
+			    }
+			    xLogXTotal += xLogX(y) - xLogX(x);
+			    total += y - x;
+			    d.values[i] += y - x;
+			    d.counts[i] += sign;
+			}
+		    }
+		}
+	    } finally {
+		d.clear();
+	    }
+
+	    if (present > 0 && total > 0.0) {
+		return log(total) - xLogXTotal / total;
+	    }
+	    return 0.0;
+	}
+
+	public double getScore() {
+	    // with fractions x/T, -sum (x/T) log(x/T) = log T - (sum x log x) / T
+	    if (pTotal > 0.0) {
+		return log(pTotal) - pXLogXTotal / pTotal;
+	    }
+	    return 0.0;
 	}
     }
 }
-
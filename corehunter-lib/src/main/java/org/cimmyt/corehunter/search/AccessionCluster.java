@@ -16,6 +16,7 @@ package org.cimmyt.corehunter.search;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.cimmyt.corehunter.Accession;
 
 /**
@@ -24,7 +25,8 @@ import org.cimmyt.corehunter.Accession;
  */
 public class AccessionCluster {
 
-    private static long nextid = 0;
+    // shared by clusterings that run concurrently
+    private static final AtomicLong nextid = new AtomicLong();
 
     private List<Accession> accessions;
     private long id;
@@ -34,15 +36,13 @@ public class AccessionCluster {
     
     public AccessionCluster(boolean computeCentroid){
         accessions = new ArrayList<Accession>();
-        id = nextid;
+        id = nextid.getAndIncrement();
         this.computeCentroid = computeCentroid;
         if(computeCentroid){
-            centroid = new ClusterCentroid(id);
+            centroid = new ClusterCentroid();
         } else {
             centroid = null;
         }
-
-        nextid++;
     }
     
     public AccessionCluster(Accession a, boolean computeCentroid){
@@ -50,7 +50,7 @@ public class AccessionCluster {
 
         if(computeCentroid){
             // Set centroid
-            centroid.update(a, 0);
+            centroid.add(a);
         }
         // Add first accession
         accessions.add(a);
@@ -59,7 +59,13 @@ public class AccessionCluster {
     public void merge(AccessionCluster clust){
         if(computeCentroid){
             // Update centroid
-            centroid.update(clust.getAccessions(), accessions.size());
+            if(clust.getCentroid() != null){
+                centroid.merge(clust.getCentroid());
+            } else {
+                for(Accession a : clust.getAccessions()){
+                    centroid.add(a);
+                }
+            }
         }
         // Add accessions to list
         accessions.addAll(clust.getAccessions());
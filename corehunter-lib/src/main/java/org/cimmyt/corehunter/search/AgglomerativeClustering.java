@@ -0,0 +1,399 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.ClusterDistanceMeasure;
+
+/**
+ * Hierarchical agglomerative clustering of a list of accessions into a full
+ * dendrogram, for any cluster distance measure with a Lance-Williams update.
+ *
+ * All pairwise distances are computed in parallel on the common fork/join
+ * pool into a condensed float matrix; after each merge the row of the merged
+ * cluster is updated in place. Clusters live in the slots of the matrix: the
+ * merged cluster takes the slot of one of both clusters, whose accession then
+ * identifies it. Both algorithms take O(n^2) time and memory:
+ *
+ *  - for reducible linkages (group average), nearest neighbour chains: follow
+ *    nearest neighbours until two clusters are each other's nearest, and
+ *    merge these. Merges are found out of order and sorted by height at the
+ *    end.
+ *  - otherwise (centroid linkage), the generic algorithm of Muellner: each
+ *    cluster keeps a lower bound on the distance to its nearest neighbour
+ *    among the slots after it, in a heap. Heap entries are not updated but
+ *    replaced, older entries are recognized by their generation stamp and
+ *    skipped, and bounds that turn out to be stale are recomputed when they
+ *    come on top.
+ *
+ * @author hermandebeukelaer
+ */
+public class AgglomerativeClustering {
+
+    // nr of matrix rows computed sequentially by a single task
+    private static final int ROW_GRAIN = 16;
+
+    private ClusterDistanceMeasure cm;
+    private boolean nnChain;
+
+    // state of a single run
+    private int n;
+    private float dist[];
+    private int size[];
+    private boolean active[];
+    // merges, as the slots (accessions) of both clusters, and their heights
+    private int slot1[], slot2[];
+    private double height[];
+    private int nrOfMerges;
+
+    public AgglomerativeClustering(ClusterDistanceMeasure cm){
+        this.cm = cm;
+        nnChain = cm.isReducible();
+    }
+
+    /**
+     * Use nearest neighbour chains (only correct for reducible linkages),
+     * instead of the generic algorithm; by default chains are used when the
+     * cluster distance measure is reducible.
+     *
+     * @param nnChain
+     */
+    public void setNearestNeighborChain(boolean nnChain){
+        this.nnChain = nnChain;
+    }
+
+    /**
+     * Cluster the given accessions.
+     *
+     * @param accessions
+     * @return
+     */
+    public synchronized Dendrogram cluster(List<Accession> accessions){
+        n = accessions.size();
+        slot1 = new int[Math.max(0, n-1)];
+        slot2 = new int[Math.max(0, n-1)];
+        height = new double[Math.max(0, n-1)];
+        nrOfMerges = 0;
+        if(n > 1){
+            dist = new float[(int) ((long) n * (n-1) / 2)];
+            ForkJoinPool.commonPool().invoke(new RowTask(accessions, 0, n));
+            size = new int[n];
+            active = new boolean[n];
+            for(int i=0; i<n; i++){
+                size[i] = 1;
+                active[i] = true;
+            }
+            if(nnChain){
+                nearestNeighborChain();
+                sortMerges();
+            } else {
+                generic();
+            }
+        }
+        Dendrogram d = createDendrogram(accessions);
+        dist = null;
+        size = null;
+        active = null;
+        return d;
+    }
+
+    private void nearestNeighborChain(){
+        int chain[] = new int[n];
+        int len = 0;
+        int start = 0;
+        for(int remaining=n; remaining>1; remaining--){
+            if(len == 0){
+                while(!active[start]){
+                    start++;
+                }
+                chain[len++] = start;
+            }
+            while(true){
+                int a = chain[len-1];
+                // nearest neighbour of a, the previous chain element on ties
+                int b = -1;
+                float db = Float.MAX_VALUE;
+                if(len > 1){
+                    b = chain[len-2];
+                    db = dist[index(a, b)];
+                }
+                for(int k=0; k<n; k++){
+                    if(active[k] && k != a){
+                        float d = dist[index(a, k)];
+                        if(d < db){
+                            b = k;
+                            db = d;
+                        }
+                    }
+                }
+                if(len > 1 && b == chain[len-2]){
+                    // reciprocal nearest neighbours
+                    len -= 2;
+                    merge(a, b, db);
+                    break;
+                }
+                chain[len++] = b;
+            }
+        }
+    }
+
+    private void generic(){
+        int nn[] = new int[n];
+        double minDist[] = new double[n];
+        int gen[] = new int[n];
+        StampedHeap heap = new StampedHeap(2*n);
+
+        for(int i=0; i<n-1; i++){
+            nearestAfter(i, nn, minDist);
+            heap.push(minDist[i], i, gen[i]);
+        }
+
+        for(int m=0; m<n-1; m++){
+            int a = heap.top(active, gen);
+            while(minDist[a] != dist[index(a, nn[a])]){
+                // stale lower bound
+                nearestAfter(a, nn, minDist);
+                gen[a]++;
+                heap.push(minDist[a], a, gen[a]);
+                a = heap.top(active, gen);
+            }
+            int b = nn[a];
+            merge(b, a, minDist[a]);
+
+            // a is gone, its bound is invalidated by not being active
+            for(int x=0; x<a; x++){
+                if(active[x] && nn[x] == a){
+                    nn[x] = b;
+                }
+            }
+            for(int x=0; x<b; x++){
+                if(active[x] && dist[index(x, b)] < minDist[x]){
+                    nn[x] = b;
+                    minDist[x] = dist[index(x, b)];
+                    gen[x]++;
+                    heap.push(minDist[x], x, gen[x]);
+                }
+            }
+            gen[b]++;
+            if(nearestAfter(b, nn, minDist)){
+                heap.push(minDist[b], b, gen[b]);
+            }
+        }
+    }
+
+    // nearest active slot after i, returns false if there is none
+    private boolean nearestAfter(int i, int nn[], double minDist[]){
+        nn[i] = -1;
+        minDist[i] = Double.MAX_VALUE;
+        for(int k=i+1; k<n; k++){
+            if(active[k] && dist[index(i, k)] < minDist[i]){
+                nn[i] = k;
+                minDist[i] = dist[index(i, k)];
+            }
+        }
+        return nn[i] != -1;
+    }
+
+    /**
+     * Merge the cluster in slot j into the one in slot i.
+     */
+    private void merge(int i, int j, double dij){
+        slot1[nrOfMerges] = i;
+        slot2[nrOfMerges] = j;
+        height[nrOfMerges] = cm.toDistance(dij);
+        nrOfMerges++;
+
+        active[j] = false;
+        for(int k=0; k<n; k++){
+            if(active[k] && k != i){
+                dist[index(i, k)] = (float) cm.mergedDistance(dist[index(i, k)], dist[index(j, k)], dij,
+                                                              size[i], size[j], size[k]);
+            }
+        }
+        size[i] += size[j];
+    }
+
+    // stable sort of the merges by height
+    private void sortMerges(){
+        Integer order[] = new Integer[nrOfMerges];
+        for(int m=0; m<nrOfMerges; m++){
+            order[m] = m;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer m1, Integer m2){
+                return Double.compare(height[m1], height[m2]);
+            }
+        });
+        int s1[] = new int[nrOfMerges];
+        int s2[] = new int[nrOfMerges];
+        double h[] = new double[nrOfMerges];
+        for(int m=0; m<nrOfMerges; m++){
+            s1[m] = slot1[order[m]];
+            s2[m] = slot2[order[m]];
+            h[m] = height[order[m]];
+        }
+        slot1 = s1;
+        slot2 = s2;
+        height = h;
+    }
+
+    /**
+     * Label the clusters as in the dendrogram: leaves 0..n-1, merge m
+     * creates cluster n+m.
+     */
+    private Dendrogram createDendrogram(List<Accession> accessions){
+        int parent[] = new int[n];
+        int label[] = new int[n];
+        for(int i=0; i<n; i++){
+            parent[i] = i;
+            label[i] = i;
+        }
+        int left[] = new int[nrOfMerges];
+        int right[] = new int[nrOfMerges];
+        for(int m=0; m<nrOfMerges; m++){
+            int r1 = Dendrogram.find(parent, slot1[m]);
+            int r2 = Dendrogram.find(parent, slot2[m]);
+            left[m] = label[r1];
+            right[m] = label[r2];
+            parent[r2] = r1;
+            label[r1] = n + m;
+        }
+        return new Dendrogram(accessions, left, right, height);
+    }
+
+    // position of pair (i,j), i != j, in the condensed matrix
+    private int index(int i, int j){
+        if(i > j){
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return (int) ((long) i * (2*n - i - 1) / 2 + (j - i - 1));
+    }
+
+    /**
+     * Binary min-heap of (key, slot, generation) entries in primitive arrays.
+     * An entry is valid if its slot is active and the generation is the
+     * current one of the slot; invalid entries are dropped when on top.
+     */
+    private static class StampedHeap {
+
+        private double key[];
+        private int slot[];
+        private int gen[];
+        private int size;
+
+        StampedHeap(int capacity){
+            key = new double[capacity];
+            slot = new int[capacity];
+            gen = new int[capacity];
+            size = 0;
+        }
+
+        void push(double k, int s, int g){
+            if(size == key.length){
+                key = Arrays.copyOf(key, 2*size);
+                slot = Arrays.copyOf(slot, 2*size);
+                gen = Arrays.copyOf(gen, 2*size);
+            }
+            int i = size++;
+            while(i > 0){
+                int p = (i - 1) / 2;
+                if(key[p] <= k){
+                    break;
+                }
+                set(i, key[p], slot[p], gen[p]);
+                i = p;
+            }
+            set(i, k, s, g);
+        }
+
+        /**
+         * Slot of the valid entry with the smallest key.
+         */
+        int top(boolean active[], int curGen[]){
+            while(!active[slot[0]] || gen[0] != curGen[slot[0]]){
+                pop();
+            }
+            return slot[0];
+        }
+
+        private void pop(){
+            size--;
+            double k = key[size];
+            int s = slot[size];
+            int g = gen[size];
+            int i = 0;
+            while(true){
+                int c = 2*i + 1;
+                if(c >= size){
+                    break;
+                }
+                if(c + 1 < size && key[c+1] < key[c]){
+                    c++;
+                }
+                if(k <= key[c]){
+                    break;
+                }
+                set(i, key[c], slot[c], gen[c]);
+                i = c;
+            }
+            set(i, k, s, g);
+        }
+
+        private void set(int i, double k, int s, int g){
+            key[i] = k;
+            slot[i] = s;
+            gen[i] = g;
+        }
+    }
+
+    /**
+     * Computes the rows from..to-1 of the condensed distance matrix.
+     */
+    private class RowTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<Accession> accessions;
+        private int from, to;
+
+        public RowTask(List<Accession> accessions, int from, int to){
+            this.accessions = accessions;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute(){
+            if(to - from <= ROW_GRAIN){
+                for(int i=from; i<to; i++){
+                    Accession a = accessions.get(i);
+                    for(int j=i+1; j<n; j++){
+                        dist[index(i, j)] = (float) cm.initialDistance(a, accessions.get(j));
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowTask(accessions, from, mid),
+                          new RowTask(accessions, mid, to));
+            }
+        }
+    }
+}
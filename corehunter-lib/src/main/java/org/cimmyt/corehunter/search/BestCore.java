@@ -0,0 +1,44 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.List;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Immutable snapshot of the best core found so far by a parallel search, with
+ * its score. Searches whose workers run independently (see ParallelTempering
+ * and IslandModel) publish it through an atomic reference.
+ *
+ * @author hermandebeukelaer
+ */
+class BestCore {
+
+    final double score;
+    final List<Accession> core;
+
+    BestCore(double score, List<Accession> core){
+        this.score = score;
+        this.core = core;
+    }
+
+    /**
+     * True if a core with the given score and size is better than this one:
+     * it has a higher score, or the same score and a smaller size.
+     */
+    boolean improvedBy(double score, int size){
+        return score > this.score || (score == this.score && size < core.size());
+    }
+}
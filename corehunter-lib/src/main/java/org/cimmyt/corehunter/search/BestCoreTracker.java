@@ -0,0 +1,293 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Keeps track of the best core of a search without copying the current core
+ * on every improvement. The current core is replaced by a list that reports
+ * every accession it gains or loses (see track). Since the last improvement,
+ * these changes are kept as an undo log: for every changed accession, the
+ * nr of times it occurs in the current core minus the nr of times it occurs
+ * in the best core. Counting multiplicities keeps the log correct while the
+ * current core briefly holds an accession twice, as when it is reversed in
+ * place. An improvement only clears the log, and the best core is
+ * materialized (the current core with the changes undone) only when it is
+ * requested. The log is also materialized as a checkpoint when it becomes
+ * larger than the best core itself, or before a bulk change of the current
+ * core; no changes are logged after that until the next improvement.
+ * Materialized best cores are never modified.
+ *
+ * A tracker is used by a single thread, with a single core.
+ *
+ * @author hermandebeukelaer
+ */
+public class BestCoreTracker {
+
+    private TrackedCore core;
+
+    private double bestScore;
+    private int bestSize;
+
+    // materialized best core, null if it is still implied by the log
+    private List<Accession> bestCore;
+
+    // changes of the current core since the best one: accession id ->
+    // multiplicity in the current core minus multiplicity in the best core
+    private int delta[] = new int[0];
+    // accessions with a nonzero delta, and their position in this list (by id)
+    private final List<Accession> changed = new ArrayList<Accession>();
+    private int changedPos[] = new int[0];
+    // sum of the absolute deltas
+    private int logSize;
+
+    /**
+     * Start tracking the given core, which is the first best core. Returns
+     * the list which has to be used (and changed) as the current core from
+     * now on.
+     *
+     * @param core
+     * @param score
+     * @return
+     */
+    public List<Accession> track(List<Accession> core, double score){
+        this.core = new TrackedCore(core);
+        bestScore = score;
+        bestSize = core.size();
+        bestCore = null;
+        clearLog();
+        return this.core;
+    }
+
+    /**
+     * Check whether the current core, with the given score, is better than
+     * the best core so far (a higher score, or the same score and a smaller
+     * size), and if so, make it the new best core.
+     *
+     * @param score
+     * @return true if the best core was improved
+     */
+    public boolean update(double score){
+        int size = core.size();
+        if(score > bestScore || (score == bestScore && size < bestSize)){
+            bestScore = score;
+            bestSize = size;
+            bestCore = null;
+            clearLog();
+            return true;
+        }
+        return false;
+    }
+
+    public double getBestScore(){
+        return bestScore;
+    }
+
+    public int getBestSize(){
+        return bestSize;
+    }
+
+    /**
+     * The best core so far, materialized if needed in O(core size).
+     *
+     * @return an unmodifiable list
+     */
+    public List<Accession> getBestCore(){
+        if(bestCore == null){
+            List<Accession> best = new ArrayList<Accession>(bestSize);
+            for(Accession a : core){
+                int id = a.getId();
+                if(id < delta.length && delta[id] > 0){
+                    // skip one occurrence that was added since the best core
+                    delta[id]--;
+                } else {
+                    best.add(a);
+                }
+            }
+            for(Accession a : changed){
+                for(int i=delta[a.getId()]; i<0; i++){
+                    best.add(a);
+                }
+            }
+            bestCore = Collections.unmodifiableList(best);
+            clearLog();
+        }
+        return bestCore;
+    }
+
+    // changes are logged after they have been made to the current core
+
+    private void log(Accession a, int change){
+        if(bestCore != null){
+            return;
+        }
+        int id = a.getId();
+        if(id >= delta.length){
+            int length = Math.max(id + 1, 2 * delta.length);
+            delta = Arrays.copyOf(delta, length);
+            changedPos = Arrays.copyOf(changedPos, length);
+        }
+        int old = delta[id];
+        delta[id] = old + change;
+        logSize += Math.abs(delta[id]) - Math.abs(old);
+        if(old == 0){
+            changedPos[id] = changed.size();
+            changed.add(a);
+        } else if(delta[id] == 0){
+            // move last changed accession into the freed position
+            Accession last = changed.remove(changed.size()-1);
+            if(last != a){
+                changed.set(changedPos[id], last);
+                changedPos[last.getId()] = changedPos[id];
+            }
+        }
+    }
+
+    private void logAdded(Accession a){
+        log(a, 1);
+    }
+
+    private void logRemoved(Accession a){
+        log(a, -1);
+    }
+
+    private void clearLog(){
+        for(Accession a : changed){
+            delta[a.getId()] = 0;
+        }
+        changed.clear();
+        logSize = 0;
+    }
+
+    private void checkLogSize(){
+        if(bestCore == null && logSize > bestSize){
+            getBestCore();
+        }
+    }
+
+    /**
+     * Current core that reports its changes to the tracker. Single accessions
+     * are logged (also when removed through an iterator); bulk changes first
+     * materialize the best core.
+     */
+    private class TrackedCore extends ArrayList<Accession> {
+
+        private static final long serialVersionUID = 1L;
+
+        TrackedCore(Collection<Accession> core){
+            super(core);
+        }
+
+        @Override
+        public boolean add(Accession a){
+            super.add(a);
+            logAdded(a);
+            checkLogSize();
+            return true;
+        }
+
+        @Override
+        public void add(int index, Accession a){
+            super.add(index, a);
+            logAdded(a);
+            checkLogSize();
+        }
+
+        @Override
+        public Accession remove(int index){
+            Accession a = super.remove(index);
+            logRemoved(a);
+            checkLogSize();
+            return a;
+        }
+
+        @Override
+        public boolean remove(Object o){
+            int index = indexOf(o);
+            if(index == -1){
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+
+        @Override
+        public Accession set(int index, Accession a){
+            Accession old = super.set(index, a);
+            if(old != a){
+                logRemoved(old);
+                logAdded(a);
+                checkLogSize();
+            }
+            return old;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends Accession> c){
+            getBestCore();
+            return super.addAll(c);
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends Accession> c){
+            getBestCore();
+            return super.addAll(index, c);
+        }
+
+        @Override
+        public void clear(){
+            getBestCore();
+            super.clear();
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c){
+            getBestCore();
+            return super.removeAll(c);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c){
+            getBestCore();
+            return super.retainAll(c);
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super Accession> filter){
+            getBestCore();
+            return super.removeIf(filter);
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<Accession> operator){
+            getBestCore();
+            super.replaceAll(operator);
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex){
+            getBestCore();
+            super.removeRange(fromIndex, toIndex);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Explores the subtree of include/exclude decisions below one node of the
+ * branch and bound search. The accessions are decided in a fixed order; a
+ * node holds the accessions selected so far and the index of the next
+ * accession to decide. Near the root both branches are forked as separate
+ * tasks, so that idle workers can steal them; deeper down the subtree is
+ * searched depth first on the current worker.
+ *
+ * @author hermandebeukelaer
+ */
+class BranchAndBoundTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Nr of levels near the root at which both branches are forked
+    private static final int FORK_DEPTH = 12;
+
+    private Search search;
+    private List<Accession> selected;
+    private int next;
+    private int depth;
+
+    public BranchAndBoundTask(Search search, List<Accession> selected, int next, int depth){
+        this.search = search;
+        this.selected = selected;
+        this.next = next;
+        this.depth = depth;
+    }
+
+    @Override
+    protected void compute() {
+        if(depth < FORK_DEPTH && !search.isLeaf(selected, next)){
+            if(!search.expand(selected, next)){
+                return;
+            }
+            List<Accession> with = new ArrayList<Accession>(selected);
+            with.add(search.accessions.get(next));
+            invokeAll(new BranchAndBoundTask(search, with, next+1, depth+1),
+                      new BranchAndBoundTask(search, selected, next+1, depth+1));
+        } else {
+            search.dfs(new ArrayList<Accession>(selected), next);
+        }
+    }
+
+    /**
+     * State shared by all tasks of one branch and bound search: the incumbent
+     * (best core found so far), the time limit and the largest bound of all
+     * nodes left unexplored because the time limit was reached. The bounds
+     * of all nodes share an id, under which the measures precompute data for
+     * all accessions; it is dropped by finish.
+     */
+    static class Search {
+
+        private List<Accession> accessions;
+        private PseudoMeasure pm;
+        private int coreSize;
+        private long sTime;
+        private long eTime;
+        private boolean output;
+
+        private volatile double bestScore;
+        private List<Accession> bestCore;
+
+        private double openBound;
+        private AtomicLong nodes;
+
+        private String boundId;
+
+        public Search(List<Accession> accessions, PseudoMeasure pm, int coreSize,
+                      long sTime, long eTime, boolean output){
+            this.accessions = accessions;
+            this.pm = pm;
+            this.coreSize = coreSize;
+            this.sTime = sTime;
+            this.eTime = eTime;
+            this.output = output;
+            bestScore = -Double.MAX_VALUE;
+            openBound = -Double.MAX_VALUE;
+            nodes = new AtomicLong(0);
+            boundId = PseudoMeasure.getUniqueId();
+        }
+
+        /**
+         * A node is a leaf when the core is complete, or when all remaining
+         * accessions are needed to complete it.
+         */
+        private boolean isLeaf(List<Accession> selected, int next){
+            return selected.size() == coreSize
+                   || selected.size() + (accessions.size() - next) <= coreSize;
+        }
+
+        /**
+         * Check whether the subtree rooted at a (non leaf) node has to be
+         * explored, i.e. the time limit has not been reached and the bound
+         * exceeds the score of the incumbent.
+         */
+        private boolean expand(List<Accession> selected, int next){
+            nodes.incrementAndGet();
+            List<Accession> candidates = accessions.subList(next, accessions.size());
+            double bound = pm.getBound(selected, candidates, coreSize, boundId);
+            if(bound <= bestScore){
+                return false;
+            }
+            if(System.currentTimeMillis() >= eTime){
+                // subtree left unexplored: remember its bound for the optimality gap
+                recordOpenBound(bound);
+                return false;
+            }
+            return true;
+        }
+
+        private void dfs(List<Accession> selected, int next){
+            if(isLeaf(selected, next)){
+                nodes.incrementAndGet();
+                if(selected.size() < coreSize){
+                    List<Accession> core = new ArrayList<Accession>(selected);
+                    core.addAll(accessions.subList(next, next + coreSize - selected.size()));
+                    evaluate(core);
+                } else {
+                    evaluate(selected);
+                }
+                return;
+            }
+            if(!expand(selected, next)){
+                return;
+            }
+            // include next accession
+            selected.add(accessions.get(next));
+            dfs(selected, next+1);
+            selected.remove(selected.size()-1);
+            // exclude next accession
+            dfs(selected, next+1);
+        }
+
+        private void evaluate(List<Accession> core){
+            double score = pm.calculate(core);
+            if(score > bestScore){
+                offer(core, score);
+            }
+        }
+
+        synchronized void offer(List<Accession> core, double score){
+            if(score > bestScore){
+                bestCore = new ArrayList<Accession>(core);
+                bestScore = score;
+                if(output) System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                                              "\ttime: " + (System.currentTimeMillis() - sTime)/1000.0);
+            }
+        }
+
+        private synchronized void recordOpenBound(double bound){
+            openBound = Math.max(openBound, bound);
+        }
+
+        /**
+         * Drop the data precomputed for the bounds, once the search is done.
+         */
+        public void finish(){
+            pm.removeCache(boundId);
+        }
+
+        public List<Accession> getBestCore(){
+            return bestCore;
+        }
+
+        public double getBestScore(){
+            return bestScore;
+        }
+
+        /**
+         * Difference between the largest bound of any unexplored subtree and
+         * the score of the best core; 0 if the best core is proven optimal.
+         */
+        public synchronized double getOptimalityGap(){
+            return Math.max(0.0, openBound - bestScore);
+        }
+
+        public long getNrOfNodes(){
+            return nodes.get();
+        }
+    }
+}
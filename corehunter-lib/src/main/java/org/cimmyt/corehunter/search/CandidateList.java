@@ -0,0 +1,187 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.DistanceMeasure;
+import org.cimmyt.corehunter.measures.ModifiedRogersDistance;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Restricted set of promising accessions to add to a core, built from the
+ * distances between accessions: the nearest non-members of each core member
+ * (candidates for swaps) and the accessions farthest from the core. The list
+ * is rebuilt lazily, after a number of changes to the core; in between, the
+ * accessions removed from the core are added to it. Accessions at distance
+ * zero (duplicates of a core member) are screened out. To keep some
+ * diversity, each request also includes a fresh random sample of the other
+ * unselected accessions.
+ *
+ * @author hermandebeukelaer
+ */
+class CandidateList {
+
+    // nr of nearest neighbors remembered per accession
+    private final static int NR_OF_NEAREST = 16;
+    // nr of changes to the core after which the list is rebuilt
+    private final static int REFRESH_PERIOD = 10;
+    // fraction of the list size that is sampled at random on each request
+    private final static double RANDOM_FRACTION = 0.25;
+
+    private final static Random rg = new Random();
+
+    private int size;
+    private DistanceMeasure dm;
+    // nearest neighbors of each accession, shared by copies of the list
+    private Map<Accession, Accession[]> nearest;
+
+    private Set<Accession> candidates;
+    private int changes;
+
+    public CandidateList(int size){
+        this(size, new ConcurrentHashMap<Accession, Accession[]>());
+    }
+
+    private CandidateList(int size, Map<Accession, Accession[]> nearest){
+        this.size = size;
+        this.nearest = nearest;
+        candidates = null;
+        changes = 0;
+    }
+
+    /**
+     * Copy with an empty list, sharing the computed nearest neighbors.
+     */
+    public CandidateList copy(){
+        return new CandidateList(size, nearest);
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Get the current candidates (rebuilding the list if needed) together
+     * with a random sample of the unselected accessions.
+     */
+    public Set<Accession> get(List<Accession> core, List<Accession> unselected, PseudoMeasure pm){
+        if(candidates == null || changes >= REFRESH_PERIOD){
+            refresh(core, unselected, pm);
+        }
+        Set<Accession> sample = new HashSet<Accession>(candidates);
+        int nrOfRandom = (int) (RANDOM_FRACTION * size);
+        for(int k=0; k<nrOfRandom && !unselected.isEmpty(); k++){
+            sample.add(unselected.get(rg.nextInt(unselected.size())));
+        }
+        return sample;
+    }
+
+    /**
+     * Register a change of the core; the removed accession (if any) becomes
+     * a candidate again.
+     */
+    public void changed(Accession removed){
+        changes++;
+        if(candidates != null && removed != null){
+            candidates.add(removed);
+        }
+    }
+
+    private void refresh(List<Accession> core, List<Accession> unselected, PseudoMeasure pm){
+        if(dm == null){
+            dm = pm.getDistanceMeasure();
+            if(dm == null){
+                dm = new ModifiedRogersDistance(core.size() + unselected.size());
+            }
+        }
+        Set<Accession> inCore = new HashSet<Accession>(core);
+        candidates = new HashSet<Accession>();
+        changes = 0;
+
+        // nearest non-members of each core member
+        int perMember = Math.max(1, size / (2 * Math.max(1, core.size())));
+        for(Accession c : core){
+            int cnt = 0;
+            for(Accession b : getNearest(c, core, unselected)){
+                if(cnt == perMember){
+                    break;
+                }
+                if(!inCore.contains(b) && dm.calculate(b, c) > 0.0){
+                    candidates.add(b);
+                    cnt++;
+                }
+            }
+        }
+
+        // accessions farthest from the core
+        final double minDist[] = new double[unselected.size()];
+        Integer order[] = new Integer[unselected.size()];
+        for(int i=0; i<unselected.size(); i++){
+            Accession a = unselected.get(i);
+            double d = Double.MAX_VALUE;
+            for(Accession c : core){
+                d = Math.min(d, dm.calculate(a, c));
+            }
+            minDist[i] = d;
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                return Double.compare(minDist[j], minDist[i]);
+            }
+        });
+        for(int k=0; k<order.length && candidates.size() < size; k++){
+            if(minDist[order[k]] > 0.0){
+                candidates.add(unselected.get(order[k]));
+            }
+        }
+    }
+
+    private Accession[] getNearest(Accession a, List<Accession> core, List<Accession> unselected){
+        Accession near[] = nearest.get(a);
+        if(near == null){
+            List<Accession> all = new ArrayList<Accession>(core.size() + unselected.size());
+            all.addAll(core);
+            all.addAll(unselected);
+            all.remove(a);
+            final double dist[] = new double[all.size()];
+            Integer order[] = new Integer[all.size()];
+            for(int i=0; i<all.size(); i++){
+                dist[i] = dm.calculate(a, all.get(i));
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i, Integer j) {
+                    return Double.compare(dist[i], dist[j]);
+                }
+            });
+            near = new Accession[Math.min(NR_OF_NEAREST, all.size())];
+            for(int k=0; k<near.length; k++){
+                near[k] = all.get(order[k]);
+            }
+            nearest.put(a, near);
+        }
+        return near;
+    }
+}
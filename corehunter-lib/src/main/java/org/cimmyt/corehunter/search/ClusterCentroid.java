@@ -14,75 +14,112 @@
 
 package org.cimmyt.corehunter.search;
 
-import java.util.ArrayList;
 import java.util.List;
 import org.cimmyt.corehunter.Accession;
 
 /**
+ * Centroid of a cluster of accessions, kept as the sum of the allele
+ * frequencies and the nr of accessions with a known (non-null) frequency, per
+ * allele over all markers. The frequency of an allele in the centroid is the
+ * mean over the accessions where it is known. Adding an accession or merging
+ * two centroids takes O(alleles) time, and no accession id is allocated.
  *
  * @author hermandebeukelaer
  */
-public class ClusterCentroid extends Accession {
+public class ClusterCentroid {
 
-    public ClusterCentroid(long clusterID){
-        super("Cluster Centroid " + clusterID);
-        ssrValues = new ArrayList<List<Double>>();
+    private int nrOfMarkers;
+    private double sum[];
+    private int count[];
+    private int size;
+
+    /**
+     * Empty centroid, the alleles are taken from the first accession added.
+     */
+    public ClusterCentroid(){
+        sum = null;
+        count = null;
+        size = 0;
     }
 
     /**
      * Update centroid after adding accession a to the cluster.
      */
-    public void update(Accession a, int prevSize){
-        List<List<Double>> newValues = a.getSSRValues();
-        List<Double> alleles, newAlleles;
-        if(prevSize == 0){
-            // First accession is added, so this is also the centroid
-            for(int i=0; i<newValues.size(); i++){
-                newAlleles = newValues.get(i);
-                alleles = new ArrayList<Double>(newAlleles.size());
-                alleles.addAll(newAlleles);
-                ssrValues.add(alleles);
-            }
-        } else {
-            // Not the first accession, properly update centroid
-            Double freq, newFreq, updFreq;
-            for(int i=0; i<ssrValues.size(); i++){
-                alleles = ssrValues.get(i);
-                newAlleles = newValues.get(i);
-                for(int j=0; j<alleles.size(); j++){
-                    freq = alleles.get(j);
-                    newFreq = newAlleles.get(j);
-                    if(newFreq != null){
-                        if(freq != null){
-                            updFreq = ((freq * prevSize) + newFreq)/(prevSize+1);
-                            alleles.set(j, updFreq);
-                        } else {
-                            alleles.set(j, newFreq);
-                        }
-                    }
+    public void add(Accession a){
+        List<List<Double>> values = a.getSSRValues();
+        if(sum == null){
+            nrOfMarkers = values.size();
+            sum = new double[a.numSSRAlleles()];
+            count = new int[sum.length];
+        }
+        int i = 0;
+        for(List<Double> alleles : values){
+            for(Double freq : alleles){
+                if(freq != null){
+                    sum[i] += freq;
+                    count[i]++;
                 }
+                i++;
             }
         }
+        size++;
     }
 
     /**
-     * Update centroid after adding multiple accessions
+     * Update centroid after merging the cluster with the given centroid into
+     * this cluster.
      */
-    public void update(List<Accession> accessions, int prevSize){
-        // To do: direct, faster implementation
-        for(Accession a : accessions){
-            update(a, prevSize);
-            prevSize++;
+    public void merge(ClusterCentroid c){
+        if(c.sum == null){
+            return;
+        }
+        if(sum == null){
+            nrOfMarkers = c.nrOfMarkers;
+            sum = new double[c.sum.length];
+            count = new int[c.count.length];
         }
+        for(int i=0; i<sum.length; i++){
+            sum[i] += c.sum[i];
+            count[i] += c.count[i];
+        }
+        size += c.size;
+    }
+
+    /**
+     * Nr of accessions in the cluster.
+     */
+    public int size(){
+        return size;
+    }
+
+    public int getNrOfMarkers(){
+        return nrOfMarkers;
+    }
+
+    public int getNrOfAlleles(){
+        return sum == null ? 0 : sum.length;
+    }
+
+    /**
+     * True if the frequency of allele i (over all markers) is known for some
+     * accession of the cluster.
+     */
+    public boolean isKnown(int i){
+        return count[i] > 0;
+    }
+
+    /**
+     * Mean frequency of allele i (over all markers), NaN if unknown.
+     */
+    public double getFrequency(int i){
+        return count[i] > 0 ? sum[i] / count[i] : Double.NaN;
     }
 
     @Override
     public String toString(){
         StringBuilder str = new StringBuilder("(");
-        for(List<Double> alleles : ssrValues){
-            for(Double allele : alleles){
-                str.append(allele + ",");
-            }
+        for(int i=0; i<getNrOfAlleles(); i++){
+            str.append((isKnown(i) ? Double.toString(getFrequency(i)) : "null") + ",");
         }
         str.append(")");
         return str.toString();
@@ -14,37 +14,108 @@
 
 package org.cimmyt.corehunter.search;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.measures.ClusterDistanceMeasure;
+import org.cimmyt.corehunter.measures.DistanceMeasure;
 
 /**
+ * Incremental agglomerative clustering into a fixed number of clusters.
+ *
+ * Pairs in the merge queue are not removed when one of their clusters is
+ * merged, but invalidated lazily: each pair records the sizes of both
+ * clusters when its distance was computed, and since a merged cluster keeps
+ * the id of one of its parts but grows, pairs whose clusters are gone or have
+ * grown are skipped when polled. The queue is compacted when it holds many
+ * more stale pairs than live ones.
+ *
+ * For very large collections there is a streaming mode (see
+ * setMaxMicroClusters) that never stores pairs: accessions are summarized in
+ * a fixed budget of micro-clusters, each with its centroid (count and allele
+ * sums) and the sum of squared distances of its accessions to the centroid
+ * (its squared radius times its size). Merges are chosen greedily by their
+ * cost, the increase of this sum (as in Ward's method). While the budget is
+ * not used up, each accession starts a new micro-cluster. After that, a new
+ * accession joins its nearest micro-cluster if that is cheaper than merging
+ * the two nearest micro-clusters, which are merged otherwise to make room for
+ * it. Each micro-cluster keeps its nearest neighbour, so adding an accession
+ * takes O(b) centroid distances for a budget of b micro-clusters. The
+ * micro-clusters can finally be merged into the desired number of clusters
+ * by centroid linkage (macroCluster). Centroid distances are computed with the distance measure
+ * underlying the cluster distance measure.
  *
  * @author hermandebeukelaer
  */
 public class Clustering {
 
+    // compact the merge queue when it exceeds this many times the nr of live pairs
+    private static final int MAX_STALE_FACTOR = 4;
+
     private Map<Long, AccessionCluster> clusters;
     private PriorityQueue<ClusterPair> mergeQueue;
 
     private int desiredClusters;
     private ClusterDistanceMeasure cm;
 
+    // streaming mode: budget of micro-clusters, 0 if disabled
+    private int maxMicroClusters;
+    private List<AccessionCluster> micro;
+    // sum of squared distances of the accessions to the centroid
+    private double sqDev[];
+    // nearest other micro-cluster (-1 if none) and the cost of merging with it
+    private int nn[];
+    private double nnCost[];
+    private boolean stale[];
+    private double newCost[];
+    // Ward cost while streaming, squared centroid distance in the macro pass
+    private boolean weighted;
+
     public Clustering(int desiredClusters, ClusterDistanceMeasure cm){
         this.desiredClusters = desiredClusters;
         this.cm = cm;
         clusters = new HashMap<Long, AccessionCluster>();
         mergeQueue = new PriorityQueue<ClusterPair>(desiredClusters, new ClusterPairComparator());
+        maxMicroClusters = 0;
+        micro = null;
     }
 
     public void reset(){
         clusters.clear();
         mergeQueue.clear();
+        cm.clear();
+        if(micro != null){
+            micro.clear();
+        }
+    }
+
+    /**
+     * Switch to the streaming mode with the given budget of micro-clusters
+     * (at least the desired nr of clusters), or back to exact clustering if
+     * max is 0. Clusters added so far are discarded.
+     *
+     * @param max
+     */
+    public void setMaxMicroClusters(int max){
+        reset();
+        maxMicroClusters = max > 0 ? Math.max(max, desiredClusters) : 0;
+        if(maxMicroClusters > 0){
+            micro = new ArrayList<AccessionCluster>(maxMicroClusters+1);
+            weighted = true;
+            sqDev = new double[maxMicroClusters+1];
+            nn = new int[maxMicroClusters+1];
+            nnCost = new double[maxMicroClusters+1];
+            stale = new boolean[maxMicroClusters+1];
+            newCost = new double[maxMicroClusters+1];
+        } else {
+            micro = null;
+        }
     }
 
     public void setDesiredClusters(int nr){
@@ -59,6 +130,10 @@ public class Clustering {
      * @param a
      */
     public void addAccession(Accession a){
+        if(maxMicroClusters > 0){
+            addToMicroClusters(a);
+            return;
+        }
         // Create new cluster, containing a
         AccessionCluster newCluster = new AccessionCluster(a, cm.needsCentroid());
         
@@ -75,15 +150,198 @@ public class Clustering {
     }
 
     public Collection<AccessionCluster> getClusters(){
+        if(maxMicroClusters > 0){
+            return micro;
+        }
         return clusters.values();
     }
 
+    /**
+     * In streaming mode, merge the micro-clusters with the nearest centroids
+     * until the desired nr of clusters remains. Unlike the Ward costs used
+     * while streaming, centroid distances do not favour merging small
+     * micro-clusters, so outlying accessions are kept in separate clusters.
+     * Has no effect in the exact mode; no more accessions should be added
+     * afterwards.
+     */
+    public void macroCluster(){
+        if(maxMicroClusters > 0){
+            weighted = false;
+            for(int k=0; k<micro.size(); k++){
+                findNearest(k);
+            }
+            while(micro.size() > desiredClusters){
+                mergeNearestMicroClusters();
+            }
+        }
+    }
+
+    private void addToMicroClusters(Accession a){
+        AccessionCluster newCluster = new AccessionCluster(a, true);
+        int m = micro.size();
+
+        // nearest micro-cluster
+        int nearest = -1;
+        for(int k=0; k<m; k++){
+            newCost[k] = mergeCost(newCluster, micro.get(k));
+            if(nearest == -1 || newCost[k] < newCost[nearest]){
+                nearest = k;
+            }
+        }
+
+        if(m == maxMicroClusters && newCost[nearest] <= nnCost[nearestPair()]){
+            // absorb
+            sqDev[nearest] += newCost[nearest];
+            micro.get(nearest).merge(newCluster);
+            centroidMoved(nearest);
+        } else {
+            // new micro-cluster
+            micro.add(newCluster);
+            sqDev[m] = 0.0;
+            stale[m] = false;
+            nn[m] = -1;
+            nnCost[m] = Double.MAX_VALUE;
+            for(int k=0; k<m; k++){
+                if(newCost[k] < nnCost[m]){
+                    nn[m] = k;
+                    nnCost[m] = newCost[k];
+                }
+                if(newCost[k] < nnCost[k]){
+                    nn[k] = m;
+                    nnCost[k] = newCost[k];
+                }
+            }
+            if(micro.size() > maxMicroClusters){
+                mergeNearestMicroClusters();
+            }
+        }
+    }
+
+    // micro-cluster with the cheapest merge
+    private int nearestPair(){
+        int i = 0;
+        for(int k=1; k<micro.size(); k++){
+            if(nnCost[k] < nnCost[i]){
+                i = k;
+            }
+        }
+        return i;
+    }
+
+    private void mergeNearestMicroClusters(){
+        int i = nearestPair();
+        int j = nn[i];
+
+        // merge j into i
+        sqDev[i] += sqDev[j] + (weighted ? nnCost[i] : wardCost(micro.get(i), micro.get(j)));
+        micro.get(i).merge(micro.get(j));
+
+        // micro-clusters nearest to j need a new nearest neighbour
+        for(int k=0; k<micro.size(); k++){
+            stale[k] = nn[k] == j;
+        }
+
+        // move the last micro-cluster into slot j
+        int last = micro.size() - 1;
+        micro.set(j, micro.get(last));
+        sqDev[j] = sqDev[last];
+        nn[j] = nn[last];
+        nnCost[j] = nnCost[last];
+        stale[j] = stale[last];
+        micro.remove(last);
+        for(int k=0; k<micro.size(); k++){
+            if(nn[k] == last){
+                nn[k] = j;
+            }
+        }
+        if(i == last){
+            i = j;
+        }
+
+        centroidMoved(i);
+    }
+
+    /**
+     * Update nearest neighbours after micro-cluster i changed, also for the
+     * micro-clusters marked as stale.
+     */
+    private void centroidMoved(int i){
+        AccessionCluster clust = micro.get(i);
+        nn[i] = -1;
+        nnCost[i] = Double.MAX_VALUE;
+        stale[i] = false;
+        for(int k=0; k<micro.size(); k++){
+            if(k == i){
+                continue;
+            }
+            double c = mergeCost(clust, micro.get(k));
+            if(c < nnCost[i]){
+                nn[i] = k;
+                nnCost[i] = c;
+            }
+            if(c < nnCost[k]){
+                // i is now nearer than any other
+                nn[k] = i;
+                nnCost[k] = c;
+                stale[k] = false;
+            } else if(nn[k] == i){
+                // i moved away, another may be nearer now
+                stale[k] = true;
+            }
+        }
+        for(int k=0; k<micro.size(); k++){
+            if(stale[k]){
+                findNearest(k);
+                stale[k] = false;
+            }
+        }
+    }
+
+    private void findNearest(int i){
+        AccessionCluster clust = micro.get(i);
+        nn[i] = -1;
+        nnCost[i] = Double.MAX_VALUE;
+        for(int k=0; k<micro.size(); k++){
+            if(k != i){
+                double c = mergeCost(clust, micro.get(k));
+                if(c < nnCost[i]){
+                    nn[i] = k;
+                    nnCost[i] = c;
+                }
+            }
+        }
+    }
+
+    private double mergeCost(AccessionCluster clust1, AccessionCluster clust2){
+        if(weighted){
+            return wardCost(clust1, clust2);
+        }
+        double d = centroidDistance(clust1, clust2);
+        return d * d;
+    }
+
+    /**
+     * Increase of the sum of squared distances to the centroid when merging
+     * two clusters: ni*nj/(ni+nj) times their squared centroid distance.
+     */
+    private double wardCost(AccessionCluster clust1, AccessionCluster clust2){
+        double d = centroidDistance(clust1, clust2);
+        double n1 = clust1.size();
+        double n2 = clust2.size();
+        return n1 * n2 / (n1 + n2) * d * d;
+    }
+
+    private double centroidDistance(AccessionCluster clust1, AccessionCluster clust2){
+        DistanceMeasure dm = cm.getDistanceMeasure();
+        return dm.calculate(clust1.getCentroid(), clust2.getCentroid());
+    }
+
     private void updateMergeQueue(AccessionCluster newCluster){
         double dist;
         ClusterPair clustPair;
         for(long id : clusters.keySet()){
             dist = cm.calculate(newCluster, clusters.get(id));
-            clustPair = new ClusterPair(id, newCluster.id(), dist);
+            clustPair = new ClusterPair(clusters.get(id), newCluster, dist);
             mergeQueue.add(clustPair);
         }
     }
@@ -92,28 +350,44 @@ public class Clustering {
      * Merge these two clusters with smallest distance between them
      */
     private void merge(){
-        // Get pair to merge
+        // Get pair to merge, skipping stale pairs
         ClusterPair toMerge = mergeQueue.poll();
-        // Remove all other pairs containing one of the two ids which will now be merged
-        Iterator<ClusterPair> it = mergeQueue.iterator();
-        ClusterPair pair;
-        while(it.hasNext()){
-            pair = it.next();
-            if(pair.getID1() == toMerge.getID1()
-                    || pair.getID1() == toMerge.getID2()
-                    || pair.getID2() == toMerge.getID1()
-                    || pair.getID2() == toMerge.getID2()){
-                it.remove();
-            }
+        while(!isValid(toMerge)){
+            toMerge = mergeQueue.poll();
         }
         // Merge clusters
         AccessionCluster merged = clusters.remove(toMerge.getID1());
         AccessionCluster clust2 = clusters.remove(toMerge.getID2());
+        cm.merged(merged, clust2);
         merged.merge(clust2);
         // Update merge queue
         updateMergeQueue(merged);
         // Add merged cluster to clusters
         clusters.put(merged.id(), merged);
+        // Drop stale pairs if they dominate the queue
+        long live = (long) clusters.size() * (clusters.size() - 1) / 2;
+        if(mergeQueue.size() > MAX_STALE_FACTOR * Math.max(live, desiredClusters)){
+            compactMergeQueue();
+        }
+    }
+
+    /**
+     * A pair is valid if both clusters still exist with the same size.
+     */
+    private boolean isValid(ClusterPair pair){
+        AccessionCluster c1 = clusters.get(pair.getID1());
+        AccessionCluster c2 = clusters.get(pair.getID2());
+        return c1 != null && c2 != null
+                && c1.size() == pair.getSize1() && c2.size() == pair.getSize2();
+    }
+
+    private void compactMergeQueue(){
+        Iterator<ClusterPair> it = mergeQueue.iterator();
+        while(it.hasNext()){
+            if(!isValid(it.next())){
+                it.remove();
+            }
+        }
     }
 
     private class ClusterPair{
@@ -121,11 +395,17 @@ public class Clustering {
         private long id1;
         private long id2;
 
+        // cluster sizes at the time the distance was computed
+        private int size1;
+        private int size2;
+
         private double dist;
 
-        public ClusterPair(long id1, long id2, double dist){
-            this.id1 = id1;
-            this.id2 = id2;
+        public ClusterPair(AccessionCluster clust1, AccessionCluster clust2, double dist){
+            id1 = clust1.id();
+            id2 = clust2.id();
+            size1 = clust1.size();
+            size2 = clust2.size();
             this.dist = dist;
         }
 
@@ -137,6 +417,14 @@ public class Clustering {
             return id2;
         }
 
+        public int getSize1(){
+            return size1;
+        }
+
+        public int getSize2(){
+            return size2;
+        }
+
         public double getDist(){
             return dist;
         }
@@ -20,7 +20,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -28,12 +27,15 @@ import java.util.Stack;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.AccessionCollection;
-import org.cimmyt.corehunter.measures.GroupAverageClusterDistance;
+import org.cimmyt.corehunter.measures.CentroidClusterDistance;
 import org.cimmyt.corehunter.measures.ModifiedRogersDistance;
 import org.cimmyt.corehunter.measures.PseudoMeasure;
 
@@ -53,6 +55,22 @@ public final class CoreSubsetSearch {
 
     final static double K_b2 = 1.360572e-9;
 
+    // Parallel REMC: period (milliseconds) at which the published best core is inspected
+    private final static long PAR_REMC_MONITOR_PERIOD = 10;
+
+    // Island model GA: period (milliseconds) at which the published best core is inspected
+    private final static long ISLAND_MONITOR_PERIOD = 10;
+
+    // Exhaustive search: minimum nr of k-subsets per parallel task, and
+    // max nr of tasks per thread (some slack for load balancing)
+    private final static long MIN_EXHAUSTIVE_RANGE = 1024;
+    private final static int EXHAUSTIVE_TASKS_PER_THREAD = 4;
+
+    // Stratified starts: largest collection clustered with a full dendrogram
+    // (n^2/2 floats), and budget of micro-clusters per stratum beyond that
+    private final static int MAX_DENDROGRAM_SIZE = 5000;
+    private final static int MICRO_CLUSTERS_PER_STRATUM = 4;
+
     // this class should not be instantiable from outside class
     private CoreSubsetSearch() {
 
@@ -62,14 +80,46 @@ public final class CoreSubsetSearch {
 						 PseudoMeasure pm, int sampleMin, int sampleMax,
 						 double runtime, double minProg, double stuckTime,
                                                  int numReplicas, double minT, double maxT, int mcSteps) {
+        return remcSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg, stuckTime,
+                          numReplicas, minT, maxT, mcSteps, false);
+    }
+
+    /**
+     * REMC search with an adaptive temperature ladder: temperatures are
+     * re-spaced based on the measured swap acceptance rates. If adaptReplicas
+     * is true, replicas are also inserted where adjacent temperatures hardly
+     * ever swap and removed where they nearly always swap (between 2 and twice
+     * the initial nr of replicas).
+     */
+    public static AccessionCollection remcSearch(AccessionCollection ac, Neighborhood nh,
+						 PseudoMeasure pm, int sampleMin, int sampleMax,
+						 double runtime, double minProg, double stuckTime,
+                                                 int numReplicas, double minT, double maxT, int mcSteps,
+                                                 boolean adaptReplicas) {
+        return remcSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg, stuckTime,
+                          numReplicas, minT, maxT, mcSteps, adaptReplicas, 1);
+    }
+
+    /**
+     * REMC search in which each replica scores up to mcBatch random neighbors
+     * of its current core at once (see SimpleMonteCarloReplica).
+     */
+    public static AccessionCollection remcSearch(AccessionCollection ac, Neighborhood nh,
+						 PseudoMeasure pm, int sampleMin, int sampleMax,
+						 double runtime, double minProg, double stuckTime,
+                                                 int numReplicas, double minT, double maxT, int mcSteps,
+                                                 boolean adaptReplicas, int mcBatch) {
 	
-	SimpleMonteCarloReplica replicas[] = new SimpleMonteCarloReplica[numReplicas];
+	List<SimpleMonteCarloReplica> replicas = new ArrayList<SimpleMonteCarloReplica>(numReplicas);
+	TemperatureLadder ladder = new TemperatureLadder(minT, maxT, numReplicas);
 	Random r = new Random();
 	
 	for(int i=0; i<numReplicas; i++) {
-	    double T = minT + i*(maxT - minT)/(numReplicas - 1);
-	    replicas[i] = new SimpleMonteCarloReplica(ac, pm, nh, mcSteps, -1, sampleMin, sampleMax, T);
-            replicas[i].init();
+	    SimpleMonteCarloReplica rep = new SimpleMonteCarloReplica(ac, pm, nh, mcSteps, -1, sampleMin, sampleMax,
+	                                                              ladder.getTemperature(i));
+            rep.setBatchSize(mcBatch);
+            rep.init();
+            replicas.add(rep);
 	}
 	
 	double bestScore = -Double.MAX_VALUE;
@@ -94,17 +144,17 @@ public final class CoreSubsetSearch {
 
 	    // run MC search for each replica
             impr = false;
-	    for(int i=0; i<numReplicas; i++) {
-		replicas[i].doSteps();
-                double bestRepScore = replicas[i].getBestScore();
+	    for(int i=0; i<replicas.size(); i++) {
+		replicas.get(i).doSteps();
+                double bestRepScore = replicas.get(i).getBestScore();
 		
 		if (bestRepScore > bestScore || 
-		    (bestRepScore == bestScore && replicas[i].getBestCore().size() < bestCore.size())) {
+		    (bestRepScore == bestScore && replicas.get(i).getBestSize() < bestCore.size())) {
 
                     
 		    bestScore = bestRepScore;
 		    bestCore.clear();
-		    bestCore.addAll(replicas[i].getBestCore());
+		    bestCore.addAll(replicas.get(i).getBestCore());
 
                     impr=true;
                     lastImprTime = (tb.getCurrentThreadCpuTime() - sTime);
@@ -131,34 +181,43 @@ public final class CoreSubsetSearch {
             prevBestSize = bestCore.size();
 
 	    // consider swapping temperatures of adjacent replicas
- 	    for(int i=swapBase; i<numReplicas-1; i+=2) {
-		SimpleMonteCarloReplica m = replicas[i];
-		SimpleMonteCarloReplica n = replicas[i+1];
+ 	    for(int i=swapBase; i<replicas.size()-1; i+=2) {
+		SimpleMonteCarloReplica m = replicas.get(i);
+		SimpleMonteCarloReplica n = replicas.get(i+1);
 	
-		double B_m = 1.0 / (K_b2 * m.getTemperature());
-		double B_n = 1.0 / (K_b2 * n.getTemperature());
-		double B_diff = B_n - B_m;
-		double E_delta = m.getScore() - n.getScore();
-		
-		boolean swap = false;
-
-		if( E_delta <= 0 ) {
-		    swap = true;
-		} else {
-		    double p = r.nextDouble();
-		    
-		    if( Math.exp(B_diff * E_delta) > p ) {
-			swap = true;
-		    }
-		}
+		boolean swap = acceptSwap(m.getTemperature(), n.getTemperature(), m.getScore(), n.getScore(),
+		                          r.nextDouble());
+		ladder.recordSwap(i, swap);
 		
 		if (swap) {
 		    m.swapTemperature(n);
-		    SimpleMonteCarloReplica temp = replicas[i];
-		    replicas[i] = replicas[i+1];
-		    replicas[i+1] = temp;
+		    replicas.set(i, n);
+		    replicas.set(i+1, m);
 		}
 	    }
+
+            // adapt temperature ladder to measured swap acceptance rates
+            if(ladder.adapt()){
+                if(adaptReplicas){
+                    int split = ladder.getPairToSplit();
+                    int remove = ladder.getTemperatureToRemove();
+                    if(split >= 0 && replicas.size() < 2*numReplicas){
+                        // new replica starts from the best core of its colder neighbour
+                        ladder.split(split);
+                        SimpleMonteCarloReplica rep = new SimpleMonteCarloReplica(ac, pm, nh, mcSteps, -1,
+                                                          sampleMin, sampleMax, ladder.getTemperature(split+1));
+                        rep.setBatchSize(mcBatch);
+                        rep.init(new ArrayList<Accession>(replicas.get(split).getBestCore()));
+                        replicas.add(split+1, rep);
+                    } else if(remove >= 0 && replicas.size() > 2){
+                        ladder.remove(remove);
+                        replicas.remove(remove);
+                    }
+                }
+                for(int i=0; i<replicas.size(); i++){
+                    replicas.get(i).setTemperature(ladder.getTemperature(i));
+                }
+            }
 	    swapBase = 1 - swapBase;
 	}
         if(WRITE_PROGRESS_FILE){
@@ -171,8 +230,8 @@ public final class CoreSubsetSearch {
 	core.add(bestCore);
 	
 	// temp
-	// for(int i=0; i<replicas.length; i++) {
-	//    replicas[i].printStats();
+	// for(int i=0; i<replicas.size(); i++) {
+	//    replicas.get(i).printStats();
 	// }
 	
 	return core;
@@ -182,21 +241,195 @@ public final class CoreSubsetSearch {
 						 PseudoMeasure pm, int sampleMin, int sampleMax,
 						 double runtime, double minProg, double stuckTime,
                                                  int numReplicas, double minT, double maxT, int mcSteps) {
+        return parRemcSearch(ac, nh, pm, sampleMin, sampleMax, runtime, minProg, stuckTime,
+                             numReplicas, minT, maxT, mcSteps, 1);
+    }
+
+    /**
+     * Parallel REMC search in which each replica scores up to mcBatch random
+     * neighbors of its current core at once.
+     */
+    public static AccessionCollection parRemcSearch(AccessionCollection ac, Neighborhood nh,
+						 PseudoMeasure pm, int sampleMin, int sampleMax,
+						 double runtime, double minProg, double stuckTime,
+                                                 int numReplicas, double minT, double maxT, int mcSteps,
+                                                 int mcBatch) {
 
 	SimpleMonteCarloReplica replicas[] = new SimpleMonteCarloReplica[numReplicas];
-	Random r = new Random();
+	TemperatureLadder ladder = new TemperatureLadder(minT, maxT, numReplicas);
 
 	for(int i=0; i<numReplicas; i++) {
-	    double T = minT + i*(maxT - minT)/(numReplicas - 1);
-	    replicas[i] = new SimpleMonteCarloReplica(ac, pm, nh.clone(), mcSteps, -1, sampleMin, sampleMax, T);
+	    replicas[i] = new SimpleMonteCarloReplica(ac, pm, nh.clone(), mcSteps, -1, sampleMin, sampleMax,
+	                                              ladder.getTemperature(i));
+            replicas[i].setBatchSize(mcBatch);
             replicas[i].init();
 	}
 
+        // replicas run continuously, each on its own worker, and exchange
+        // temperatures asynchronously (no barrier between rounds)
+        ParallelTempering pt = new ParallelTempering(replicas, ladder);
+        ExecutorService pool = Executors.newFixedThreadPool(numReplicas);
+        List<Future> futures = new ArrayList<Future>(numReplicas);
+
+	long sTime = System.currentTimeMillis();
+	long eTime = sTime + (long) (runtime * 1000);
+
+        for(ParallelTempering.Walker w : pt.getWalkers()){
+            futures.add(pool.submit(w));
+        }
+
 	double bestScore = -Double.MAX_VALUE;
 	List<Accession> bestCore = new ArrayList<Accession>();
 
-        List<Future> futures = new ArrayList<Future>(numReplicas);
-        ExecutorService pool = Executors.newCachedThreadPool();
+        boolean cont = true, impr;
+        double prevBestScore = bestScore, prog;
+        int prevBestSize = ac.size();
+        long lastImprTime = 0;
+
+        ProgressWriter pw;
+        if(WRITE_PROGRESS_FILE){
+            pw = new ProgressWriter(PROGRESS_FILE_PATH, PROGRESS_WRITE_PERIOD);
+            pw.start();
+        }
+	while( cont && System.currentTimeMillis() < eTime ) {
+
+            // periodically inspect the published global best
+            try {
+                Thread.sleep(PAR_REMC_MONITOR_PERIOD);
+            } catch (InterruptedException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            }
+
+            impr=false;
+            BestCore best = pt.getBest();
+            if (best.score > bestScore ||
+                (best.score == bestScore && best.core.size() < bestCore.size())) {
+
+                bestScore = best.score;
+                bestCore = best.core;
+
+                impr=true;
+                lastImprTime = System.currentTimeMillis() - sTime;
+                System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                                   "\ttime: " + lastImprTime/1000.0);
+                // update progress writer
+                if(WRITE_PROGRESS_FILE){
+                    pw.updateScore(bestScore);
+                }
+            }
+
+            // check min progression
+            prog = bestScore - prevBestScore;
+            if(impr && bestCore.size() >= prevBestSize && prog < minProg){
+                cont = false;
+            }
+            // check stuckTime
+            if((System.currentTimeMillis()-sTime-lastImprTime)/1000.0 > stuckTime){
+                cont = false;
+            }
+
+            prevBestScore = bestScore;
+            prevBestSize = bestCore.size();
+
+            // re-space temperatures (replicas pick up the new temperature of
+            // their slot at their next checkpoint)
+            ladder.adapt();
+	}
+
+        // stop replicas and wait until they have finished their current run
+        pt.stop();
+        pool.shutdown();
+        for(int i=0; i<futures.size(); i++){
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            } catch (ExecutionException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        // final replica runs may have improved the best core
+        BestCore best = pt.getBest();
+        if (best.score > bestScore ||
+            (best.score == bestScore && best.core.size() < bestCore.size())) {
+            bestScore = best.score;
+            bestCore = best.core;
+            System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                               "\ttime: " + (System.currentTimeMillis() - sTime)/1000.0);
+            if(WRITE_PROGRESS_FILE){
+                pw.updateScore(bestScore);
+            }
+        }
+
+        if(WRITE_PROGRESS_FILE){
+            pw.stop();
+        }
+        
+        System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
+
+	AccessionCollection core = new AccessionCollection();
+	core.add(bestCore);
+
+	return core;
+    }
+
+    /**
+     * Metropolis criterion for swapping the temperatures of two replicas,
+     * where replica m has the lower temperature; p is a uniform random number
+     * in [0,1).
+     */
+    static boolean acceptSwap(double T_m, double T_n, double score_m, double score_n, double p){
+	double B_m = 1.0 / (K_b2 * T_m);
+	double B_n = 1.0 / (K_b2 * T_n);
+	double B_diff = B_n - B_m;
+	double E_delta = score_m - score_n;
+
+	return E_delta <= 0 || Math.exp(B_diff * E_delta) > p;
+    }
+
+    public static AccessionCollection parRemcSearch(AccessionCollection ac, PseudoMeasure pm,
+                                                    int sampleMin, int sampleMax,
+                                                    double runtime, double minProg, double stuckTime,
+                                                    int numReplicas, double minT, double maxT, int mcSteps,
+                                                    RemoteReplicaPool workers) {
+        return parRemcSearch(ac, pm, sampleMin, sampleMax, runtime, minProg, stuckTime,
+                             numReplicas, minT, maxT, mcSteps, 1, workers);
+    }
+
+    /**
+     * Parallel REMC with replicas hosted by worker processes, each scoring up
+     * to mcBatch random neighbors at once. Each round, all replicas run
+     * simultaneously on their workers, after which the coordinator considers
+     * swapping the temperatures of adjacent replicas. Unlike the in-process
+     * parallel REMC, the rounds are synchronous: the coordinator waits for
+     * all workers before swapping.
+     */
+    public static AccessionCollection parRemcSearch(AccessionCollection ac, PseudoMeasure pm,
+                                                    int sampleMin, int sampleMax,
+                                                    double runtime, double minProg, double stuckTime,
+                                                    int numReplicas, double minT, double maxT, int mcSteps,
+                                                    int mcBatch, RemoteReplicaPool workers) {
+
+	List<RemoteReplica> replicas = new ArrayList<RemoteReplica>(numReplicas);
+	TemperatureLadder ladder = new TemperatureLadder(minT, maxT, numReplicas);
+	Random r = new Random();
+
+	for(int i=0; i<numReplicas; i++) {
+	    RemoteReplica rep = workers.createMonteCarloReplica(pm, mcSteps, sampleMin, sampleMax, ladder.getTemperature(i),
+	                                                        mcBatch);
+            rep.init();
+            replicas.add(rep);
+	}
+
+	double bestScore = -Double.MAX_VALUE;
+	List<Accession> bestCore = new ArrayList<Accession>();
 
 	long sTime = System.currentTimeMillis();
 	long eTime = sTime + (long) (runtime * 1000);
@@ -214,38 +447,24 @@ public final class CoreSubsetSearch {
         }
 	while( cont && System.currentTimeMillis() < eTime ) {
 
-	    // run MC search for each replica (parallel in pool!)
-	    for(int i=0; i<numReplicas; i++) {
-                Future fut = pool.submit(replicas[i]);
-                futures.add(fut);
+	    // run MC search for each replica (on all workers at once)
+	    for(RemoteReplica rep : replicas) {
+                rep.start();
             }
-
-            // Wait until all tasks have been completed
-            for(int i=0; i<futures.size(); i++){
-                try {
-                    futures.get(i).get(); // doesn't return a result, but blocks until done
-                } catch (InterruptedException ex) {
-                    System.err.println("Error in thread pool: " + ex);
-                    ex.printStackTrace();
-                    System.exit(1);
-                } catch (ExecutionException ex) {
-                    System.err.println("Error in thread pool: " + ex);
-                    ex.printStackTrace();
-                    System.exit(1);
-                }
+	    for(RemoteReplica rep : replicas) {
+                rep.finish();
             }
-            
-            // All tasks are done, inspect results
+
             impr=false;
-            for(int i=0; i<numReplicas; i++){
-                double bestRepScore = replicas[i].getBestScore();
+            for(RemoteReplica rep : replicas){
+                double bestRepScore = rep.getBestScore();
 
 		if (bestRepScore > bestScore ||
-		    (bestRepScore == bestScore && replicas[i].getBestCore().size() < bestCore.size())) {
+		    (bestRepScore == bestScore && rep.getBestSize() < bestCore.size())) {
 
 		    bestScore = bestRepScore;
 		    bestCore.clear();
-		    bestCore.addAll(replicas[i].getBestCore());
+		    bestCore.addAll(rep.getBestCore());
 
                     impr=true;
                     lastImprTime = System.currentTimeMillis() - sTime;
@@ -272,40 +491,33 @@ public final class CoreSubsetSearch {
             prevBestSize = bestCore.size();
 
 	    // consider swapping temperatures of adjacent replicas
- 	    for(int i=swapBase; i<numReplicas-1; i+=2) {
-		SimpleMonteCarloReplica m = replicas[i];
-		SimpleMonteCarloReplica n = replicas[i+1];
-
-		double B_m = 1.0 / (K_b2 * m.getTemperature());
-		double B_n = 1.0 / (K_b2 * n.getTemperature());
-		double B_diff = B_n - B_m;
-		double E_delta = m.getScore() - n.getScore();
-
-		boolean swap = false;
-
-		if( E_delta <= 0 ) {
-		    swap = true;
-		} else {
-		    double p = r.nextDouble();
+ 	    for(int i=swapBase; i<replicas.size()-1; i+=2) {
+		RemoteReplica m = replicas.get(i);
+		RemoteReplica n = replicas.get(i+1);
 
-		    if( Math.exp(B_diff * E_delta) > p ) {
-			swap = true;
-		    }
-		}
+		boolean swap = acceptSwap(m.getTemperature(), n.getTemperature(), m.getScore(), n.getScore(),
+		                          r.nextDouble());
+		ladder.recordSwap(i, swap);
 
 		if (swap) {
 		    m.swapTemperature(n);
-		    SimpleMonteCarloReplica temp = replicas[i];
-		    replicas[i] = replicas[i+1];
-		    replicas[i+1] = temp;
+		    replicas.set(i, n);
+		    replicas.set(i+1, m);
 		}
 	    }
 	    swapBase = 1 - swapBase;
+
+            // adapt temperature ladder to measured swap acceptance rates
+            if(ladder.adapt()){
+                for(int i=0; i<replicas.size(); i++){
+                    replicas.get(i).setTemperature(ladder.getTemperature(i));
+                }
+            }
 	}
         if(WRITE_PROGRESS_FILE){
             pw.stop();
         }
-        
+
         System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
 
 	AccessionCollection core = new AccessionCollection();
@@ -368,39 +580,116 @@ public final class CoreSubsetSearch {
             System.exit(1);
         }
 	int coreSize = sampleMin;
-	AccessionCollection temp = null, core = null;
-        double score, bestScore = -Double.MAX_VALUE;
-        int progress = 0, newProgress;
-        String cacheID = PseudoMeasure.getUniqueId();
 
-        // Calculate pseudomeasure for all possible core sets and return best core
+        // Calculate pseudomeasure for all possible core sets and return best core.
+        // The revolving door order of k-subsets is split into contiguous rank ranges
+        // which are evaluated in parallel, each with its own cached core.
 
-        ThreadMXBean tb = ManagementFactory.getThreadMXBean();
-	double sTime = tb.getCurrentThreadCpuTime();
+        long sTime = System.currentTimeMillis();
 
         KSubsetGenerator ksub = new KSubsetGenerator(coreSize, ac.size());
         long nr = ksub.getNrOfKSubsets();
         if(output) System.out.println("Nr of possible core sets: " + nr + "\n-------------");
-        Integer[] icore = ksub.first();
-        for(long i=1; i<=nr; i++){
-            newProgress = (int) (((double) i) / ((double) nr) * 100);
-            if(newProgress > progress){
-                if(output) System.out.println("### Progress: " + newProgress + "%");
-                progress = newProgress;
+
+        int nrOfThreads = ForkJoinPool.commonPool().getParallelism();
+        int nrOfTasks = (int) Math.max(1, Math.min(nr / MIN_EXHAUSTIVE_RANGE, EXHAUSTIVE_TASKS_PER_THREAD * nrOfThreads));
+        AtomicLong evaluated = new AtomicLong(0);
+        AtomicInteger progress = new AtomicInteger(0);
+        List<ExhaustiveSearchTask> tasks = new ArrayList<ExhaustiveSearchTask>(nrOfTasks);
+        for(int t=0; t<nrOfTasks; t++){
+            long firstRank = nr * t / nrOfTasks;
+            long lastRank = nr * (t+1) / nrOfTasks - 1;
+            tasks.add(new ExhaustiveSearchTask(ac.getAccessions(), pm, coreSize, firstRank, lastRank,
+                                               evaluated, progress, nr, output, sTime));
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // Reduce in rank order, so that ties go to the first core in the order
+        int[] bestCore = null;
+        double bestScore = -Double.MAX_VALUE;
+        for(ExhaustiveSearchTask task : tasks){
+            if(task.getBestScore() > bestScore){
+                bestScore = task.getBestScore();
+                bestCore = task.getBestCore();
             }
-            temp = ac.subset(icore);
-            // Calculate pseudomeasure
-            score = pm.calculate(temp.getAccessions(), cacheID);
-            if(score > bestScore){
-                core = temp;
-                bestScore = score;
-                if(output)System.out.println("best score: " + bestScore + "\tsize: " + core.size() +
-                                   "\ttime: " + (tb.getCurrentThreadCpuTime() - sTime)/1000000000);
+        }
+        if(bestCore == null){
+            // no core with a comparable score (e.g. NaN for all cores)
+            if(output) System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
+            return null;
+        }
+        if(output){
+            System.out.println("best score: " + bestScore + "\tsize: " + coreSize +
+                               "\ttime: " + (System.currentTimeMillis() - sTime)/1000.0);
+            System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
+        }
+
+        return ac.subset(bestCore);
+    }
+
+    /**
+     * Exact search by branch and bound over include/exclude decisions for each
+     * accession, pruning subtrees with the bounds provided by the measures.
+     * Subtrees near the root are searched in parallel on the common fork/join
+     * pool. If the runtime runs out before the tree is exhausted, the best core
+     * found so far is returned together with a proven optimality gap.
+     *
+     * @param ac
+     * @param pm
+     * @param sampleMin
+     * @param sampleMax
+     * @param runtime
+     * @return
+     */
+    public static AccessionCollection branchAndBoundSearch(AccessionCollection ac, PseudoMeasure pm,
+                                                           int sampleMin, int sampleMax, double runtime){
+        // Check if sampleMin and sampleMax are equal (required, as for exh search)
+        if(sampleMin != sampleMax){
+            System.err.println("\nError: minimum and maximum sample size should be equal for branch and bound search.\n");
+            System.exit(1);
+        }
+        int coreSize = sampleMin;
+
+        long sTime = System.currentTimeMillis();
+        long eTime = sTime + (long) (runtime * 1000);
+
+        // Start from a greedy core: it is a good incumbent for pruning, and
+        // deciding its accessions first steers the search towards it
+        List<Accession> greedyCore = new ArrayList<Accession>();
+        if(coreSize >= 2){
+            LRReplica greedy = new LRReplica(ac, pm, -1, -1, coreSize, coreSize, 1, 0, false);
+            greedy.init();
+            greedy.doSteps();
+            greedyCore = greedy.getBestCore();
+        }
+        List<Accession> accessions = new ArrayList<Accession>(greedyCore);
+        for(Accession a : ac.getAccessions()){
+            if(!greedyCore.contains(a)){
+                accessions.add(a);
             }
-            ksub.successor(icore);
         }
-        if(output) System.out.println("### End time: " + (tb.getCurrentThreadCpuTime() - sTime)/1000000000);
 
+        BranchAndBoundTask.Search search = new BranchAndBoundTask.Search(accessions, pm, coreSize,
+                                                                         sTime, eTime, true);
+        if(greedyCore.size() == coreSize){
+            search.offer(greedyCore, pm.calculate(greedyCore));
+        }
+        try {
+            ForkJoinPool.commonPool().invoke(new BranchAndBoundTask(search, new ArrayList<Accession>(), 0, 0));
+        } finally {
+            search.finish();
+        }
+
+        System.out.println("### Nodes: " + search.getNrOfNodes());
+        System.out.println("### Optimality gap: " + search.getOptimalityGap());
+        System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
+
+        AccessionCollection core = new AccessionCollection();
+        core.add(search.getBestCore());
         return core;
     }
 
@@ -591,16 +880,16 @@ public final class CoreSubsetSearch {
     /**
      * TABU Search.
      *
-     * Tabu list is a list of indices at which the current core set cannot be
-     * perturbed (delete, swap) to form a new core set as long as the index is contained
-     * in the tabu list. After each perturbation step, the index of the newly added
-     * accession (if it exists) is added to the tabu list, to ensure this accesion is
-     * not again removed from the core set (or replaced) during the next few rounds.
+     * Tabu list holds the accessions which cannot be removed from the current core
+     * set (delete, swap) to form a new core set as long as they are contained in the
+     * tabu list. After each perturbation step, the newly added accession (if it exists)
+     * is added to the tabu list, to ensure this accesion is not again removed from the
+     * core set (or replaced) during the next few rounds.
      * 
-     * If no new accession was added (pure deletion), a value "-1" is added to the tabu list.
-     * As long as such values are contained in the tabu list, adding a new accesion without
+     * If no new accession was added (pure deletion), the step is recorded as such.
+     * As long as such steps are contained in the tabu list, adding a new accesion without
      * removing one (pure addition) is considered tabu, to prevent immediately re-adding
-     * the accession which was removed in the previous step.
+     * the accession which was removed in the previous step (see TabuList).
      *
      * @param ac
      * @param nh
@@ -616,9 +905,9 @@ public final class CoreSubsetSearch {
     public static AccessionCollection tabuSearch(AccessionCollection ac, Neighborhood nh,  PseudoMeasure pm, int sampleMin,
                                                  int sampleMax, double runtime, double minProg, double stuckTime, int tabuListSize) {
 
-        double score, bestScore;
-        List<Accession> core, bestCore, unselected;
-        LinkedList<Integer> tabuList;
+        double score;
+        List<Accession> core, unselected;
+        TabuList tabuList;
 
         String cacheId = PseudoMeasure.getUniqueId();
 
@@ -639,12 +928,12 @@ public final class CoreSubsetSearch {
         }
         score = pm.calculate(core, cacheId);
 
-        bestCore = new ArrayList<Accession>();
-        bestCore.addAll(core);
-        bestScore = score;
+        // best core is only materialized at the end
+        BestCoreTracker best = new BestCoreTracker();
+        core = best.track(core, score);
         
         // initialize tabu list
-        tabuList = new LinkedList<Integer>();
+        tabuList = new TabuList(tabuListSize);
 
       	ThreadMXBean tb = ManagementFactory.getThreadMXBean();
 	double sTime = tb.getCurrentThreadCpuTime();
@@ -658,32 +947,30 @@ public final class CoreSubsetSearch {
         if(WRITE_PROGRESS_FILE){
             pw = new ProgressWriter(PROGRESS_FILE_PATH, PROGRESS_WRITE_PERIOD);
             pw.start();
-            pw.updateScore(bestScore);
+            pw.updateScore(best.getBestScore());
         }
 	while ( cont && tb.getCurrentThreadCpuTime() < eTime ) {
             // run TABU search step
 
             // ALWAYS accept new core, even it is not an improvement
-            addIndex = nh.genBestNeighbor(core, unselected, tabuList, bestScore, pm, cacheId);
+            addIndex = nh.genBestNeighbor(core, unselected, tabuList, best.getBestScore(), pm, cacheId);
             score = pm.calculate(core, cacheId);
 
             // check if new best core was found
-            if (score > bestScore || (score == bestScore && core.size() < bestCore.size())) {
+            int prevBestSize = best.getBestSize();
+            double prevBestScore = best.getBestScore();
+            if (best.update(score)) {
                 // check min progression
-                if(core.size() >= bestCore.size() && score - bestScore < minProg){
+                if(core.size() >= prevBestSize && score - prevBestScore < minProg){
                     cont = false;
                 }
-                // store new best core
-                bestScore = score;
-                bestCore.clear();
-                bestCore.addAll(core);
 
                 lastImprTime = tb.getCurrentThreadCpuTime() - sTime;
-                System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                System.out.println("best score: " + score + "\tsize: " + core.size() +
                                    "\ttime: " + lastImprTime/1000000000);
                 // update progress writer
                 if(WRITE_PROGRESS_FILE){
-                    pw.updateScore(bestScore);
+                    pw.updateScore(score);
                 }
             } else {
                 // check stuckTime
@@ -692,14 +979,8 @@ public final class CoreSubsetSearch {
                 }
             }
 
-            // finally, update tabu list
-            if(tabuList.size() == tabuListSize){
-                // capacity reached, remove oldest tabu index
-                tabuList.poll();
-            }
-            // add new tabu index
-            //tabuList.offer(addIndex);
-            tabuList.offer(addIndex);
+            // finally, update tabu list (oldest step is dropped when capacity is reached)
+            tabuList.add(core, addIndex);
 
 	}
         if(WRITE_PROGRESS_FILE){
@@ -709,7 +990,7 @@ public final class CoreSubsetSearch {
         System.out.println("### End time: " + (tb.getCurrentThreadCpuTime() - sTime)/1000000000);
 
 	AccessionCollection bestCoreCol = new AccessionCollection();
-	bestCoreCol.add(bestCore);
+	bestCoreCol.add(best.getBestCore());
 
 	return bestCoreCol;
 
@@ -785,6 +1066,129 @@ public final class CoreSubsetSearch {
 	return bestCoreCol;
     }
 
+    /**
+     * Island model genetic algorithm: nrOfIslands populations evolve in
+     * parallel, each on its own worker, and every migrationPeriod generations
+     * each island sends its nrOfMigrants best cores to the next island. The
+     * runtime and stuck time are measured in wall clock time.
+     */
+    public static AccessionCollection islandGeneticSearch(AccessionCollection ac, PseudoMeasure pm, int sampleMin,
+                                                    int sampleMax, double runtime, double minProg, double stuckTime,
+                                                    int popSize, int nrOfChildren, int tournamentSize, double mutationRate,
+                                                    int nrOfIslands, int migrationPeriod, int nrOfMigrants) {
+
+	long sTime = System.currentTimeMillis();
+	long eTime = sTime + (long) (runtime * 1000);
+
+        // Create and init populations (the list of accessions is shared, read only)
+        GeneticPopulation populations[] = new GeneticPopulation[nrOfIslands];
+        for(int i=0; i<nrOfIslands; i++){
+            populations[i] = new GeneticPopulation(popSize, sampleMin, sampleMax, ac.getAccessions(),
+                                                   pm, nrOfChildren, tournamentSize, mutationRate);
+            populations[i].init();
+        }
+
+        IslandModel model = new IslandModel(populations, migrationPeriod, nrOfMigrants);
+        ExecutorService pool = Executors.newFixedThreadPool(nrOfIslands);
+        List<Future<?>> futures = new ArrayList<Future<?>>(nrOfIslands);
+        for(IslandModel.Island island : model.getIslands()){
+            futures.add(pool.submit(island));
+        }
+
+	double bestScore = -Double.MAX_VALUE;
+	List<Accession> bestCore = new ArrayList<Accession>();
+
+        boolean cont = true;
+        long lastImprTime = 0;
+
+        ProgressWriter pw;
+        if(WRITE_PROGRESS_FILE){
+            pw = new ProgressWriter(PROGRESS_FILE_PATH, PROGRESS_WRITE_PERIOD);
+            pw.start();
+        }
+	while( cont && System.currentTimeMillis() < eTime ) {
+
+            // periodically inspect the published global best
+            try {
+                Thread.sleep(ISLAND_MONITOR_PERIOD);
+            } catch (InterruptedException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            }
+
+            BestCore best = model.getBest();
+            if (best.score > bestScore ||
+                (best.score == bestScore && best.core.size() < bestCore.size())) {
+                // check min progression
+                if(best.core.size() >= bestCore.size() && best.score - bestScore < minProg){
+                    cont = false;
+                }
+                bestScore = best.score;
+                bestCore = best.core;
+
+                lastImprTime = System.currentTimeMillis() - sTime;
+                System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                                   "\ttime: " + lastImprTime/1000.0);
+                // update progress writer
+                if(WRITE_PROGRESS_FILE){
+                    pw.updateScore(bestScore);
+                }
+            } else {
+                // check stuckTime
+                if((System.currentTimeMillis()-sTime-lastImprTime)/1000.0 > stuckTime){
+                    cont = false;
+                }
+            }
+	}
+
+        // stop islands and wait until they have finished their current generation
+        model.stop();
+        pool.shutdown();
+        for(int i=0; i<futures.size(); i++){
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            } catch (ExecutionException ex) {
+                System.err.println("Error in thread pool: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        // final generations may have improved the best core
+        BestCore best = model.getBest();
+        if (best.score > bestScore ||
+            (best.score == bestScore && best.core.size() < bestCore.size())) {
+            bestScore = best.score;
+            bestCore = best.core;
+            System.out.println("best score: " + bestScore + "\tsize: " + bestCore.size() +
+                               "\ttime: " + (System.currentTimeMillis() - sTime)/1000.0);
+            if(WRITE_PROGRESS_FILE){
+                pw.updateScore(bestScore);
+            }
+        }
+
+        if(WRITE_PROGRESS_FILE){
+            pw.stop();
+        }
+
+        int generations = 0;
+        for(IslandModel.Island island : model.getIslands()){
+            generations += island.getGenerations();
+        }
+        System.out.println("### Generations: " + generations);
+        System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
+
+	AccessionCollection bestCoreCol = new AccessionCollection();
+	bestCoreCol.add(bestCore);
+
+	return bestCoreCol;
+    }
+
     public static AccessionCollection mergeReplicaSearch(AccessionCollection ac, Neighborhood nh, PseudoMeasure pm,
                                                     int sampleMin, int sampleMax, double runtime, double minProg, double stuckTime,
                                                     int minNrOfReplicas, int nrOfLocalSearchSteps, int nrOfChildren, int tournamentSize,
@@ -801,12 +1205,11 @@ public final class CoreSubsetSearch {
 	double sTime = tb.getCurrentThreadCpuTime();
 	double eTime = sTime + runtime * 1000000000;
 
-        Clustering clustering = new Clustering(NR_OF_CLUSTERS, new GroupAverageClusterDistance(new ModifiedRogersDistance(ac.size())));
+        StratifiedSampler sampler = new StratifiedSampler(new ModifiedRogersDistance(ac.size()));
 
+        List<List<Accession>> strata = null;
         if(stratifiedStart){
-            for(Accession a : ac.getAccessions()){
-                clustering.addAccession(a);
-            }
+            strata = stratify(ac.getAccessions(), NR_OF_CLUSTERS);
         }
 
         // create, init and store genetic replicas
@@ -815,7 +1218,7 @@ public final class CoreSubsetSearch {
             LocalSearchReplica rep = new LocalSearchReplica(ac, pm, nh, nrOfLocalSearchSteps, -1, sampleMin, sampleMax);
             if(stratifiedStart){
                 //if(i%2 == 0) //half random - half stratified start
-                    rep.init(sampleStratifiedStart(clustering.getClusters(), rg));
+                    rep.init(sampleStratifiedStart(strata, rg));
                 //else
                 //    rep.init();
             } else {
@@ -853,7 +1256,7 @@ public final class CoreSubsetSearch {
 
                 // check for better solution
                 if (rep.getBestScore() > bestScore
-                        || (rep.getBestScore() == bestScore && rep.getBestCore().size() < bestCore.size())){
+                        || (rep.getBestScore() == bestScore && rep.getBestSize() < bestCore.size())){
 
                     // store better core
                     bestScore = rep.getBestScore();
@@ -892,7 +1295,7 @@ public final class CoreSubsetSearch {
             // Genetic cross-over to create new replicas
             selectParents(replicas, parents, 2*nrOfChildren, tournamentSize, rg);
             if(stratifiedMerge && rg.nextDouble() < STRAT_MERGE_PROB){
-                createNewStratifiedChildren(parents, children, rg, clustering);
+                createNewStratifiedChildren(parents, children, rg, sampler);
             } else {
                 createNewChildren(parents, children, rg);
             }
@@ -931,12 +1334,11 @@ public final class CoreSubsetSearch {
         long sTime = System.currentTimeMillis();
 	long eTime = sTime + (long)(runtime * 1000);
 
-        Clustering clustering = new Clustering(NR_OF_CLUSTERS, new GroupAverageClusterDistance(new ModifiedRogersDistance(ac.size())));
+        StratifiedSampler sampler = new StratifiedSampler(new ModifiedRogersDistance(ac.size()));
 
+        List<List<Accession>> strata = null;
         if(stratifiedStart){
-            for(Accession a : ac.getAccessions()){
-                clustering.addAccession(a);
-            }
+            strata = stratify(ac.getAccessions(), NR_OF_CLUSTERS);
         }
 
         // create, init and store replicas
@@ -945,7 +1347,7 @@ public final class CoreSubsetSearch {
             LocalSearchReplica rep = new LocalSearchReplica(ac, pm, nh.clone(), nrOfLocalSearchSteps, -1, sampleMin, sampleMax);
             if(stratifiedStart){
                 //if(i%2 == 0) //half random - half stratified start
-                    rep.init(sampleStratifiedStart(clustering.getClusters(), rg));
+                    rep.init(sampleStratifiedStart(strata, rg));
                 //else
                 //    rep.init();
             } else {
@@ -1007,7 +1409,7 @@ public final class CoreSubsetSearch {
                 Replica rep = replicas.get(i);
                 // check for better solution
                 if (rep.getBestScore() > bestScore
-                        || (rep.getBestScore() == bestScore && rep.getBestCore().size() < bestCore.size())){
+                        || (rep.getBestScore() == bestScore && rep.getBestSize() < bestCore.size())){
 
                     // store better core
                     bestScore = rep.getBestScore();
@@ -1046,7 +1448,7 @@ public final class CoreSubsetSearch {
             // Genetic cross-over to create new replicas
             selectParents(replicas, parents, 2*nrOfChildren, tournamentSize, rg);
             if(stratifiedMerge && rg.nextDouble() < STRAT_MERGE_PROB){
-                createNewStratifiedChildren(parents, children, rg, clustering);
+                createNewStratifiedChildren(parents, children, rg, sampler);
             } else {
                 createNewChildren(parents, children, rg);
             }
@@ -1077,6 +1479,30 @@ public final class CoreSubsetSearch {
                                                          boolean stratifiedMerge, int boostNr, double boostMinProg,
                                                          int boostTimeFactor, double minBoostTime, double minSimAnTemp,
                                                          double maxSimAnTemp) {
+        return mixedReplicaSearch(ac, pm, sampleMin, sampleMax, runtime, minProg, stuckTime, nrOfTabuReplicas,
+                                  nrOfNonTabuReplicas, 0, roundsWithoutTabu, nrOfTabuSteps, tournamentSize, tabuListSize,
+                                  stratifiedStart, stratifiedMerge, boostNr, boostMinProg, boostTimeFactor,
+                                  minBoostTime, minSimAnTemp, maxSimAnTemp, null);
+    }
+
+    /**
+     * Mixed replica search; if workers is not null, the Local, MC, VNS and
+     * Tabu replicas are hosted by worker processes, while the LR replica and
+     * the merging of replicas remain in this process.
+     *
+     * Besides the tabu and other non-tabu replicas, nrOfVnsReplicas variable
+     * neighborhood search replicas (see VNSReplica) are maintained, which run
+     * along with the other non-tabu replicas. Stuck VNS replicas are replaced
+     * by new ones, started from merged cores of the non-tabu replicas.
+     */
+    public static AccessionCollection mixedReplicaSearch(AccessionCollection ac, PseudoMeasure pm, int sampleMin,
+                                                         int sampleMax, double runtime, double minProg, double stuckTime,
+                                                         int nrOfTabuReplicas, int nrOfNonTabuReplicas,
+                                                         int nrOfVnsReplicas, int roundsWithoutTabu,
+                                                         int nrOfTabuSteps, int tournamentSize,int tabuListSize, boolean stratifiedStart,
+                                                         boolean stratifiedMerge, int boostNr, double boostMinProg,
+                                                         int boostTimeFactor, double minBoostTime, double minSimAnTemp,
+                                                         double maxSimAnTemp, RemoteReplicaPool workers) {
 
         final int NR_OF_CLUSTERS = sampleMax;
         final double STRAT_MERGE_PROB = 0.5;
@@ -1085,6 +1511,11 @@ public final class CoreSubsetSearch {
 
         final int PROG_BOOST_FACTOR = 2;
 
+        // scheduling weights (relative share of CPU time)
+        final double LR_WEIGHT = 4.0;
+        final double NON_TABU_WEIGHT = 2.0;
+        final double TABU_WEIGHT = 1.0;
+
         final int LR_L = 2;
         final int LR_R = 1;
         final boolean LR_EXH_START = false;
@@ -1096,23 +1527,29 @@ public final class CoreSubsetSearch {
         // neighbors in each step to select the (heursistic) best neighbor!
         final int NR_OF_LS_STEPS = ac.size();
 
+        // VNS replicas also sample one neighbor per step, with exchanges of up to
+        // VNS_MAX_K accessions
+        final int VNS_MAX_K = 3;
+        final int NR_OF_VNS_STEPS = NR_OF_LS_STEPS;
+        MultiSwapNeighborhood vnsNh = new MultiSwapNeighborhood(sampleMin, sampleMax, VNS_MAX_K);
+
         double bestScore = -Double.MAX_VALUE;
         List<Accession> bestCore = new ArrayList<Accession>();
 
         Random rg = new Random();
 
         Neighborhood randNh = new RandomSingleNeighborhood(sampleMin, sampleMax);
-        Neighborhood heurNh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+        HeuristicSingleNeighborhood heurNh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+        heurNh.setCandidateListSize(HeuristicSingleNeighborhood.defaultCandidateListSize(ac.size()));
 
         long sTime = System.currentTimeMillis();
         long eTime = sTime + (long)(runtime * 1000);
 
-        Clustering clustering = new Clustering(NR_OF_CLUSTERS, new GroupAverageClusterDistance(new ModifiedRogersDistance(ac.size())));
+        StratifiedSampler sampler = new StratifiedSampler(new ModifiedRogersDistance(ac.size()));
         
+        List<List<Accession>> strata = null;
         if(stratifiedStart){
-            for(Accession a : ac.getAccessions()){
-                clustering.addAccession(a);
-            }
+            strata = stratify(ac.getAccessions(), NR_OF_CLUSTERS);
         }
 
         // create, init and store initial replicas (local search)
@@ -1122,11 +1559,25 @@ public final class CoreSubsetSearch {
             Replica rep;
 
             // initially, create some extra LS Replica
-            rep = new LocalSearchReplica(ac, pm, randNh.clone(), NR_OF_LS_STEPS, -1, sampleMin, sampleMax);
+            if(workers == null){
+                rep = new LocalSearchReplica(ac, pm, randNh.clone(), NR_OF_LS_STEPS, -1, sampleMin, sampleMax);
+            } else {
+                rep = workers.createLocalSearchReplica(pm, NR_OF_LS_STEPS, sampleMin, sampleMax);
+            }
             
             // Init replica
             if(stratifiedStart){
-                rep.init(sampleStratifiedStart(clustering.getClusters(), rg));
+                rep.init(sampleStratifiedStart(strata, rg));
+            } else {
+                rep.init();
+            }
+            replicas.add(rep);
+        }
+        // create initial VNS replicas
+        for (int i=0; i< nrOfVnsReplicas; i++){
+            Replica rep = createVnsReplica(ac, pm, vnsNh, NR_OF_VNS_STEPS, sampleMin, sampleMax, workers);
+            if(stratifiedStart){
+                rep.init(sampleStratifiedStart(strata, rg));
             } else {
                 rep.init();
             }
@@ -1135,7 +1586,8 @@ public final class CoreSubsetSearch {
         
         int nrOfTabus = 0;
         int nrOfNonTabus = nrOfNonTabuReplicas;
-        int nrStuck = 0;
+        int nrOfVns = nrOfVnsReplicas;
+        int nrStuck = 0, nrVnsStuck = 0;
 
         // create and init one LR Semi replica
         LRReplica lrrep = new LRReplica(ac, pm, NR_OF_LR_STEPS, -1, sampleMin, sampleMax, LR_L, LR_R, LR_EXH_START);
@@ -1146,18 +1598,9 @@ public final class CoreSubsetSearch {
         List<List<Accession>> parents = new ArrayList<List<Accession>>();
         List<List<Accession>> children = new ArrayList<List<Accession>>();
 
-        // create thread pool
-        final ThreadGroup threadGroup = new ThreadGroup("replicaThreadGroup");
-
-        ThreadFactory factory = new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread thr = new Thread(threadGroup, r);
-                thr.setPriority(Thread.MIN_PRIORITY);
-                return thr;
-            }
-        };
-
-        ExecutorService pool = Executors.newCachedThreadPool(factory);
+        // bounded scheduler (one worker per core); LR gets the largest share of
+        // CPU time, then the short non-tabu runs that each round waits for
+        ReplicaScheduler scheduler = new ReplicaScheduler();
 
         boolean cont = true, impr;
         double prevBestScore = bestScore, prog;
@@ -1182,9 +1625,7 @@ public final class CoreSubsetSearch {
             pw.start();
         }
         // start LR replica, continuously runs in background until finished
-        Thread lrThread = factory.newThread(lrrep);
-        lrThread.setPriority(Thread.MAX_PRIORITY);
-        lrThread.start();
+        scheduler.submit(lrrep, LR_WEIGHT);
         //System.out.println("[LR submitted]");
 
         long firstRounds = 0;
@@ -1193,7 +1634,7 @@ public final class CoreSubsetSearch {
             // submit all tabu replicas
             for(Replica rep : replicas){
                 if(rep.shortType().equals("Tabu")){
-                    tabuFutures.add(pool.submit(rep));
+                    tabuFutures.add(scheduler.submit(rep, TABU_WEIGHT));
                 }
             }
             //System.out.println("[tabus submitted]");
@@ -1222,7 +1663,7 @@ public final class CoreSubsetSearch {
                 for(int i=0; i<replicas.size(); i++){
                     Replica rep = replicas.get(i);
                     if(!rep.shortType().equals("Tabu")){
-                        localAndREMCfutures.add(pool.submit(rep));
+                        localAndREMCfutures.add(scheduler.submit(rep, NON_TABU_WEIGHT));
                     }
                 }
                 //System.out.println("[non-tabus submitted]");
@@ -1249,15 +1690,16 @@ public final class CoreSubsetSearch {
 
                 // Check non-tabu replica results
 
-                // Check LS, Tabu and REMC replica results
+                // Check LS, Tabu, VNS and REMC replica results
                 nrStuck = 0;
+                nrVnsStuck = 0;
                 Iterator<Replica> itr = replicas.iterator();
                 while(itr.hasNext()){
                     Replica rep = itr.next();
                     if(!rep.shortType().equals("Tabu")){
                         // check for better solution
                         if (rep.getBestScore() > bestScore
-                                 || (rep.getBestScore() == bestScore && rep.getBestCore().size() < bestCore.size())){
+                                 || (rep.getBestScore() == bestScore && rep.getBestSize() < bestCore.size())){
 
                             // store better core
                             bestScore = rep.getBestScore();
@@ -1274,9 +1716,13 @@ public final class CoreSubsetSearch {
                                 pw.updateScore(bestScore);
                             }
                         }
-                        // count nr of stuck non-tabu reps
+                        // count nr of stuck non-tabu reps (VNS separately)
                         if(rep.stuck()){
-                            nrStuck++;
+                            if(rep.shortType().equals("VNS")){
+                                nrVnsStuck++;
+                            } else {
+                                nrStuck++;
+                            }
                         }
                     }
                 }
@@ -1287,7 +1733,7 @@ public final class CoreSubsetSearch {
                     System.out.println("[LR done!]");
 
                     if (lrrep.getBestScore() > bestScore
-                            || (lrrep.getBestScore() == bestScore && lrrep.getBestCore().size() < bestCore.size())){
+                            || (lrrep.getBestScore() == bestScore && lrrep.getBestSize() < bestCore.size())){
 
                         // store better core
                         bestScore = lrrep.getBestScore();
@@ -1337,16 +1783,16 @@ public final class CoreSubsetSearch {
                     lastBoostTime = System.currentTimeMillis()-sTime;
                     // only boost with some fraction of the normal nr of boost replicas in case of min prog boost
                     int progBoostNr = boostNr/PROG_BOOST_FACTOR;
-                    boostReplicas(replicas, progBoostNr, ac, pm, randNh, NR_OF_LS_STEPS, sampleMin, sampleMax);
+                    boostReplicas(replicas, progBoostNr, ac, pm, randNh, NR_OF_LS_STEPS, sampleMin, sampleMax, workers);
                     nrOfNonTabus += progBoostNr;
                     System.out.println("[progBoost] - #rep: " + replicas.size());
                 }
 
                 // check boost time
                 if((System.currentTimeMillis()-sTime-Math.max(lastImprTime, lastBoostTime))/1000.0 > Math.max(boostTime, minBoostTime)
-                        && replicas.size() == nrOfNonTabuReplicas + nrOfTabuReplicas){ // do not boost if previous boost effect still visible!
+                        && replicas.size() == nrOfNonTabuReplicas + nrOfVnsReplicas + nrOfTabuReplicas){ // do not boost if previous boost effect still visible!
                     lastBoostTime = System.currentTimeMillis()-sTime;
-                    boostReplicas(replicas, boostNr, ac, pm, randNh, NR_OF_LS_STEPS, sampleMin, sampleMax);
+                    boostReplicas(replicas, boostNr, ac, pm, randNh, NR_OF_LS_STEPS, sampleMin, sampleMax, workers);
                     nrOfNonTabus += boostNr;
                     boostTimeLocked = true;
                     System.out.println("[timeBoost] - #rep: " + replicas.size());
@@ -1364,7 +1810,7 @@ public final class CoreSubsetSearch {
                     //System.out.println("[Parents created]");
 
                     if(stratifiedMerge && rg.nextDouble() < STRAT_MERGE_PROB){
-                        createNewStratifiedChildren(parents, children, rg, clustering);
+                        createNewStratifiedChildren(parents, children, rg, sampler);
                     } else {
                         createNewChildren(parents, children, rg);
                     }
@@ -1373,8 +1819,14 @@ public final class CoreSubsetSearch {
 
                     for(List<Accession> child : children){
                         // New REMC replicas
-                        Replica rep = new SimpleMonteCarloReplica(ac, pm, randNh.clone(), NR_OF_LS_STEPS, -1,
-                                    sampleMin, sampleMax, minSimAnTemp + rg.nextDouble()*(maxSimAnTemp-minSimAnTemp));
+                        double T = minSimAnTemp + rg.nextDouble()*(maxSimAnTemp-minSimAnTemp);
+                        Replica rep;
+                        if(workers == null){
+                            rep = new SimpleMonteCarloReplica(ac, pm, randNh.clone(), NR_OF_LS_STEPS, -1,
+                                                              sampleMin, sampleMax, T);
+                        } else {
+                            rep = workers.createMonteCarloReplica(pm, NR_OF_LS_STEPS, sampleMin, sampleMax, T);
+                        }
                         nrOfNonTabus++;
                         
                         rep.init(child);
@@ -1385,14 +1837,37 @@ public final class CoreSubsetSearch {
 
                 }
 
+                // Replace stuck VNS replicas by new ones, started from merged cores
+                int vnsChildren = nrOfVnsReplicas - (nrOfVns-nrVnsStuck);
+                if(vnsChildren > 0){
+                    selectParents(replicas, parents, 2*vnsChildren, tournamentSize, rg, "Tabu");
+                    if(stratifiedMerge && rg.nextDouble() < STRAT_MERGE_PROB){
+                        createNewStratifiedChildren(parents, children, rg, sampler);
+                    } else {
+                        createNewChildren(parents, children, rg);
+                    }
+                    for(List<Accession> child : children){
+                        Replica rep = createVnsReplica(ac, pm, vnsNh, NR_OF_VNS_STEPS, sampleMin, sampleMax, workers);
+                        nrOfVns++;
+
+                        rep.init(child);
+                        replicas.add(rep);
+                    }
+                }
+
 
                 // Now permanently delete stuck non-tabu replicas
                 itr = replicas.iterator();
                 while(itr.hasNext()){
                     Replica rep = itr.next();
                     if(rep.stuck() && !rep.shortType().equals("Tabu")){
+                        rep.dispose();
                         itr.remove();
-                        nrOfNonTabus--;
+                        if(rep.shortType().equals("VNS")){
+                            nrOfVns--;
+                        } else {
+                            nrOfNonTabus--;
+                        }
                     }
                 }
 
@@ -1415,7 +1890,7 @@ public final class CoreSubsetSearch {
                     if(rep.shortType().equals("Tabu")){
                         // check for better solution
                         if (rep.getBestScore() > bestScore
-                                 || (rep.getBestScore() == bestScore && rep.getBestCore().size() < bestCore.size())){
+                                 || (rep.getBestScore() == bestScore && rep.getBestSize() < bestCore.size())){
 
                             // store better core
                             bestScore = rep.getBestScore();
@@ -1446,14 +1921,19 @@ public final class CoreSubsetSearch {
                     // Select parents from all replicas!
                     selectParents(replicas, parents, 2*tabuChildren, tournamentSize, rg);
                     if(stratifiedMerge && rg.nextDouble() < STRAT_MERGE_PROB){
-                        createNewStratifiedChildren(parents, children, rg, clustering);
+                        createNewStratifiedChildren(parents, children, rg, sampler);
                     } else {
                         createNewChildren(parents, children, rg);
                     }
                     for(List<Accession> child : children){
                         // new Tabu replicas
                         int listsize = rg.nextInt(tabuListSize)+1;
-                        Replica rep = new TabuReplica(ac, pm, heurNh.clone(), nrOfTabuSteps, -1, sampleMin, sampleMax, listsize);
+                        Replica rep;
+                        if(workers == null){
+                            rep = new TabuReplica(ac, pm, heurNh.clone(), nrOfTabuSteps, -1, sampleMin, sampleMax, listsize);
+                        } else {
+                            rep = workers.createTabuReplica(pm, nrOfTabuSteps, sampleMin, sampleMax, listsize);
+                        }
                         nrOfTabus++;
 
                         rep.init(child);
@@ -1466,6 +1946,7 @@ public final class CoreSubsetSearch {
                 while(itr.hasNext()){
                     Replica rep = itr.next();
                     if(rep.stuck() && rep.shortType().equals("Tabu")){
+                        rep.dispose();
                         itr.remove();
                         nrOfTabus--;
                     }
@@ -1481,6 +1962,7 @@ public final class CoreSubsetSearch {
             pw.stop();
         }
         lrrep.stop();
+        scheduler.shutdown();
         
         System.out.println("### End time: " + (System.currentTimeMillis() - sTime)/1000.0);
 
@@ -1503,23 +1985,81 @@ public final class CoreSubsetSearch {
         return tabuFutures.size() > 0;
     }
 
+    /**
+     * Create a VNS replica (not initialized), hosted by a worker if workers
+     * is not null.
+     */
+    private static Replica createVnsReplica(AccessionCollection ac, PseudoMeasure pm, MultiSwapNeighborhood vnsNh,
+                                            int nrOfVnsSteps, int sampleMin, int sampleMax,
+                                            RemoteReplicaPool workers){
+        if(workers == null){
+            return new VNSReplica(ac, pm, vnsNh.clone(), nrOfVnsSteps, -1, sampleMin, sampleMax);
+        } else {
+            return workers.createVNSReplica(pm, nrOfVnsSteps, sampleMin, sampleMax, vnsNh.getMaxK());
+        }
+    }
+
     /**
      * Boost replicas with new randomly initialized LS replicas
      */
     private static void boostReplicas(List<Replica> replicas, int boost, AccessionCollection ac,
-                               PseudoMeasure pm, Neighborhood randNh, int nrOfLsSteps, int sampleMin, int sampleMax){
+                               PseudoMeasure pm, Neighborhood randNh, int nrOfLsSteps, int sampleMin, int sampleMax,
+                               RemoteReplicaPool workers){
 
         // Boost with new LS replicas
         for(int i=0; i<boost; i++){
             Replica rep;
             // create LS Replica
-            rep = new LocalSearchReplica(ac, pm, randNh.clone(), nrOfLsSteps, -1, sampleMin, sampleMax);
+            if(workers == null){
+                rep = new LocalSearchReplica(ac, pm, randNh.clone(), nrOfLsSteps, -1, sampleMin, sampleMax);
+            } else {
+                rep = workers.createLocalSearchReplica(pm, nrOfLsSteps, sampleMin, sampleMax);
+            }
             rep.init();
             replicas.add(rep);
         }
 
     }
 
+    /**
+     * Divide the accessions into k strata for stratified starts: a cut of the
+     * cached dendrogram, or for collections too large for a full distance
+     * matrix, the clusters of a streaming clustering.
+     *
+     * @param accessions
+     * @param k
+     * @return
+     */
+    public static List<List<Accession>> stratify(List<Accession> accessions, int k){
+        if(accessions.size() <= MAX_DENDROGRAM_SIZE){
+            return Dendrogram.forAccessions(accessions).cut(k);
+        }
+        // centroid distances are not memoized
+        Clustering clustering = new Clustering(k, new CentroidClusterDistance(new ModifiedRogersDistance(0)));
+        clustering.setMaxMicroClusters(MICRO_CLUSTERS_PER_STRATUM * k);
+        for(Accession a : accessions){
+            clustering.addAccession(a);
+        }
+        clustering.macroCluster();
+        List<List<Accession>> strata = new ArrayList<List<Accession>>(k);
+        for(AccessionCluster clust : clustering.getClusters()){
+            strata.add(clust.getAccessions());
+        }
+        return strata;
+    }
+
+    /**
+     * Draw one random accession from each of the given strata; the strata
+     * are not changed.
+     */
+    public static List<Accession> sampleStratifiedStart(List<List<Accession>> strata, Random rg){
+        List<Accession> start = new ArrayList<Accession>(strata.size());
+        for(List<Accession> stratum : strata){
+            start.add(stratum.get(rg.nextInt(stratum.size())));
+        }
+        return start;
+    }
+
     /**
      * Sample one accession from each cluster.
      *
@@ -1567,7 +2107,7 @@ public final class CoreSubsetSearch {
     private static void selectParents(List<Replica> replicas, List<List<Accession>> parents,
                                         int nrOfParents, int T, Random rg, String skipType){
         double bestParScore, parScore;
-        List<Accession> bestPar = null, nextPar;
+        Replica bestPar = null;
         String bestParType = null;
         parents.clear();
         for(int i=0; i<nrOfParents; i++){
@@ -1579,19 +2119,19 @@ public final class CoreSubsetSearch {
                 int k = rg.nextInt(replicas.size());
                 Replica rep = replicas.get(k);
                 if(skipType == null || !rep.shortType().equals(skipType)){
-                    nextPar = rep.getBestCore();
                     parScore = rep.getBestScore();
                     // Check if new best parent found
                     if(parScore > bestParScore){
                         bestParScore = parScore;
-                        bestPar = nextPar;
+                        bestPar = rep;
                         bestParType = rep.type();
                     }
                 } else {
                     j--; // ignore cases when a skipped replica was drawn
                 }
             }
-            parents.add(bestPar);
+            // only the core of the winner is needed
+            parents.add(bestPar.getBestCore());
             //System.out.println("Parent: " + bestParType + ", score: " + bestParScore);
         }
     }
@@ -1654,12 +2194,10 @@ public final class CoreSubsetSearch {
     private static final Set<Accession> childSet = new HashSet<Accession>();
 
     private static void createNewStratifiedChildren(List<List<Accession>> parents, List<List<Accession>> children,
-                                                    Random rg, Clustering clustering){
+                                                    Random rg, StratifiedSampler sampler){
 
         List<Accession> parent1, parent2, child;
         int p1size, p2size, pminSize, pmaxSize, childSize;
-        Iterator<AccessionCluster> itr;
-        AccessionCluster clust;
 
         children.clear();
         for(int i=0; i<parents.size()-1; i+=2){
@@ -1681,26 +2219,9 @@ public final class CoreSubsetSearch {
             childSet.addAll(parent1);
             childSet.addAll(parent2);
 
-            // Cluster childset
-            clustering.reset();
-            clustering.setDesiredClusters(childSize);
-            for(Accession a : childSet){
-                clustering.addAccession(a);
-            }
-
-            // Stratified sampling from clustered childset to create child
-            // --> Add one accession from each cluster
-            child = new ArrayList<Accession>(childSize);
-            itr = clustering.getClusters().iterator();
-            while(itr.hasNext()){
-                clust = itr.next();
-                int sampleSize = 1;
-                // Randomly sample accessions from cluster
-                for(int k=0; k<sampleSize; k++){
-                    int rem = rg.nextInt(clust.size());
-                    child.add(clust.getAccessions().remove(rem));
-                }
-            }
+            // Stratified sampling from childset to create child
+            // --> Add one accession from each stratum
+            child = sampler.sample(childSet, childSize, rg);
 
             // Add new child to list
             children.add(child);
@@ -1711,6 +2232,18 @@ public final class CoreSubsetSearch {
     public static AccessionCollection lrSearch(AccessionCollection ac, PseudoMeasure pm, int sampleMin, int sampleMax,
                                                int l, int r, boolean exhaustiveFirstPair) {
 
+        return lrSearch(ac, pm, sampleMin, sampleMax, l, r, exhaustiveFirstPair, false);
+
+    }
+
+    /**
+     * LR search, where lazyGreedy enables lazy selection of the additions
+     * (see LazyGreedy). This only applies when the measure has diminishing
+     * returns, otherwise all additions are scored as usual.
+     */
+    public static AccessionCollection lrSearch(AccessionCollection ac, PseudoMeasure pm, int sampleMin, int sampleMax,
+                                               int l, int r, boolean exhaustiveFirstPair, boolean lazyGreedy) {
+
         List<Accession> core, unselected;
         List<Accession> accessions = ac.getAccessions();
         double score, newScore, bestNewScore, dscore;
@@ -1746,45 +2279,77 @@ public final class CoreSubsetSearch {
         System.out.println("best score: " + score + "\tsize: " + core.size() +
                            "\ttime: " + (tb.getCurrentThreadCpuTime() - sTime)/1000000000);
 
+        LazyGreedy greedy = null;
+        if(lazyGreedy){
+            greedy = new LazyGreedy(pm, cacheID, score, true);
+            if(!greedy.isLazy()){
+                System.out.println("Measure has no diminishing returns, using exact greedy selection");
+            }
+        }
+
         boolean cont = true;
         while(cont){
-            // Add l new accessions to core
-            if(!skipadd){
-                for(int i=0; i<l; i++){
-                    // Search for best new accession
+            // nr of additions and deletions made in this step
+            int moves = 0;
+            if(greedy != null){
+                // Same steps, scored against the cached core
+                if(!skipadd){
+                    for(int i=0; i<l; i++){
+                        int addIndex = greedy.addBest(core, unselected);
+                        if(addIndex == -1){
+                            break; // all accessions selected
+                        }
+                        history.add(new Addition(addIndex));
+                        moves++;
+                    }
+                    skipadd=false;
+                }
+                for(int i=0; i<r; i++){
+                    history.add(new Deletion(greedy.removeWorst(core, unselected)));
+                    moves++;
+                }
+                bestNewScore = greedy.getScore();
+            } else {
+                // Add l new accessions to core
+                if(!skipadd){
+                    for(int i=0; i<l && !unselected.isEmpty(); i++){
+                        // Search for best new accession
+                        bestNewScore = -Double.MAX_VALUE;
+                        for(int j=0; j<unselected.size(); j++){
+                            Accession add = unselected.get(j);
+                            core.add(add);
+                            newScore = pm.calculate(core, cacheID);
+                            if(newScore > bestNewScore){
+                                bestNewScore = newScore;
+                                bestAddIndex = j;
+                            }
+                            core.remove(core.size()-1);
+                        }
+                        // Add best new accession
+                        core.add(unselected.remove(bestAddIndex));
+                        history.add(new Addition(bestAddIndex));
+                        moves++;
+                    }
+                    skipadd=false;
+                }
+                // Remove r accessions from core
+                for(int i=0; i<r; i++){
+                    // Search for worst accession
                     bestNewScore = -Double.MAX_VALUE;
-                    for(int j=0; j<unselected.size(); j++){
-                        Accession add = unselected.get(j);
-                        core.add(add);
+                    for(int j=0; j<core.size(); j++){
+                        Accession rem = core.remove(j);
                         newScore = pm.calculate(core, cacheID);
                         if(newScore > bestNewScore){
                             bestNewScore = newScore;
-                            bestAddIndex = j;
+                            bestRemIndex = j;
                         }
-                        core.remove(core.size()-1);
-                    }
-                    // Add best new accession
-                    core.add(unselected.remove(bestAddIndex));
-                    history.add(new Addition(bestAddIndex));
-                }
-                skipadd=false;
-            }
-            // Remove r accessions from core
-            for(int i=0; i<r; i++){
-                // Search for worst accession
-                bestNewScore = -Double.MAX_VALUE;
-                for(int j=0; j<core.size(); j++){
-                    Accession rem = core.remove(j);
-                    newScore = pm.calculate(core, cacheID);
-                    if(newScore > bestNewScore){
-                        bestNewScore = newScore;
-                        bestRemIndex = j;
+                        core.add(j, rem);
                     }
-                    core.add(j, rem);
+                    // Remove worst accession
+                    unselected.add(core.remove(bestRemIndex));
+                    history.add(new Deletion(bestRemIndex));
+                    moves++;
                 }
-                // Remove worst accession
-                unselected.add(core.remove(bestRemIndex));
-                history.add(new Deletion(bestRemIndex));
             }
 
             dscore = bestNewScore - score;
@@ -1796,7 +2361,7 @@ public final class CoreSubsetSearch {
                 if (core.size() > sampleMin && dscore <= 0) {
                     cont = false; // Equal or worse score and size increased
                     // Restore previous core
-                    for(int i=0; i<l+r; i++){
+                    for(int i=0; i<moves; i++){
                         history.pop().undo(core, unselected);
                     }
                 } else if(core.size()+l-r > sampleMax){
@@ -1808,7 +2373,7 @@ public final class CoreSubsetSearch {
                 if (core.size() < sampleMax && dscore < 0){
                     cont = false; // Worse score
                     // Restore previous core
-                    for(int i=0; i<l+r; i++){
+                    for(int i=0; i<moves; i++){
                         history.pop().undo(core, unselected);
                     }
                 } else if (core.size()+l-r < sampleMin){
@@ -0,0 +1,200 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.GroupAverageClusterDistance;
+import org.cimmyt.corehunter.measures.ModifiedRogersDistance;
+
+/**
+ * Full group average (UPGMA) hierarchical clustering of a list of
+ * accessions, stored as the sequence of its n-1 merges in order of increasing
+ * height. Leaves are numbered 0..n-1 after their position in the list, and
+ * the cluster created by merge i gets number n+i. Any number of clusters can
+ * be cut from the dendrogram in O(n), by replaying the first merges with a
+ * union-find structure.
+ *
+ * Dendrograms are built by AgglomerativeClustering, for any linkage.
+ * Group average dendrograms for the default (Modified Rogers) distance are
+ * cached per dataset, see forAccessions.
+ *
+ * @author hermandebeukelaer
+ */
+public class Dendrogram {
+
+    // nr of recently used dendrograms kept by forAccessions
+    private static final int MAX_CACHED = 4;
+
+    private static final Map<List<Accession>, Dendrogram> cache =
+        new LinkedHashMap<List<Accession>, Dendrogram>(MAX_CACHED, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<List<Accession>, Dendrogram> eldest){
+                return size() > MAX_CACHED;
+            }
+        };
+
+    private List<Accession> accessions;
+    private int n;
+
+    // merge i joins clusters left[i] and right[i] at the given height
+    private int left[];
+    private int right[];
+    private double height[];
+
+    // some leaf of each cluster, used to replay merges on leaves
+    private int leader[];
+
+    /**
+     * Get the dendrogram of the given accessions for the Modified Rogers
+     * distance, which is only computed the first time it is requested for
+     * these accessions (in this order).
+     *
+     * @param accessions
+     * @return
+     */
+    public static Dendrogram forAccessions(List<Accession> accessions){
+        synchronized(cache){
+            Dendrogram d = cache.get(accessions);
+            if(d == null){
+                // the key is a copy, the given list may change afterwards
+                List<Accession> key = new ArrayList<Accession>(accessions);
+                // each distance is computed once, no need to memoize them
+                d = new AgglomerativeClustering(new GroupAverageClusterDistance(
+                        new ModifiedRogersDistance(0))).cluster(key);
+                cache.put(key, d);
+            }
+            return d;
+        }
+    }
+
+    /**
+     * Dendrogram with the given merges, in order of increasing height.
+     *
+     * @param accessions
+     * @param left
+     * @param right
+     * @param height
+     */
+    Dendrogram(List<Accession> accessions, int left[], int right[], double height[]){
+        this.accessions = new ArrayList<Accession>(accessions);
+        n = accessions.size();
+        this.left = left;
+        this.right = right;
+        this.height = height;
+        leader = new int[Math.max(1, 2*n-1)];
+        for(int i=0; i<n; i++){
+            leader[i] = i;
+        }
+        for(int i=0; i<n-1; i++){
+            leader[n+i] = leader[left[i]];
+        }
+    }
+
+    public int size(){
+        return n;
+    }
+
+    public List<Accession> getAccessions(){
+        return accessions;
+    }
+
+    /**
+     * Clusters joined by merge i (leaves are 0..n-1, merge j creates n+j).
+     */
+    public int getLeft(int i){
+        return left[i];
+    }
+
+    public int getRight(int i){
+        return right[i];
+    }
+
+    public double getHeight(int i){
+        return height[i];
+    }
+
+    /**
+     * Cut the dendrogram into k clusters (at most n, at least 1).
+     *
+     * @param k
+     * @return
+     */
+    public List<List<Accession>> cut(int k){
+        k = Math.max(1, Math.min(k, n));
+        int roots[] = cutRoots(k);
+
+        // number the clusters in order of their first leaf
+        int index[] = new int[n];
+        List<List<Accession>> clusters = new ArrayList<List<Accession>>(k);
+        for(int i=0; i<n; i++){
+            index[i] = -1;
+        }
+        for(int i=0; i<n; i++){
+            int r = roots[i];
+            if(index[r] == -1){
+                index[r] = clusters.size();
+                clusters.add(new ArrayList<Accession>());
+            }
+            clusters.get(index[r]).add(accessions.get(i));
+        }
+        return clusters;
+    }
+
+    /**
+     * Draw one random accession from each of the k clusters of a cut.
+     *
+     * @param k
+     * @param rg
+     * @return
+     */
+    public List<Accession> sample(int k, Random rg){
+        List<List<Accession>> clusters = cut(k);
+        List<Accession> sample = new ArrayList<Accession>(clusters.size());
+        for(List<Accession> clust : clusters){
+            sample.add(clust.get(rg.nextInt(clust.size())));
+        }
+        return sample;
+    }
+
+    // root leaf of each leaf after the first n-k merges
+    private int[] cutRoots(int k){
+        int parent[] = new int[n];
+        for(int i=0; i<n; i++){
+            parent[i] = i;
+        }
+        for(int i=0; i<n-k; i++){
+            int a = find(parent, leader[left[i]]);
+            int b = find(parent, leader[right[i]]);
+            parent[b] = a;
+        }
+        for(int i=0; i<n; i++){
+            parent[i] = find(parent, i);
+        }
+        return parent;
+    }
+
+    static int find(int parent[], int i){
+        while(parent[i] != i){
+            // path halving
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,143 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Evaluates a contiguous range of ranks of the revolving door k-subset order,
+ * starting from the unranked first subset of the range and scoring each
+ * successor as a single swap with respect to its own cached core.
+ *
+ * @author hermandebeukelaer
+ */
+class ExhaustiveSearchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Nr of subsets evaluated between two progress updates
+    private static final int PROGRESS_CHUNK = 1024;
+
+    private List<Accession> accessions;
+    private PseudoMeasure pm;
+    private int coreSize;
+    private long firstRank;
+    private long lastRank;
+
+    // Shared by all tasks of one search
+    private AtomicLong evaluated;
+    private AtomicInteger progress;
+    private long nr;
+    private boolean output;
+    private long sTime;
+
+    // Best core of this range (1-based indices) and its score
+    private int[] bestCore;
+    private double bestScore;
+
+    public ExhaustiveSearchTask(List<Accession> accessions, PseudoMeasure pm, int coreSize,
+                                long firstRank, long lastRank, AtomicLong evaluated,
+                                AtomicInteger progress, long nr, boolean output, long sTime){
+        this.accessions = accessions;
+        this.pm = pm;
+        this.coreSize = coreSize;
+        this.firstRank = firstRank;
+        this.lastRank = lastRank;
+        this.evaluated = evaluated;
+        this.progress = progress;
+        this.nr = nr;
+        this.output = output;
+        this.sTime = sTime;
+        bestScore = -Double.MAX_VALUE;
+    }
+
+    @Override
+    protected void compute() {
+        String cacheID = PseudoMeasure.getUniqueId();
+        try {
+            evaluateRange(cacheID);
+        } finally {
+            // the cached core of this range is not used afterwards
+            pm.removeCache(cacheID);
+        }
+    }
+
+    private void evaluateRange(String cacheID) {
+        KSubsetGenerator ksub = new KSubsetGenerator(coreSize, accessions.size());
+        int[] icore = ksub.unrank(firstRank);
+
+        List<Accession> core = new ArrayList<Accession>(coreSize);
+        for(int index : icore){
+            core.add(accessions.get(index-1));
+        }
+        List<Accession> added = new ArrayList<Accession>(1);
+        List<Accession> removed = new ArrayList<Accession>(1);
+
+        double score;
+        int sinceUpdate = 0;
+        for(long rank=firstRank; rank<=lastRank; rank++){
+            // Calculate pseudomeasure
+            if(rank == firstRank){
+                score = pm.calculate(core, cacheID);
+            } else {
+                ksub.successor(icore);
+                Accession rem = accessions.get(ksub.getRemoved()-1);
+                Accession add = accessions.get(ksub.getAdded()-1);
+                core.set(core.indexOf(rem), add);
+                removed.clear();
+                removed.add(rem);
+                added.clear();
+                added.add(add);
+                score = pm.calculate(core, added, removed, cacheID);
+            }
+            if(score > bestScore){
+                bestCore = icore.clone();
+                bestScore = score;
+            }
+            if(++sinceUpdate == PROGRESS_CHUNK || rank == lastRank){
+                reportProgress(sinceUpdate);
+                sinceUpdate = 0;
+            }
+        }
+    }
+
+    private void reportProgress(int count){
+        long done = evaluated.addAndGet(count);
+        int newProgress = (int) (((double) done) / ((double) nr) * 100);
+        int curProgress = progress.get();
+        while(newProgress > curProgress){
+            if(progress.compareAndSet(curProgress, newProgress)){
+                if(output) System.out.println("### Progress: " + newProgress + "%"
+                                              + "\ttime: " + (System.currentTimeMillis() - sTime)/1000.0);
+                break;
+            }
+            curProgress = progress.get();
+        }
+    }
+
+    public int[] getBestCore(){
+        return bestCore;
+    }
+
+    public double getBestScore(){
+        return bestScore;
+    }
+}
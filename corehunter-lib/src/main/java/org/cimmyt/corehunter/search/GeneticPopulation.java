@@ -18,16 +18,24 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
 import org.cimmyt.corehunter.Accession;
-import org.cimmyt.corehunter.measures.GroupAverageClusterDistance;
 import org.cimmyt.corehunter.measures.ModifiedRogersDistance;
 import org.cimmyt.corehunter.measures.PseudoMeasure;
 
 /**
+ * Population of a genetic algorithm. The individuals of the initial population
+ * and the children of each generation are created and scored in parallel on
+ * the common fork/join pool, using a thread local random generator. Stratified
+ * initial cores are drawn from the strata of CoreSubsetSearch.stratify, which
+ * only builds a (cached) dendrogram of all accessions for collections small
+ * enough for a full distance matrix. The list of accessions is only read, so
+ * several populations may share it.
  *
  * @author hermandebeukelaer
  */
@@ -52,8 +60,6 @@ public class GeneticPopulation {
     private int nrOfChildren;
     // List containing parents for next generation
     private List<List<Accession>> parents;
-    // Set to contain combined accessions from 2 parents
-     private Set<Accession> childSet;
     // Tournament size for tournament selection of parents
     private int T;
     // Mutation rate: the probability that a newly created individual mutates
@@ -62,8 +68,8 @@ public class GeneticPopulation {
     // Random generator
     private Random rg = new Random();
 
-    // Clustering
-    private Clustering clustering;
+    // Stratified sampling of children
+    private StratifiedSampler sampler;
 
     private final int RANDOM_SURVIVAL;
 
@@ -95,48 +101,48 @@ public class GeneticPopulation {
         T = tournamentSize;
         this.mutationRate = mutationRate;
 
-        clustering = new Clustering(maxCoreSize, new GroupAverageClusterDistance(new ModifiedRogersDistance(accessions.size())));
-        childSet = new HashSet<Accession>(minCoreSize);
+        sampler = new StratifiedSampler(new ModifiedRogersDistance(accessions.size()));
     }
 
     /**
      * Create an initial population with randomly selected core sets.
      */
     public void init(){
-        // Create population
+        // Create and score all cores at once and store them in population
+        // (no point of caching, random (unrelated) sets)
+        List<Accession> cores[] = newCoreArray(popSize);
+        double scores[] = new double[popSize];
+        ForkJoinPool.commonPool().invoke(new InitTask(cores, scores, 0, popSize));
         population = new ArrayList<CoreScorePair>(popSize);
         for(int i=0; i<popSize; i++){
-            // Random core size min <= s <= max
-            int s = minCoreSize + rg.nextInt(maxCoreSize-minCoreSize+1);
-
-            List<Accession> core;
-            if(i%4 == 0){
-                // Create random core
-                core = new ArrayList<Accession>(s);
-                for(int j=0; j<s; j++){
-                    int k = rg.nextInt(accessions.size());
-                    core.add(accessions.remove(k));
-                }
-                // Restore accession data set
-                accessions.addAll(core);
-            } else {
-                // Stratified sampling of core
-                clustering.reset();
-                clustering.setDesiredClusters(s);
-                for(Accession a : accessions){
-                    clustering.addAccession(a);
-                }
-                core = CoreSubsetSearch.sampleStratifiedStart(clustering.getClusters(), rg);
-            }
-
-            // Store core in population
-            double score = pm.calculate(core); // no point of caching, random (unrelated) sets
-            population.add(new CoreScorePair(core, score));
+            population.add(new CoreScorePair(cores[i], scores[i]));
         }
         // Sort population based on scores (descending, best core on top)
         sortPopulation();
     }
 
+    /**
+     * Create initial core i.
+     */
+    private List<Accession> createInitialCore(int i, Random rnd){
+        // Random core size min <= s <= max
+        int s = minCoreSize + rnd.nextInt(maxCoreSize-minCoreSize+1);
+
+        List<Accession> core;
+        if(i%4 == 0){
+            // Create random core: partial shuffle of a copy of the accessions
+            List<Accession> shuffled = new ArrayList<Accession>(accessions);
+            for(int j=0; j<s; j++){
+                Collections.swap(shuffled, j, j + rnd.nextInt(shuffled.size()-j));
+            }
+            core = new ArrayList<Accession>(shuffled.subList(0, s));
+        } else {
+            // Stratified sampling of core
+            core = CoreSubsetSearch.sampleStratifiedStart(CoreSubsetSearch.stratify(accessions, s), rnd);
+        }
+        return core;
+    }
+
     public List<Accession> getBestCore(){
         return population.get(0).getCore();
     }
@@ -145,6 +151,39 @@ public class GeneticPopulation {
         return population.get(0).getScore();
     }
 
+    public int getPopulationSize(){
+        return population.size();
+    }
+
+    /**
+     * Core of the individual at the given rank (0 is the best one).
+     */
+    public List<Accession> getCore(int rank){
+        return population.get(rank).getCore();
+    }
+
+    /**
+     * Score of the individual at the given rank (0 is the best one).
+     */
+    public double getScore(int rank){
+        return population.get(rank).getScore();
+    }
+
+    /**
+     * Let an individual from another population replace the worst one, if it
+     * is better.
+     *
+     * @param core
+     * @param score
+     */
+    public void immigrate(List<Accession> core, double score){
+        CoreScorePair immigrant = new CoreScorePair(core, score);
+        if(cmp.compare(immigrant, population.get(population.size()-1)) < 0){
+            population.set(population.size()-1, immigrant);
+            sortPopulation();
+        }
+    }
+
     /**
      * Create the next generation:
      *  - select parents
@@ -182,127 +221,179 @@ public class GeneticPopulation {
     }
 
     private void crossoverAndMutation(){
-        List<Accession> parent1, parent2, child;
+        // Create and score all children at once and add them to population
+        int nrOfPairs = parents.size()/2;
+        List<Accession> children[] = newCoreArray(nrOfPairs);
+        double scores[] = new double[nrOfPairs];
+        ForkJoinPool.commonPool().invoke(new ChildTask(children, scores, 0, nrOfPairs));
+        for(int i=0; i<nrOfPairs; i++){
+            population.add(new CoreScorePair(children[i], scores[i]));
+        }
+    }
+
+    /**
+     * Create a child of the given parents.
+     */
+    private List<Accession> createChild(List<Accession> parent1, List<Accession> parent2, Random rnd){
+        List<Accession> child;
         int p1size, p2size, childSize;
         int pmaxSize, pminSize;
-        Iterator<AccessionCluster> itr;
-        AccessionCluster clust;
-
-        for(int i=0; i<parents.size()-1; i+=2){
 
-            // Cross-over
+        // Cross-over
 
-            // Get parents (make sure parent1 is SMALLEST one)
-            //if(parents.get(i).size() <= parents.get(i+1).size()){
+        p1size = parent1.size();
+        p2size = parent2.size();
 
-                parent1 = parents.get(i);
-                p1size = parent1.size();
-                parent2 = parents.get(i+1);
-                p2size = parent2.size();
+        pmaxSize = Math.max(p1size, p2size);
+        pminSize = Math.min(p1size, p2size);
 
-                pmaxSize = Math.max(p1size, p2size);
-                pminSize = Math.min(p1size, p2size);
+        // Create child (cross-over)
+        //childSize = p1size + rnd.nextInt(p2size-p1size+1);
+        childSize = pminSize + rnd.nextInt(pmaxSize-pminSize+1);
+        //child = new ArrayList<Accession>(childSize);
+        Set<Accession> childSet = new HashSet<Accession>();
 
-            /*} else {
-                parent1 = parents.get(i+1);
-                p1size = parent1.size();
-                parent2 = parents.get(i);
-                p2size = parent2.size();
-            }*/
+        // Add accessions from both parents to child, removing duplicates
+        childSet.addAll(parent1);
+        childSet.addAll(parent2);
 
-            // Create child (cross-over)
-            //childSize = p1size + rg.nextInt(p2size-p1size+1);
-            childSize = pminSize + rg.nextInt(pmaxSize-pminSize+1);
-            //child = new ArrayList<Accession>(childSize);
-            childSet.clear();
+        if(childSet.size() > childSize){
+            //System.out.println("Check! Diff: " + (childSet.size() - childSize));
+        }
 
-            // Add accessions from both parents to child, removing duplicates
-            childSet.addAll(parent1);
-            childSet.addAll(parent2);
+        // Stratified sampling from the combined parents
+        child = sampler.sample(childSet, childSize, rnd);
 
-            if(childSet.size() > childSize){
-                //System.out.println("Check! Diff: " + (childSet.size() - childSize));
+        // Remove possible excessive accessions because of rounded cluster sample sizes
+        /*while(child.size() > childSize){
+            int rem = rnd.nextInt(child.size());
+            child.remove(rem);
+        }*/
+        
+        
+        /*
+        // Get some parts of parent1
+        for(int j=0; j<p1size; j++){
+            // Randomly decide wether to add the accession at
+            // index j in parent1 to the child (probability of 50%)
+            if(rnd.nextBoolean()){
+                child.add(parent1.get(j));
             }
-
-            // Cluster child
-            clustering.reset();
-            clustering.setDesiredClusters(childSize);
-            for(Accession a : childSet){
-                clustering.addAccession(a);
+        }
+        // Get remaining parts from parent2
+        int j=rnd.nextInt(p2size); // Start looping over parent2 at random index
+        // While child not full: add new accessions from parent2
+        Accession a;
+        while(child.size() < childSize){
+            // Add new accession from parent2 if not already present in child
+            a = parent2.get(j);
+            if(!child.contains(a)){
+                child.add(a);
             }
-
-            // Sample from clusters
-            child = new ArrayList<Accession>(childSize);
-            child = new ArrayList<Accession>(childSize);
-            itr = clustering.getClusters().iterator();
-            while(itr.hasNext()){
-                clust = itr.next();
-                //int sampleSize = (int) Math.ceil(((double)clust.size()/(double)childSet.size()) * childSize);
-                //sampleSize = Math.min(sampleSize, clust.size());
-                int sampleSize = 1;
-                // Randomly sample accessions from cluster
-                for(int k=0; k<sampleSize; k++){
-                    int rem = rg.nextInt(clust.size());
-                    child.add(clust.getAccessions().remove(rem));
-                }
+            j = (j+1)%p2size;
+        }
+        */
+        
+        // Mutation of child
+        
+        if(rnd.nextDouble() <= mutationRate && child.size() < accessions.size()){
+            double r = rnd.nextDouble();
+            if(r <= 0.33 && child.size() < maxCoreSize){
+                // Randomly add new accession
+                child.add(randomNonMember(child, rnd));
+            } else if (r <= 0.66 && child.size() > minCoreSize){
+                // Randomly remove accession
+                child.remove(rnd.nextInt(child.size()));
+            } else {
+                // Randomly swap accession
+                int rem = rnd.nextInt(child.size());
+                child.set(rem, randomNonMember(child, rnd));
             }
+        }
 
-            // Remove possible excessive accessions because of rounded cluster sample sizes
-            /*while(child.size() > childSize){
-                int rem = rg.nextInt(child.size());
-                child.remove(rem);
-            }*/
-            
-            
-            /*
-            // Get some parts of parent1
-            for(int j=0; j<p1size; j++){
-                // Randomly decide wether to add the accession at
-                // index j in parent1 to the child (probability of 50%)
-                if(rg.nextBoolean()){
-                    child.add(parent1.get(j));
-                }
-            }
-            // Get remaining parts from parent2
-            int j=rg.nextInt(p2size); // Start looping over parent2 at random index
-            // While child not full: add new accessions from parent2
+        return child;
+    }
+
+    /**
+     * Random accession that is not contained in the given core.
+     */
+    private Accession randomNonMember(List<Accession> core, Random rnd){
+        Set<Accession> members = new HashSet<Accession>(core);
+        if(2*members.size() <= accessions.size()){
+            // Rejection sampling, at least half of the accessions qualify
             Accession a;
-            while(child.size() < childSize){
-                // Add new accession from parent2 if not already present in child
-                a = parent2.get(j);
-                if(!child.contains(a)){
-                    child.add(a);
-                }
-                j = (j+1)%p2size;
-            }
-            */
-            
-            // Mutation of child
-            
-            if(rg.nextDouble() <= mutationRate){
-                double r = rg.nextDouble();
-                if(r <= 0.33 && child.size() < maxCoreSize){
-                    // Randomly add new accession
-                    accessions.removeAll(child);
-                    child.add(accessions.remove(rg.nextInt(accessions.size())));
-                    accessions.addAll(child);
-                } else if (r <= 0.66 && child.size() > minCoreSize){
-                    // Randomly remove accession
-                    child.remove(rg.nextInt(child.size()));
-                } else {
-                    // Randomly swap accession
-                    accessions.removeAll(child);
-                    int add = rg.nextInt(accessions.size());
-                    int rem = rg.nextInt(child.size());
-                    Accession rema = child.set(rem, accessions.get(add));
-                    accessions.set(add, rema);
-                    accessions.addAll(child);
-                }
+            do {
+                a = accessions.get(rnd.nextInt(accessions.size()));
+            } while(members.contains(a));
+            return a;
+        }
+        List<Accession> others = new ArrayList<Accession>(accessions);
+        others.removeAll(members);
+        return others.get(rnd.nextInt(others.size()));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Accession>[] newCoreArray(int size){
+        return new List[size];
+    }
+
+    /**
+     * Creates and scores initial cores from..to-1.
+     */
+    private class InitTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<Accession> cores[];
+        private double scores[];
+        private int from, to;
+
+        public InitTask(List<Accession> cores[], double scores[], int from, int to){
+            this.cores = cores;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute(){
+            if(to - from == 1){
+                cores[from] = createInitialCore(from, ThreadLocalRandom.current());
+                scores[from] = pm.calculate(cores[from]);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new InitTask(cores, scores, from, mid),
+                          new InitTask(cores, scores, mid, to));
             }
+        }
+    }
 
-            // Add child to population (and its score)
-            double score = pm.calculate(child);
-            population.add(new CoreScorePair(child, score));
+    /**
+     * Creates and scores the children of parent pairs from..to-1.
+     */
+    private class ChildTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<Accession> children[];
+        private double scores[];
+        private int from, to;
+
+        public ChildTask(List<Accession> children[], double scores[], int from, int to){
+            this.children = children;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute(){
+            if(to - from == 1){
+                children[from] = createChild(parents.get(2*from), parents.get(2*from+1), ThreadLocalRandom.current());
+                scores[from] = pm.calculate(children[from]);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChildTask(children, scores, from, mid),
+                          new ChildTask(children, scores, mid, to));
+            }
         }
     }
 
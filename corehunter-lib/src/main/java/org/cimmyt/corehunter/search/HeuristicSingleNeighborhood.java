@@ -14,8 +14,10 @@
 
 package org.cimmyt.corehunter.search;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.measures.PseudoMeasure;
 
@@ -25,6 +27,14 @@ import org.cimmyt.corehunter.measures.PseudoMeasure;
  */
 public class HeuristicSingleNeighborhood extends SingleNeighborhood {
 
+    // collections from which candidate lists are used by default, and
+    // their default size
+    private final static int CANDIDATE_LISTS_MIN_COLLECTION_SIZE = 5000;
+    private final static int DEFAULT_CANDIDATE_LIST_SIZE = 300;
+
+    // restricts the accessions considered for addition, null if all are tried
+    private CandidateList candidateList;
+
     public HeuristicSingleNeighborhood(int minSize, int maxSize){
         this(minSize, maxSize,1);
     }
@@ -35,11 +45,40 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
 
     @Override
     public HeuristicSingleNeighborhood clone(){
-        return new HeuristicSingleNeighborhood(minSize, maxSize, historySize);
+        HeuristicSingleNeighborhood nh = new HeuristicSingleNeighborhood(minSize, maxSize, historySize);
+        nh.setParallelScan(parallelScan);
+        if(candidateList != null){
+            nh.candidateList = candidateList.copy();
+        }
+        return nh;
+    }
+
+    /**
+     * Only consider the accessions in a candidate list of (about) the given
+     * size for addition to the core, instead of all unselected accessions,
+     * so that a step takes a few hundred evaluations on large collections.
+     * The list is built from the distances between accessions (see
+     * CandidateList). A size of 0 disables candidate lists.
+     *
+     * @param size
+     */
+    public void setCandidateListSize(int size){
+        candidateList = (size > 0) ? new CandidateList(size) : null;
+    }
+
+    /**
+     * Default candidate list size for a collection of the given size: lists
+     * are only used for large collections.
+     *
+     * @param collectionSize
+     * @return
+     */
+    public static int defaultCandidateListSize(int collectionSize){
+        return (collectionSize >= CANDIDATE_LISTS_MIN_COLLECTION_SIZE) ? DEFAULT_CANDIDATE_LIST_SIZE : 0;
     }
 
     @Override
-    public int genBestNeighbor(List<Accession> core, List<Accession> unselected, List<Integer> tabu,
+    public int genBestNeighbor(List<Accession> core, List<Accession> unselected, TabuList tabu,
                                double curBestScore, PseudoMeasure pm, String cacheID) {
 
         // search for a good neighbor by perturbing core using the following heuristic:
@@ -61,9 +100,22 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
             bestScore = pm.calculate(core, cacheID);
         }
 
-        // try adding each accession from unselected
+        // only try the accessions in the candidate list, if any
+        Set<Accession> candidates = null;
+        if(candidateList != null && unselected.size() > candidateList.size()){
+            candidates = candidateList.get(core, unselected, pm);
+        }
+
+        if(parallelScan){
+            return genBestNeighborParallel(core, unselected, tabu, curBestScore, pm, cacheID, bestScore, candidates);
+        }
+
+        // try adding each (candidate) accession from unselected
         for(int i=0; i<unselected.size(); i++){
             Accession a = unselected.get(i);
+            if(candidates != null && !candidates.contains(a)){
+                continue;
+            }
             core.add(a);
             score = pm.calculate(core, cacheID);
             if(score > bestScore){
@@ -84,7 +136,7 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
             for(int i=core.size()-1; i>=0; i--){ //backward loop, reverses order
                 Accession a = core.remove(i);
                 score = pm.calculate(core, cacheID);
-                if(score > bestScore && (tabu == null || !tabu.contains(i) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                if(score > bestScore && (tabu == null || !tabu.isTabu(a) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestRemIndex = i;
                 }
@@ -104,7 +156,7 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
             for(int i=0; i<core.size(); i++){
                 Accession b = core.set(i, a);
                 score = pm.calculate(core, cacheID);
-                if(score > bestScore && (tabu == null || !tabu.contains(i) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                if(score > bestScore && (tabu == null || !tabu.isTabu(b) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestRemIndex = i;
                 }
@@ -115,7 +167,7 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
             if(core.size() < maxSize){
                 core.add(a);
                 score = pm.calculate(core, cacheID);
-                if(score > bestScore && (tabu == null || !tabu.contains(-1) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                if(score > bestScore && (tabu == null || !tabu.isAdditionTabu() || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestRemIndex = -1;
                 }
@@ -125,7 +177,56 @@ public class HeuristicSingleNeighborhood extends SingleNeighborhood {
         }
 
         // peturb core into 'best' neighor found by heuristic
-        return performBestPerturbation(core, bestRemIndex, unselected, bestAddIndex, tabu);
+        if(candidateList != null){
+            candidateList.changed(bestRemIndex == -1 ? null : core.get(bestRemIndex));
+        }
+        return performBestPerturbation(core, bestRemIndex, unselected, bestAddIndex);
+    }
+
+    /**
+     * Parallel version of the heuristic: both the best addition and the best
+     * removal are found with a parallel scan (see NeighborScan).
+     */
+    private int genBestNeighborParallel(List<Accession> core, List<Accession> unselected, TabuList tabu,
+                                        double curBestScore, PseudoMeasure pm, String cacheID,
+                                        double deletionScore, Set<Accession> candidates){
+        // make sure the cache holds the current core
+        pm.calculate(core, cacheID);
+
+        int addIndices[] = null;
+        if(candidates != null){
+            addIndices = new int[unselected.size()];
+            int n = 0;
+            for(int i=0; i<unselected.size(); i++){
+                if(candidates.contains(unselected.get(i))){
+                    addIndices[n++] = i;
+                }
+            }
+            addIndices = Arrays.copyOf(addIndices, n);
+        }
+
+        // best addition, if better than pure deletion
+        int bestAddIndex = -1;
+        NeighborScan.Move add = NeighborScan.findBest(core, unselected, addIndices, false, false, true, null,
+                                                      curBestScore, pm, cacheID);
+        if(add != null && add.score > deletionScore){
+            bestAddIndex = add.addIndex;
+        }
+
+        // best removal: pure deletion, or swap with / pure addition of the new accession
+        NeighborScan.Move rem;
+        if(bestAddIndex == -1){
+            rem = NeighborScan.findBest(core, unselected, null, true, false, false, tabu, curBestScore, pm, cacheID);
+        } else {
+            rem = NeighborScan.findBest(core, unselected, new int[]{bestAddIndex}, false, true,
+                                        core.size() < maxSize, tabu, curBestScore, pm, cacheID);
+        }
+        int bestRemIndex = (rem == null) ? -1 : rem.remIndex;
+
+        if(candidateList != null){
+            candidateList.changed(bestRemIndex == -1 ? null : core.get(bestRemIndex));
+        }
+        return performBestPerturbation(core, bestRemIndex, unselected, bestAddIndex);
     }
 
     @Override
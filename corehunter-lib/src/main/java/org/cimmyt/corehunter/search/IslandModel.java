@@ -0,0 +1,171 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Island model for the genetic algorithm: every population (island) evolves
+ * continuously on its own worker. Islands form a ring, and every few
+ * generations an island sends copies of its best individuals to the next
+ * island through a lock-free queue. Before each generation an island takes
+ * all migrants from its own queue, which replace its worst individuals if
+ * they are better. The best core found on any island is published through an
+ * atomic reference.
+ *
+ * @author hermandebeukelaer
+ */
+class IslandModel {
+
+    private Island islands[];
+
+    // migrants waiting to enter island i
+    private Queue<Migrant> inboxes[];
+
+    private int migrationPeriod;
+    private int nrOfMigrants;
+
+    private AtomicReference<BestCore> best;
+    private volatile boolean stopped;
+
+    /**
+     * @param populations initialized populations, one for each island
+     * @param migrationPeriod nr of generations between two migrations
+     * @param nrOfMigrants nr of best individuals sent to the next island
+     */
+    public IslandModel(GeneticPopulation populations[], int migrationPeriod, int nrOfMigrants){
+        this.migrationPeriod = migrationPeriod;
+        this.nrOfMigrants = nrOfMigrants;
+        islands = new Island[populations.length];
+        inboxes = newInboxArray(populations.length);
+        for(int i=0; i<populations.length; i++){
+            islands[i] = new Island(populations[i], i);
+            inboxes[i] = new ConcurrentLinkedQueue<Migrant>();
+        }
+        best = new AtomicReference<BestCore>(new BestCore(-Double.MAX_VALUE, new ArrayList<Accession>()));
+        stopped = false;
+        for(Island island : islands){
+            island.publish();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<Migrant>[] newInboxArray(int size){
+        return new Queue[size];
+    }
+
+    public Island[] getIslands(){
+        return islands;
+    }
+
+    /**
+     * Best core published so far, with its score.
+     */
+    public BestCore getBest(){
+        return best.get();
+    }
+
+    /**
+     * Signal all islands to stop after their current generation.
+     */
+    public void stop(){
+        stopped = true;
+    }
+
+    /**
+     * Copy of a core sent to another island.
+     */
+    private static class Migrant {
+
+        final List<Accession> core;
+        final double score;
+
+        Migrant(List<Accession> core, double score){
+            this.core = core;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Evolves a single population until the search is stopped.
+     */
+    class Island implements Runnable {
+
+        private GeneticPopulation population;
+        private int index;
+        private int generations;
+
+        Island(GeneticPopulation population, int index){
+            this.population = population;
+            this.index = index;
+            generations = 0;
+        }
+
+        public int getGenerations(){
+            return generations;
+        }
+
+        public void run(){
+            while(!stopped){
+                immigrate();
+                population.nextGen();
+                generations++;
+                publish();
+                if(islands.length > 1 && generations % migrationPeriod == 0){
+                    emigrate();
+                }
+            }
+        }
+
+        private void immigrate(){
+            Migrant m;
+            while((m = inboxes[index].poll()) != null){
+                population.immigrate(m.core, m.score);
+            }
+        }
+
+        private void emigrate(){
+            Queue<Migrant> next = inboxes[(index+1) % islands.length];
+            int n = Math.min(nrOfMigrants, population.getPopulationSize());
+            for(int i=0; i<n; i++){
+                next.offer(new Migrant(new ArrayList<Accession>(population.getCore(i)), population.getScore(i)));
+            }
+        }
+
+        /**
+         * Publish the best core of this island if it beats the global best
+         * (or has the same score and a smaller size).
+         */
+        private void publish(){
+            double score = population.getBestScore();
+            BestCore cur = best.get();
+            if(!cur.improvedBy(score, population.getBestCore().size())){
+                return;
+            }
+            BestCore b = new BestCore(score, new ArrayList<Accession>(population.getBestCore()));
+            while(cur.improvedBy(b.score, b.core.size())){
+                if(best.compareAndSet(cur, b)){
+                    return;
+                }
+                cur = best.get();
+            }
+        }
+    }
+}
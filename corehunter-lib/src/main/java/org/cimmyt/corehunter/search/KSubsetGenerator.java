@@ -27,6 +27,12 @@ public class KSubsetGenerator {
     // nr of elements in entire set
     private int n;
 
+    // work array for the primitive successor, including t_0 and t_{k+1}
+    private int[] S;
+    // elements removed and added by the last primitive successor
+    private int removed;
+    private int added;
+
 
     public KSubsetGenerator(int k, int n){
         this.k = k;
@@ -79,4 +85,107 @@ public class KSubsetGenerator {
             T[i-1] = S[i];
         }
     }
+
+    /**
+     * Return the k-subset with the given rank (starting from 0 for first())
+     * in the revolving door order generated by successor.
+     */
+    public int[] unrank(long rank){
+        int[] T = new int[k];
+        int x = n;
+        for(int i = k; i >= 1; i--) {
+            while(binomial(x, i) > rank) {
+                x--;
+            }
+            T[i-1] = x+1;
+            rank = binomial(x+1, i) - rank - 1;
+        }
+        return T;
+    }
+
+    private static long binomial(int x, int i){
+        if(x < i){
+            return 0;
+        }
+        return MathUtils.binomialCoefficient(x, i);
+    }
+
+    public int[] firstSubset(){
+        // Generate first k-subset
+        int[] first = new int[k];
+        for(int i=0; i<k; i++){
+            first[i] = i+1;
+        }
+        return first;
+    }
+
+    /**
+     * Same revolving door successor as for Integer[], without boxing. The
+     * subset is updated in place; consecutive subsets differ by exactly one
+     * element, which is available afterwards from getRemoved() and getAdded().
+     */
+    public void successor(int[] T){
+        if(S == null){
+            S = new int[k+2];
+        }
+        S[0] = 0; // t_0
+        System.arraycopy(T, 0, S, 1, k);
+        S[k+1] = n+1; // t_{k+1}
+
+        int j = 1;
+        while(j <= k && S[j] == j) {
+            j++;
+        }
+        if(k % 2 != j % 2) {
+            if(j == 1) {
+                S[1]--;
+            } else {
+                S[j-1] = j;
+                S[j-2] = j-1;
+            }
+        } else {
+            if(S[j+1] != S[j]+1) {
+                S[j-1] = S[j];
+                S[j] = S[j]+1;
+            } else {
+                S[j+1] = S[j];
+                S[j] = j;
+            }
+        }
+
+        // Both subsets are sorted: find the single element that left and
+        // the single element that entered
+        int a = 0, b = 1;
+        removed = added = 0;
+        while(a < k || b <= k){
+            int t = a < k ? T[a] : Integer.MAX_VALUE;
+            int u = b <= k ? S[b] : Integer.MAX_VALUE;
+            if(t == u){
+                a++;
+                b++;
+            } else if(t < u){
+                removed = t;
+                a++;
+            } else {
+                added = u;
+                b++;
+            }
+        }
+
+        System.arraycopy(S, 1, T, 0, k);
+    }
+
+    /**
+     * Element removed from the subset by the last call to successor(int[]).
+     */
+    public int getRemoved(){
+        return removed;
+    }
+
+    /**
+     * Element added to the subset by the last call to successor(int[]).
+     */
+    public int getAdded(){
+        return added;
+    }
 }
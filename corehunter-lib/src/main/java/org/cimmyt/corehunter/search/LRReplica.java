@@ -35,10 +35,17 @@ public class LRReplica extends Replica {
     Stack<SinglePerturbation> history;
 
 
-    private boolean cont;
+    private volatile boolean cont;
     private int totalSteps;
     private boolean skipadd;
 
+    // lazy selection of additions, if the measure allows it
+    private boolean lazyGreedy = false;
+    private LazyGreedy greedy;
+
+    // end of the current time slice, when run by a scheduler
+    private long sliceEnd = Long.MAX_VALUE;
+
     public LRReplica(AccessionCollection ac, PseudoMeasure pm, int nrOfSteps, int repTime,
                      int sampleMin, int sampleMax, int l, int r, boolean exhFirstPair){
 
@@ -50,6 +57,18 @@ public class LRReplica extends Replica {
         totalSteps=0;
     }
 
+    /**
+     * Select additions lazily (see LazyGreedy), which only applies when the
+     * measure has diminishing returns. Takes effect on the next init.
+     */
+    public void setLazyGreedy(boolean lazyGreedy){
+        this.lazyGreedy = lazyGreedy;
+    }
+
+    public boolean getLazyGreedy(){
+        return lazyGreedy;
+    }
+
     @Override
     public void init(){
         history = new Stack<SinglePerturbation>();
@@ -76,6 +95,7 @@ public class LRReplica extends Replica {
         }
         score = pm.calculate(core, cacheId);
         bestNewScore = score;
+        greedy = lazyGreedy ? new LazyGreedy(pm, cacheId, score, true) : null;
     }
 
     /**
@@ -110,53 +130,96 @@ public class LRReplica extends Replica {
         return isDone() && stucked > STUCK_STAY;
     }
 
+    /**
+     * Without a limit on the nr of steps or the run time, an LR replica runs
+     * until it is done; such a run can be interrupted after any step and is
+     * finished when the replica is done.
+     *
+     * @param sliceTime
+     * @return
+     */
+    @Override
+    public boolean doSlice(long sliceTime){
+        if(nrOfSteps > 0 || repTime > 0 || sliceTime <= 0){
+            return super.doSlice(sliceTime);
+        }
+        sliceEnd = System.currentTimeMillis() + sliceTime;
+        doSteps();
+        sliceEnd = Long.MAX_VALUE;
+        return isDone();
+    }
+
     @Override
     public void doSteps() {
         int steps=0;
         double etime = System.currentTimeMillis() + repTime;
 
-        while(cont &&
+        while(cont && System.currentTimeMillis() < sliceEnd &&
                (  (nrOfSteps > 0 && steps < nrOfSteps)
                   || (repTime > 0 && System.currentTimeMillis() < etime)
                   || (nrOfSteps <= 0 && repTime <= 0) ) ){
 
-            // Add l new accessions to core
-            if(!skipadd){
-                for(int i=0; i<l; i++){
-                    // Search for best new accession
+            // nr of additions and deletions made in this step
+            int moves = 0;
+            if(greedy != null){
+                // Same steps, scored against the cached core
+                if(!skipadd){
+                    for(int i=0; i<l; i++){
+                        int addIndex = greedy.addBest(core, unselected);
+                        if(addIndex == -1){
+                            break; // all accessions selected
+                        }
+                        history.add(new Addition(addIndex));
+                        moves++;
+                    }
+                    skipadd=false;
+                }
+                for(int i=0; i<r; i++){
+                    history.add(new Deletion(greedy.removeWorst(core, unselected)));
+                    moves++;
+                }
+                bestNewScore = greedy.getScore();
+            } else {
+                // Add l new accessions to core
+                if(!skipadd){
+                    for(int i=0; i<l && !unselected.isEmpty(); i++){
+                        // Search for best new accession
+                        bestNewScore = -Double.MAX_VALUE;
+                        for(int j=0; j<unselected.size(); j++){
+                            Accession add = unselected.get(j);
+                            core.add(add);
+                            newScore = pm.calculate(core, cacheId);
+                            if(newScore > bestNewScore){
+                                bestNewScore = newScore;
+                                bestAddIndex = j;
+                            }
+                            core.remove(core.size()-1);
+                        }
+                        // Add best new accession
+                        core.add(unselected.remove(bestAddIndex));
+                        history.add(new Addition(bestAddIndex));
+                        moves++;
+                    }
+                    skipadd=false;
+                }
+                // Remove r accessions from core
+                for(int i=0; i<r; i++){
+                    // Search for worst accession
                     bestNewScore = -Double.MAX_VALUE;
-                    for(int j=0; j<unselected.size(); j++){
-                        Accession add = unselected.get(j);
-                        core.add(add);
+                    for(int j=0; j<core.size(); j++){
+                        Accession rem = core.remove(j);
                         newScore = pm.calculate(core, cacheId);
                         if(newScore > bestNewScore){
                             bestNewScore = newScore;
-                            bestAddIndex = j;
+                            bestRemIndex = j;
                         }
-                        core.remove(core.size()-1);
-                    }
-                    // Add best new accession
-                    core.add(unselected.remove(bestAddIndex));
-                    history.add(new Addition(bestAddIndex));
-                }
-                skipadd=false;
-            }
-            // Remove r accessions from core
-            for(int i=0; i<r; i++){
-                // Search for worst accession
-                bestNewScore = -Double.MAX_VALUE;
-                for(int j=0; j<core.size(); j++){
-                    Accession rem = core.remove(j);
-                    newScore = pm.calculate(core, cacheId);
-                    if(newScore > bestNewScore){
-                        bestNewScore = newScore;
-                        bestRemIndex = j;
+                        core.add(j, rem);
                     }
-                    core.add(j, rem);
+                    // Remove worst accession
+                    unselected.add(core.remove(bestRemIndex));
+                    history.add(new Deletion(bestRemIndex));
+                    moves++;
                 }
-                // Remove worst accession
-                unselected.add(core.remove(bestRemIndex));
-                history.add(new Deletion(bestRemIndex));
             }
 
             dscore = bestNewScore - score;
@@ -168,7 +231,7 @@ public class LRReplica extends Replica {
                 if (core.size() > sampleMin && dscore <= 0) {
                     cont = false; // Equal or worse score and size increased
                     // Restore previous core
-                    for(int i=0; i<l+r; i++){
+                    for(int i=0; i<moves; i++){
                         history.pop().undo(core, unselected);
                     }
                 } else if(core.size()+l-r > sampleMax){
@@ -180,7 +243,7 @@ public class LRReplica extends Replica {
                 if (core.size() < sampleMax && dscore < 0){
                     cont = false; // Worse score
                     // Restore previous core
-                    for(int i=0; i<l+r; i++){
+                    for(int i=0; i<moves; i++){
                         history.pop().undo(core, unselected);
                     }
                 } else if (core.size()+l-r < sampleMin){
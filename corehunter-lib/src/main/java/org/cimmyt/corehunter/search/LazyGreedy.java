@@ -0,0 +1,252 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Greedy additions and deletions for the LR searches, scored against the
+ * cached current core with the non-mutating delta API.
+ *
+ * If the pseudo measure has diminishing returns, additions are selected
+ * lazily: the marginal gains of all unselected accessions are kept in a
+ * max-heap, where a gain computed for a smaller core is an upper bound on the
+ * current one. Only the top of the heap is re-evaluated, until an accession
+ * with an up-to-date gain stays on top, which is then the best addition.
+ * After a deletion the bounds no longer hold and the heap is rebuilt on the
+ * next addition. For other measures every addition is scored (exact greedy).
+ *
+ * Ties are broken in favour of the accession that comes first in the
+ * unselected list, as in the exact scan, so for measures whose gains never
+ * increase (such as CV and PN) both select the same accessions. Measures that
+ * only approximately have diminishing returns (SH) may make the lazy search
+ * pick a different accession now and then. Each gain keeps the position of
+ * its accession in the unselected list when the heap was built; since only
+ * additions remove accessions from that list until it is rebuilt, the
+ * current position follows from the nr of earlier positions removed, which
+ * are counted in a Fenwick tree.
+ *
+ * The cache with the given id has to be up to date with the core when the
+ * first addition or deletion is made; it is kept up to date afterwards.
+ *
+ * @author hermandebeukelaer
+ */
+class LazyGreedy {
+
+    private final PseudoMeasure pm;
+    private final String cacheID;
+    private final boolean lazy;
+
+    // score of the current core
+    private double score;
+
+    // stale gains of the unselected accessions, null if they have to be rebuilt
+    private PriorityQueue<Gain> gains;
+    // nr of additions made so far, used to tell fresh gains from stale ones
+    private int version;
+    // Fenwick tree over the positions in unselected when the heap was built,
+    // counting the positions removed since
+    private int removedPositions[];
+
+    private final List<Accession> added = new ArrayList<Accession>(1);
+    private final List<Accession> removed = new ArrayList<Accession>(1);
+
+    /**
+     * Marginal gain of adding an accession, computed after the given nr of
+     * additions, with the position of the accession in unselected when the
+     * heap was built.
+     */
+    private static class Gain {
+
+        final Accession accession;
+        final double gain;
+        final int version;
+        final int position;
+
+        Gain(Accession accession, double gain, int version, int position){
+            this.accession = accession;
+            this.gain = gain;
+            this.version = version;
+            this.position = position;
+        }
+    }
+
+    private static final Comparator<Gain> LARGEST_GAIN_FIRST = new Comparator<Gain>() {
+        public int compare(Gain g1, Gain g2){
+            int c = Double.compare(g2.gain, g1.gain);
+            return c != 0 ? c : Integer.compare(g1.position, g2.position);
+        }
+    };
+
+    /**
+     * @param pm
+     * @param cacheID
+     * @param score score of the current core
+     * @param lazy use lazy selection of additions if the measure allows it
+     */
+    LazyGreedy(PseudoMeasure pm, String cacheID, double score, boolean lazy){
+        this.pm = pm;
+        this.cacheID = cacheID;
+        this.score = score;
+        this.lazy = lazy && pm.hasDiminishingReturns();
+        gains = null;
+        version = 0;
+    }
+
+    /**
+     * True if additions are selected lazily, false if the exact fallback is
+     * used because the measure does not have diminishing returns.
+     */
+    boolean isLazy(){
+        return lazy;
+    }
+
+    /**
+     * Score of the current core.
+     */
+    double getScore(){
+        return score;
+    }
+
+    /**
+     * Move the best unselected accession to the end of the core.
+     *
+     * @return the index of the added accession in unselected, -1 if there are
+     *         no unselected accessions (nothing is changed)
+     */
+    int addBest(List<Accession> core, List<Accession> unselected){
+        if(unselected.isEmpty()){
+            return -1;
+        }
+        int bestAddIndex;
+        double bestNewScore;
+        if(lazy){
+            if(gains == null){
+                rebuild(core, unselected);
+            }
+            Gain top = gains.poll();
+            while(top.version != version){
+                // stale gain: re-evaluate, if it stays on top it is the best
+                double newScore = scoreAddition(core, top.accession);
+                gains.add(new Gain(top.accession, newScore - score, version, top.position));
+                top = gains.poll();
+            }
+            bestAddIndex = top.position - removedBefore(top.position);
+            markRemoved(top.position);
+            bestNewScore = score + top.gain;
+        } else {
+            // exact greedy: score all additions, first best one wins
+            double scores[] = scoreAdditions(core, unselected);
+            bestAddIndex = -1;
+            bestNewScore = -Double.MAX_VALUE;
+            for(int j=0; j<scores.length; j++){
+                if(scores[j] > bestNewScore){
+                    bestNewScore = scores[j];
+                    bestAddIndex = j;
+                }
+            }
+        }
+
+        Accession a = unselected.remove(bestAddIndex);
+        core.add(a);
+        added.clear();
+        removed.clear();
+        added.add(a);
+        pm.calculate(core, added, removed, cacheID);
+        score = bestNewScore;
+        version++;
+        return bestAddIndex;
+    }
+
+    /**
+     * Move the core accession whose removal yields the best score to the end
+     * of unselected. Deletions are always scored exactly.
+     *
+     * @return the index of the removed accession in the core
+     */
+    int removeWorst(List<Accession> core, List<Accession> unselected){
+        int bestRemIndex = -1;
+        double bestNewScore = -Double.MAX_VALUE;
+        added.clear();
+        for(int j=0; j<core.size(); j++){
+            removed.clear();
+            removed.add(core.get(j));
+            double newScore = pm.calculateNeighbor(core, added, removed, cacheID);
+            if(newScore > bestNewScore){
+                bestNewScore = newScore;
+                bestRemIndex = j;
+            }
+        }
+
+        Accession a = core.remove(bestRemIndex);
+        unselected.add(a);
+        removed.clear();
+        removed.add(a);
+        pm.calculate(core, added, removed, cacheID);
+        score = bestNewScore;
+        // gains may have increased, so they are no longer upper bounds
+        gains = null;
+        return bestRemIndex;
+    }
+
+    private void rebuild(List<Accession> core, List<Accession> unselected){
+        double scores[] = scoreAdditions(core, unselected);
+        gains = new PriorityQueue<Gain>(Math.max(1, unselected.size()), LARGEST_GAIN_FIRST);
+        for(int j=0; j<scores.length; j++){
+            gains.add(new Gain(unselected.get(j), scores[j] - score, version, j));
+        }
+        removedPositions = new int[unselected.size()+1];
+    }
+
+    // nr of removed positions before the given one
+    private int removedBefore(int position){
+        int count = 0;
+        for(int i=position; i>0; i-=i&(-i)){
+            count += removedPositions[i];
+        }
+        return count;
+    }
+
+    private void markRemoved(int position){
+        for(int i=position+1; i<removedPositions.length; i+=i&(-i)){
+            removedPositions[i]++;
+        }
+    }
+
+    // scores of adding each unselected accession, in parallel for large batches
+    private double[] scoreAdditions(List<Accession> core, List<Accession> unselected){
+        List<List<Accession>> adds = new ArrayList<List<Accession>>(unselected.size());
+        List<List<Accession>> rems = new ArrayList<List<Accession>>(unselected.size());
+        List<Accession> none = Collections.emptyList();
+        for(Accession a : unselected){
+            adds.add(Collections.singletonList(a));
+            rems.add(none);
+        }
+        return pm.calculateNeighbors(core, adds, rems, cacheID);
+    }
+
+    private double scoreAddition(List<Accession> core, Accession a){
+        added.clear();
+        removed.clear();
+        added.add(a);
+        return pm.calculateNeighbor(core, added, removed, cacheID);
+    }
+}
@@ -0,0 +1,115 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Exchange of several accessions at once: the accessions at the given
+ * (distinct) core indices are removed and those at the given (distinct)
+ * indices in the unselected list are added. Both arrays differ in length by
+ * at most one; the first min(#removed, #added) accessions are swapped in
+ * place, and a remaining accession is deleted from the core (appended to
+ * unselected) or added to the core (at the end), as with a single Deletion
+ * or Addition.
+ *
+ * @author hermandebeukelaer
+ */
+public class MultiSwap implements SinglePerturbation {
+
+    // positions of the removed accessions in the core
+    private int coreIndices[];
+    // positions of the added accessions in the unselected list
+    private int unselIndices[];
+
+    public MultiSwap(int coreIndices[], int unselIndices[]){
+        this.coreIndices = coreIndices;
+        this.unselIndices = unselIndices;
+    }
+
+    public int nrOfRemoved(){
+        return coreIndices.length;
+    }
+
+    public int nrOfAdded(){
+        return unselIndices.length;
+    }
+
+    /**
+     * Perform the exchange on the given core and unselected list.
+     *
+     * @param core
+     * @param unselected
+     * @return The index where (one of) the new accession(s) has been added to the core, -1 if none
+     */
+    public int perform(List<Accession> core, List<Accession> unselected){
+        int swaps = Math.min(coreIndices.length, unselIndices.length);
+        for(int i=0; i<swaps; i++){
+            Accession a = core.set(coreIndices[i], unselected.get(unselIndices[i]));
+            unselected.set(unselIndices[i], a);
+        }
+        if(coreIndices.length > swaps){
+            unselected.add(core.remove(coreIndices[swaps]));
+            if(swaps > 0 && coreIndices[swaps] < coreIndices[0]){
+                // swapped in accession has shifted
+                return coreIndices[0]-1;
+            }
+        } else if(unselIndices.length > swaps){
+            core.add(unselected.remove(unselIndices[swaps]));
+            return core.size()-1;
+        }
+        return swaps > 0 ? coreIndices[0] : -1;
+    }
+
+    /**
+     * Accessions removed from the given core by this exchange, before it is performed.
+     */
+    public List<Accession> getRemoved(List<Accession> core){
+        List<Accession> removed = new ArrayList<Accession>(coreIndices.length);
+        for(int i : coreIndices){
+            removed.add(core.get(i));
+        }
+        return removed;
+    }
+
+    /**
+     * Accessions added from the given unselected list by this exchange, before it is performed.
+     */
+    public List<Accession> getAdded(List<Accession> unselected){
+        List<Accession> added = new ArrayList<Accession>(unselIndices.length);
+        for(int i : unselIndices){
+            added.add(unselected.get(i));
+        }
+        return added;
+    }
+
+    public void undo(List<Accession> core, List<Accession> unselected) {
+        // To undo the exchange: first undo the deletion or addition, then
+        // swap back in reverse order
+        int swaps = Math.min(coreIndices.length, unselIndices.length);
+        if(coreIndices.length > swaps){
+            core.add(coreIndices[swaps], unselected.remove(unselected.size()-1));
+        } else if(unselIndices.length > swaps){
+            unselected.add(unselIndices[swaps], core.remove(core.size()-1));
+        }
+        for(int i=swaps-1; i>=0; i--){
+            Accession a = core.set(coreIndices[i], unselected.get(unselIndices[i]));
+            unselected.set(unselIndices[i], a);
+        }
+    }
+
+}
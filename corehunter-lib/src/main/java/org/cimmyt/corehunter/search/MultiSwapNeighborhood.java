@@ -0,0 +1,257 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Neighborhood of k-exchange moves: k accessions of the core are swapped for
+ * k unselected accessions at once. If the core size limits allow it, a move
+ * may also remove one accession more than it adds, or the other way around,
+ * so for k = 1 this is the neighborhood of the RandomSingleNeighborhood. The
+ * exchange size k can be changed between moves (see setK), up to a maximum,
+ * which allows variable neighborhood search (see VNSReplica).
+ *
+ * Since the neighborhood is far too large to scan for k > 1, the best
+ * neighbor is the best of a random sample of moves, which are scored through
+ * the delta API of the pseudomeasure without changing the core.
+ *
+ * @author hermandebeukelaer
+ */
+public class MultiSwapNeighborhood extends Neighborhood {
+
+    // default nr of moves sampled by genBestNeighbor
+    private final static int DEFAULT_SAMPLE_SIZE = 100;
+
+    private LinkedList<SinglePerturbation> history;
+
+    // current and max. exchange size
+    private int k, maxK;
+
+    // nr of moves sampled by genBestNeighbor
+    private int sampleSize;
+
+    public MultiSwapNeighborhood(int minSize, int maxSize, int maxK){
+        this(minSize, maxSize, maxK, 1);
+    }
+
+    public MultiSwapNeighborhood(int minSize, int maxSize, int maxK, int historySize){
+        super(minSize, maxSize, historySize);
+        history = new LinkedList<SinglePerturbation>();
+        this.maxK = Math.max(maxK, 1);
+        k = 1;
+        sampleSize = DEFAULT_SAMPLE_SIZE;
+    }
+
+    @Override
+    public MultiSwapNeighborhood clone(){
+        MultiSwapNeighborhood nh = new MultiSwapNeighborhood(minSize, maxSize, maxK, historySize);
+        nh.k = k;
+        nh.sampleSize = sampleSize;
+        return nh;
+    }
+
+    /**
+     * Set the nr of accessions exchanged by the next moves, in [1..maxK].
+     *
+     * @param k
+     */
+    public void setK(int k){
+        this.k = Math.max(1, Math.min(k, maxK));
+    }
+
+    public int getK(){
+        return k;
+    }
+
+    public int getMaxK(){
+        return maxK;
+    }
+
+    /**
+     * Set the nr of random moves from which genBestNeighbor selects the best one.
+     *
+     * @param sampleSize
+     */
+    public void setSampleSize(int sampleSize){
+        this.sampleSize = Math.max(1, sampleSize);
+    }
+
+    public int getSampleSize(){
+        return sampleSize;
+    }
+
+    /**
+     * Draw a random move of the current size k, without changing the core.
+     * The exchange size is reduced if the core or the unselected list is too
+     * small. The move can be scored through its added and removed accessions,
+     * and applied with performPerturbation.
+     *
+     * @param core
+     * @param unselected
+     * @return
+     */
+    public MultiSwap proposeRandomNeighbor(List<Accession> core, List<Accession> unselected){
+        if(unselected.isEmpty()){
+            // core currently contains ALL accessions, only remove possible
+            return new MultiSwap(randomIndices(core.size(), 1), new int[0]);
+        }
+        int nrOfRemoved, nrOfAdded;
+        double p = rg.nextDouble();
+        if (p>=0.66 && core.size() < maxSize) {
+            // add one more than removed
+            nrOfRemoved = Math.min(Math.min(k, unselected.size())-1, core.size());
+            nrOfAdded = nrOfRemoved+1;
+        } else if (p>=0.33 && core.size() > minSize) {
+            // remove one more than added
+            nrOfAdded = Math.min(Math.min(k, core.size())-1, unselected.size());
+            nrOfRemoved = nrOfAdded+1;
+        } else if (core.isEmpty()) {
+            // nothing to swap, add one
+            nrOfRemoved = 0;
+            nrOfAdded = 1;
+        } else {
+            nrOfRemoved = nrOfAdded = Math.min(k, Math.min(core.size(), unselected.size()));
+        }
+        return new MultiSwap(randomIndices(core.size(), nrOfRemoved),
+                             randomIndices(unselected.size(), nrOfAdded));
+    }
+
+    /**
+     * Apply a move proposed by proposeRandomNeighbor; it can be undone with
+     * undoLastPerturbation.
+     *
+     * @param core
+     * @param unselected
+     * @param move
+     * @return The index where (one of) the new accession(s) has been added to the core, -1 if none
+     */
+    public int performPerturbation(List<Accession> core, List<Accession> unselected, MultiSwap move){
+        int addIndex = move.perform(core, unselected);
+        addHistoryItem(move);
+        return addIndex;
+    }
+
+    @Override
+    public int genRandomNeighbor(List<Accession> core, List<Accession> unselected){
+        return performPerturbation(core, unselected, proposeRandomNeighbor(core, unselected));
+    }
+
+    /**
+     * Perturb the core into the best of a random sample of moves of the
+     * current size k (see setSampleSize), which are scored in parallel
+     * through the delta API. A move is tabu if it removes a tabu accession,
+     * or if it only adds accessions while additions are tabu. If all
+     * sampled moves are tabu, the core is not changed and -1 is returned.
+     */
+    @Override
+    public int genBestNeighbor(List<Accession> core, List<Accession> unselected, TabuList tabu,
+                               double curBestScore, PseudoMeasure pm, String cacheID){
+        // make sure the cache holds the current core
+        pm.calculate(core, cacheID);
+
+        List<MultiSwap> moves = new ArrayList<MultiSwap>(sampleSize);
+        List<List<Accession>> added = new ArrayList<List<Accession>>(sampleSize);
+        List<List<Accession>> removed = new ArrayList<List<Accession>>(sampleSize);
+        for(int i=0; i<sampleSize; i++){
+            MultiSwap move = proposeRandomNeighbor(core, unselected);
+            moves.add(move);
+            added.add(move.getAdded(unselected));
+            removed.add(move.getRemoved(core));
+        }
+        double scores[] = pm.calculateNeighbors(core, added, removed, cacheID);
+
+        int best = -1;
+        for(int i=0; i<moves.size(); i++){
+            if((best == -1 || scores[i] > scores[best])
+                    && (tabu == null || !isTabu(moves.get(i), removed.get(i), tabu)
+                        || scores[i] - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                best = i;
+            }
+        }
+        if(best == -1){
+            return -1;
+        }
+        return performPerturbation(core, unselected, moves.get(best));
+    }
+
+    private boolean isTabu(MultiSwap move, List<Accession> removed, TabuList tabu){
+        if(move.nrOfRemoved() == 0){
+            return tabu.isAdditionTabu();
+        }
+        for(Accession a : removed){
+            if(tabu.isTabu(a)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean undoLastPerturbation(List<Accession> core, List<Accession> unselected){
+        if (!history.isEmpty()){
+            SinglePerturbation pert = history.removeLast();
+            pert.undo(core, unselected);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void addHistoryItem(SinglePerturbation pert){
+        if (history.size() == historySize){
+            // history is full, delete oldest item
+            history.poll();
+        }
+        // add new item
+        history.offer(pert);
+    }
+
+    /**
+     * Draw m distinct random indices in [0..n-1], with m <= n.
+     */
+    private static int[] randomIndices(int n, int m){
+        int indices[] = new int[m];
+        if(2*m > n){
+            // partial shuffle
+            int all[] = new int[n];
+            for(int i=0; i<n; i++){
+                all[i] = i;
+            }
+            for(int i=0; i<m; i++){
+                int j = i + rg.nextInt(n-i);
+                indices[i] = all[j];
+                all[j] = all[i];
+            }
+            return indices;
+        }
+        for(int i=0; i<m; i++){
+            boolean distinct;
+            do {
+                indices[i] = rg.nextInt(n);
+                distinct = true;
+                for(int j=0; j<i && distinct; j++){
+                    distinct = indices[j] != indices[i];
+                }
+            } while(!distinct);
+        }
+        return indices;
+    }
+
+}
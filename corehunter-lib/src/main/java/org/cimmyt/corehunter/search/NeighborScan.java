@@ -0,0 +1,195 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Parallel scan for the best single perturbation of a core. The moves are
+ * numbered in the order of the serial scans of the single neighborhoods:
+ * first all deletions (last core element first), then all swaps (for each
+ * accession to add, every core element to replace) and finally all pure
+ * additions. Ranges of moves are scored on the common fork/join pool with
+ * the non-mutating delta API and reduced to the move with the highest score,
+ * the first one in scan order on ties, which is the move the serial scan
+ * would select. The core is not changed during the scan.
+ *
+ * @author hermandebeukelaer
+ */
+class NeighborScan extends RecursiveTask<NeighborScan.Move> {
+
+    private static final long serialVersionUID = 1L;
+
+    // nr of moves scored sequentially by a single task
+    private final static int SCAN_GRAIN = 64;
+
+    /**
+     * Best move found in a range: indices in core and unselected (-1 if
+     * nothing is removed or added) and its score.
+     */
+    static class Move {
+
+        final int remIndex;
+        final int addIndex;
+        final double score;
+
+        Move(int remIndex, int addIndex, double score){
+            this.remIndex = remIndex;
+            this.addIndex = addIndex;
+            this.score = score;
+        }
+    }
+
+    private final Scan scan;
+    private final long from, to;
+
+    private NeighborScan(Scan scan, long from, long to){
+        this.scan = scan;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Find the best move that is allowed by the tabu list (or improves on
+     * curBestScore by the aspiration level), or null if none is.
+     *
+     * @param core current core, the measure cache with the given id has to be up to date
+     * @param unselected accessions not in the core
+     * @param addIndices indices in unselected of the accessions to add or swap in, null for all
+     * @param deletions include pure deletions
+     * @param swaps include swaps
+     * @param additions include pure additions
+     * @param tabu tabu list, may be null
+     * @param curBestScore
+     * @param pm
+     * @param cacheID
+     * @return
+     */
+    static Move findBest(List<Accession> core, List<Accession> unselected, int addIndices[],
+                         boolean deletions, boolean swaps, boolean additions, TabuList tabu,
+                         double curBestScore, PseudoMeasure pm, String cacheID){
+        Scan scan = new Scan(core, unselected, addIndices, deletions, swaps, additions, tabu, curBestScore,
+                             pm, cacheID);
+        if(scan.total == 0){
+            return null;
+        }
+        return ForkJoinPool.commonPool().invoke(new NeighborScan(scan, 0, scan.total));
+    }
+
+    @Override
+    protected Move compute(){
+        if(to - from <= SCAN_GRAIN){
+            return scan.scan(from, to);
+        }
+        long mid = (from + to) >>> 1;
+        NeighborScan left = new NeighborScan(scan, from, mid);
+        NeighborScan right = new NeighborScan(scan, mid, to);
+        right.fork();
+        Move l = left.compute();
+        Move r = right.join();
+        if(l == null){
+            return r;
+        }
+        if(r == null || r.score <= l.score){
+            return l;
+        }
+        return r;
+    }
+
+    /**
+     * Shared, read-only description of the moves to scan.
+     */
+    private static class Scan {
+
+        private final List<Accession> core, unselected;
+        private final int addIndices[];
+        private final TabuList tabu;
+        private final double curBestScore;
+        private final PseudoMeasure pm;
+        private final String cacheID;
+
+        private final long nrOfDeletions, nrOfSwaps, total;
+
+        Scan(List<Accession> core, List<Accession> unselected, int addIndices[], boolean deletions,
+             boolean swaps, boolean additions, TabuList tabu, double curBestScore, PseudoMeasure pm,
+             String cacheID){
+            this.core = core;
+            this.unselected = unselected;
+            if(addIndices == null){
+                addIndices = new int[unselected.size()];
+                for(int i=0; i<addIndices.length; i++){
+                    addIndices[i] = i;
+                }
+            }
+            this.addIndices = addIndices;
+            this.tabu = tabu;
+            this.curBestScore = curBestScore;
+            this.pm = pm;
+            this.cacheID = cacheID;
+
+            nrOfDeletions = deletions ? core.size() : 0;
+            nrOfSwaps = swaps ? (long) addIndices.length * core.size() : 0;
+            total = nrOfDeletions + nrOfSwaps + (additions ? addIndices.length : 0);
+        }
+
+        Move scan(long from, long to){
+            List<Accession> added = new ArrayList<Accession>(1);
+            List<Accession> removed = new ArrayList<Accession>(1);
+            Move best = null;
+            for(long m=from; m<to; m++){
+                int remIndex, addIndex;
+                if(m < nrOfDeletions){
+                    // backward over the core
+                    remIndex = core.size() - 1 - (int) m;
+                    addIndex = -1;
+                } else if(m < nrOfDeletions + nrOfSwaps){
+                    long s = m - nrOfDeletions;
+                    addIndex = addIndices[(int) (s / core.size())];
+                    remIndex = (int) (s % core.size());
+                } else {
+                    addIndex = addIndices[(int) (m - nrOfDeletions - nrOfSwaps)];
+                    remIndex = -1;
+                }
+
+                added.clear();
+                removed.clear();
+                if(addIndex != -1){
+                    added.add(unselected.get(addIndex));
+                }
+                if(remIndex != -1){
+                    removed.add(core.get(remIndex));
+                }
+                double score = pm.calculateNeighbor(core, added, removed, cacheID);
+
+                if(score > (best == null ? -Double.MAX_VALUE : best.score) && allowed(remIndex, score)){
+                    best = new Move(remIndex, addIndex, score);
+                }
+            }
+            return best;
+        }
+
+        private boolean allowed(int remIndex, double score){
+            if(tabu == null || score - curBestScore > Neighborhood.MIN_TABU_ASPIRATION_PROG){
+                return true;
+            }
+            return remIndex == -1 ? !tabu.isAdditionTabu() : !tabu.isTabu(core.get(remIndex));
+        }
+    }
+}
@@ -68,18 +68,16 @@ public abstract class Neighborhood {
     /**
      * Perturb the given core set into its best neighbor. If neighborhood contains
      * multiple cores with exactly the same score, one of these is randomly selected.
-     * This method also accepts a tabu list of indices in the core set which are currently tabu.
+     * This method also accepts a tabu list of accessions which are currently tabu.
      *
      * @param core The current core subset
      * @param unselected List of all currently unselected accessions, i.e. all accession not
      *                   contained in the current core set (first parameter). The implementation
      *                   should ensure that this list is kept consistent after perturbing the core.
-     * @param tabu List of indices which are tabu, meaning that the elements in the core set at
-     *             these indices cannot be removed for constructing the 'best' neighbor, these
-     *             neighbors themselves are tabu and must be avoided! If tabu list contains
-     *             value(s) of "-1", only adding an element is tabu. Implementation should
-     *             ensure that tabu list is kept consistent in case of reordering of elements
-     *             in the core, e.g. in case of the deletion of an element.
+     * @param tabu Tabu list (may be null): accessions in the core set which are tabu cannot be
+     *             removed for constructing the 'best' neighbor, these neighbors themselves are
+     *             tabu and must be avoided! If additions are tabu (see TabuList), only adding
+     *             an element is tabu. The tabu list is not changed by this method.
      * @param curBestScore current best score over all visited solutions, used in an aspiration
      *                     criterion which overrides tabu: solutions which are better than currently
      *                     best observed solution are always accepted!
@@ -91,7 +89,7 @@ public abstract class Neighborhood {
      *          newCoreSize-1 In case of only adding a new element, at the end of the list
      */
     public abstract int genBestNeighbor(List<Accession> core,List<Accession> unselected,
-                                        List<Integer> tabu, double curBestScore, PseudoMeasure pm, String cacheID);
+                                        TabuList tabu, double curBestScore, PseudoMeasure pm, String cacheID);
 
     /**
      * Perturb the given core set into its best neighbor. If neighborhood contains
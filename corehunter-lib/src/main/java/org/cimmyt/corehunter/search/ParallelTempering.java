@@ -0,0 +1,236 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Asynchronous replica exchange: every replica runs continuously on its own
+ * worker, without waiting for the other replicas at the end of a round.
+ * Temperatures belong to slots, and at each checkpoint (after a run of MC
+ * steps) a replica proposes a swap with one of its neighbouring slots through
+ * a lock-free mailbox shared by both slots. If a mailbox of the replica holds
+ * the offer of a neighbour, the replica takes it and decides the swap for both
+ * of them; else it posts its own offer and parks at its checkpoint, without
+ * taking steps, until the offer is taken or it withdraws the offer. Swaps are
+ * thus always decided on the current scores of both replicas. A replica waits
+ * at most as long as its last run of MC steps took, so that a slow neighbour
+ * holds it up for at most half of its time. The best core found by any
+ * replica is published through an atomic reference.
+ *
+ * @author hermandebeukelaer
+ */
+class ParallelTempering {
+
+    private TemperatureLadder ladder;
+    private Walker walkers[];
+
+    // max. time (nanoseconds) between two checks of a parked replica
+    private final static long PARK_TIME = 1000000;
+
+    // mailbox i is shared by slots i and i+1
+    private AtomicReferenceArray<Offer> mailboxes;
+
+    private AtomicReference<BestCore> best;
+    private volatile boolean stopped;
+
+    public ParallelTempering(SimpleMonteCarloReplica replicas[], TemperatureLadder ladder){
+        this.ladder = ladder;
+        walkers = new Walker[replicas.length];
+        for(int i=0; i<replicas.length; i++){
+            replicas[i].setTemperature(ladder.getTemperature(i));
+            walkers[i] = new Walker(replicas[i], i);
+        }
+        mailboxes = new AtomicReferenceArray<Offer>(Math.max(0, replicas.length-1));
+        best = new AtomicReference<BestCore>(new BestCore(-Double.MAX_VALUE, new ArrayList<Accession>()));
+        stopped = false;
+    }
+
+    public Walker[] getWalkers(){
+        return walkers;
+    }
+
+    /**
+     * Best core published so far, with its score.
+     */
+    public BestCore getBest(){
+        return best.get();
+    }
+
+    /**
+     * Signal all walkers to stop after their current run of MC steps.
+     */
+    public void stop(){
+        stopped = true;
+    }
+
+    /**
+     * Publish the best core of a replica if it beats the current global best
+     * (or has the same score and a smaller size).
+     */
+    private void publish(SimpleMonteCarloReplica rep){
+        double score = rep.getBestScore();
+        BestCore cur = best.get();
+        if(!cur.improvedBy(score, rep.getBestSize())){
+            return;
+        }
+        BestCore b = new BestCore(score, new ArrayList<Accession>(rep.getBestCore()));
+        while(cur.improvedBy(b.score, b.core.size())){
+            if(best.compareAndSet(cur, b)){
+                return;
+            }
+            cur = best.get();
+        }
+    }
+
+    /**
+     * Swap proposal posted in a mailbox by the replica at the given slot. The
+     * score is the current score of the replica, as it does not take steps
+     * while the offer is posted. The replica that takes the offer from the
+     * mailbox moves both replicas to their new slots, then marks it done and
+     * wakes up the posting thread.
+     */
+    private static class Offer {
+
+        final Walker walker;
+        final Thread thread;
+        final int slot;
+        final int pair;
+        final double score;
+        volatile boolean done;
+
+        Offer(Walker walker, int slot, int pair, double score){
+            this.walker = walker;
+            this.slot = slot;
+            this.pair = pair;
+            this.score = score;
+            thread = Thread.currentThread();
+            done = false;
+        }
+    }
+
+    /**
+     * Runs a single replica until the search is stopped.
+     */
+    class Walker implements Runnable {
+
+        private SimpleMonteCarloReplica rep;
+        private volatile int slot;
+        private boolean up;
+        // duration (nanoseconds) of the last run of MC steps
+        private long runTime;
+
+        Walker(SimpleMonteCarloReplica rep, int slot){
+            this.rep = rep;
+            this.slot = slot;
+            up = (slot % 2 == 0);
+            runTime = 0;
+        }
+
+        public void run(){
+            while(!stopped){
+                long start = System.nanoTime();
+                rep.doSteps();
+                runTime = System.nanoTime() - start;
+                publish(rep);
+                checkpoint();
+            }
+        }
+
+        private void checkpoint(){
+            // pick up the temperature of the slot, in case the ladder was re-spaced
+            rep.setTemperature(ladder.getTemperature(slot));
+
+            // take the offer of a waiting neighbour, if any
+            int s = slot;
+            for(int pair = s-1; pair <= s; pair++){
+                if(pair >= 0 && pair < mailboxes.length()){
+                    Offer other = mailboxes.get(pair);
+                    if(other != null && mailboxes.compareAndSet(pair, other, null)){
+                        exchange(other);
+                        return;
+                    }
+                }
+            }
+
+            // else post an offer, alternating between the upper and lower neighbour
+            int pair = up ? s : s - 1;
+            up = !up;
+            if(pair < 0 || pair >= mailboxes.length()){
+                return;
+            }
+            Offer mine = new Offer(this, s, pair, rep.getScore());
+            if(mailboxes.compareAndSet(pair, null, mine)){
+                await(mine);
+            }
+        }
+
+        /**
+         * Park until the given offer is taken or the wait is over. An offer
+         * that has not been taken is withdrawn; else wait until the neighbour
+         * has finished the swap.
+         */
+        private void await(Offer mine){
+            long deadline = System.nanoTime() + runTime;
+            long left;
+            while(!stopped && mailboxes.get(mine.pair) == mine
+                    && (left = deadline - System.nanoTime()) > 0){
+                LockSupport.parkNanos(this, Math.min(left, PARK_TIME));
+            }
+            if(mailboxes.compareAndSet(mine.pair, mine, null)){
+                return;
+            }
+            while(!mine.done && !stopped){
+                LockSupport.parkNanos(this, PARK_TIME);
+            }
+        }
+
+        /**
+         * Decide the swap with the replica that posted the given offer, using
+         * the same acceptance criterion as the synchronous REMC search.
+         */
+        private void exchange(Offer other){
+            try {
+                int lo = Math.min(slot, other.slot);
+                int hi = Math.max(slot, other.slot);
+                double loScore = (slot == lo) ? rep.getScore() : other.score;
+                double hiScore = (slot == hi) ? rep.getScore() : other.score;
+
+                boolean swap = CoreSubsetSearch.acceptSwap(ladder.getTemperature(lo), ladder.getTemperature(hi),
+                                                           loScore, hiScore, ThreadLocalRandom.current().nextDouble());
+                ladder.recordSwap(lo, swap);
+                if(swap){
+                    int mySlot = slot;
+                    other.walker.moveTo(mySlot);
+                    moveTo(other.slot);
+                }
+            } finally {
+                other.done = true;
+                LockSupport.unpark(other.thread);
+            }
+        }
+
+        private void moveTo(int newSlot){
+            slot = newSlot;
+            rep.setTemperature(ladder.getTemperature(newSlot));
+        }
+    }
+}
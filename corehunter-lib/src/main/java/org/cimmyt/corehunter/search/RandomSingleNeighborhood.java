@@ -38,13 +38,26 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
 
     @Override
     public RandomSingleNeighborhood clone(){
-        return new RandomSingleNeighborhood(minSize, maxSize, historySize);
+        RandomSingleNeighborhood nh = new RandomSingleNeighborhood(minSize, maxSize, historySize);
+        nh.setParallelScan(parallelScan);
+        return nh;
     }
 
     @Override
-    public int genBestNeighbor(List<Accession> core, List<Accession> unselected, List<Integer> tabu,
+    public int genBestNeighbor(List<Accession> core, List<Accession> unselected, TabuList tabu,
                                                 double curBestScore, PseudoMeasure pm, String cacheID) {
 
+        if (parallelScan){
+            // same scan in parallel, against the cached current core
+            pm.calculate(core, cacheID);
+            NeighborScan.Move best = NeighborScan.findBest(core, unselected, null, core.size() > minSize, true,
+                                                           core.size() < maxSize, tabu, curBestScore, pm, cacheID);
+            if (best == null){
+                return performBestPerturbation(core, -1, unselected, -1);
+            }
+            return performBestPerturbation(core, best.remIndex, unselected, best.addIndex);
+        }
+
         // search for (one of the) best neighbor(s) by perturbing core
         // in all possible ways (remove 1, add 1, swap 1)
         int bestAddIndex = -1;
@@ -58,8 +71,8 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
             for (int i=core.size()-1; i>=0; i--){
                 Accession a = core.remove(i);
                 score = pm.calculate(core, cacheID);
-                // ensure index is not tabu
-                if (score > bestScore && (tabu == null || !tabu.contains(i) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                // ensure accession is not tabu
+                if (score > bestScore && (tabu == null || !tabu.isTabu(a) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestAddIndex = -1; // do not add anything
                     bestRemIndex = i; // remove element i from core
@@ -82,8 +95,8 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
                 // replace accession with new accession
                 Accession rem = core.set(j, add);
                 score = pm.calculate(core, cacheID);
-                // ensure index is not tabu
-                if (score > bestScore && (tabu == null || !tabu.contains(j) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                // ensure accession is not tabu
+                if (score > bestScore && (tabu == null || !tabu.isTabu(rem) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestAddIndex = i; // add element i from remaining accession collection
                     bestRemIndex = j; // remove element j from core
@@ -101,7 +114,7 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
                 Accession a = unselected.get(i);
                 core.add(a);
                 score = pm.calculate(core, cacheID);
-                if (score > bestScore && (tabu == null || !tabu.contains(-1) || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
+                if (score > bestScore && (tabu == null || !tabu.isAdditionTabu() || score - curBestScore > MIN_TABU_ASPIRATION_PROG)){
                     bestScore = score;
                     bestAddIndex = i; // add element i from accession collection
                     bestRemIndex = -1; // do not remove anything
@@ -113,7 +126,7 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
 
         // perform best perturbation on core and return this as the new core
         // also update unselected list and/or tabu list
-        return performBestPerturbation(core, bestRemIndex, unselected, bestAddIndex, tabu);
+        return performBestPerturbation(core, bestRemIndex, unselected, bestAddIndex);
         
     }
 
@@ -135,6 +148,34 @@ public class RandomSingleNeighborhood extends SingleNeighborhood {
         }
     }
 
+    /**
+     * Draw a random neighbor as genRandomNeighbor does, but without changing
+     * the core: returns {remIndex, addIndex}, where -1 means that nothing is
+     * removed or added. The move can be applied with performPerturbation.
+     */
+    public int[] proposeRandomNeighbor(List<Accession> core, List<Accession> unselected) {
+        if (unselected.size() == 0) {
+            return new int[]{rg.nextInt(core.size()), -1};
+        } else {
+            double p = rg.nextDouble();
+            if (p>=0.66 && core.size() < maxSize) {
+                return new int[]{-1, rg.nextInt(unselected.size())};
+            } else if (p>=0.33 && core.size() > minSize) {
+                return new int[]{rg.nextInt(core.size()), -1};
+            } else {
+                return new int[]{rg.nextInt(core.size()), rg.nextInt(unselected.size())};
+            }
+        }
+    }
+
+    /**
+     * Apply a move proposed by proposeRandomNeighbor; it can be undone with
+     * undoLastPerturbation.
+     */
+    public int performPerturbation(List<Accession> core, int remIndex, List<Accession> unselected, int addIndex) {
+        return performBestPerturbation(core, remIndex, unselected, addIndex);
+    }
+
     private int swapRandom(List<Accession> core, List<Accession> unselected){
 
         // randomly swap one item
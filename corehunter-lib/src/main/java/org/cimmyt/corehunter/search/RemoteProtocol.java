@@ -0,0 +1,132 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Binary protocol between a coordinator and the worker processes that host
+ * its replicas. Both sides load the same collection, so a core is sent as the
+ * indices of its accessions in the collection sorted by name.
+ *
+ * Worker to coordinator: HELLO (once, after connecting, with the shared secret
+ * of the search and the fingerprint of collection and measures) and RESULT (after each
+ * CREATE and RUN request, in request order). Coordinator to worker: CREATE,
+ * RUN, DISCARD and SHUTDOWN.
+ *
+ * @author hermandebeukelaer
+ */
+final class RemoteProtocol {
+
+    final static int VERSION = 3;
+
+    // coordinator -> worker
+    final static byte CREATE = 1;
+    final static byte RUN = 2;
+    final static byte DISCARD = 3;
+    final static byte SHUTDOWN = 4;
+
+    // worker -> coordinator
+    final static byte HELLO = 10;
+    final static byte RESULT = 11;
+
+    // replica types
+    final static byte LOCAL = 0;
+    final static byte MONTE_CARLO = 1;
+    final static byte TABU = 2;
+    final static byte VNS = 3;
+
+    private List<Accession> ordered;
+    private Map<Accession, Integer> index;
+    private PseudoMeasure pm;
+
+    public RemoteProtocol(List<Accession> accessions, PseudoMeasure pm){
+        this.pm = pm;
+        ordered = new ArrayList<Accession>(accessions);
+        Collections.sort(ordered, new Comparator<Accession>() {
+            public int compare(Accession a1, Accession a2) {
+                return a1.getName().compareTo(a2.getName());
+            }
+        });
+        index = new HashMap<Accession, Integer>();
+        for(int i=0; i<ordered.size(); i++){
+            index.put(ordered.get(i), i);
+        }
+    }
+
+    /**
+     * Hash of the accession names and of the names and weights of the
+     * measures, used to check that coordinator and worker loaded the same
+     * collection and optimize the same objective.
+     */
+    public int fingerprint(){
+        int h = ordered.size();
+        for(Accession a : ordered){
+            h = 31*h + a.getName().hashCode();
+        }
+        List<String> names = pm.getMeasureNames();
+        List<Double> weights = pm.getMeasureWeights();
+        for(int i=0; i<names.size(); i++){
+            h = 31*h + names.get(i).hashCode();
+            h = 31*h + weights.get(i).hashCode();
+        }
+        return h;
+    }
+
+    /**
+     * Compare a secret received from a worker with the secret of the search,
+     * in time that does not depend on where they differ.
+     */
+    public static boolean checkSecret(String received, String secret){
+        try {
+            return MessageDigest.isEqual(received.getBytes("UTF-8"), secret.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            return false;
+        }
+    }
+
+    public void writeCore(DataOutputStream out, List<Accession> core) throws IOException {
+        out.writeInt(core.size());
+        for(Accession a : core){
+            out.writeInt(index.get(a));
+        }
+    }
+
+    public List<Accession> readCore(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<Accession> core = new ArrayList<Accession>(n);
+        for(int i=0; i<n; i++){
+            int j = in.readInt();
+            if(j < 0 || j >= ordered.size()){
+                throw new IOException("Invalid accession index: " + j);
+            }
+            core.add(ordered.get(j));
+        }
+        return core;
+    }
+}
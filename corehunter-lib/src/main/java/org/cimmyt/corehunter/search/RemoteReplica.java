@@ -0,0 +1,197 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.AccessionCollection;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Proxy for a replica hosted by a worker process. A run is started by sending
+ * a RUN request (with the current temperature, for Monte Carlo replicas) and
+ * finished when the worker replies with the new score and best core.
+ *
+ * @author hermandebeukelaer
+ */
+public class RemoteReplica extends Replica {
+
+    private RemoteReplicaPool.Connection con;
+    private int id;
+    private byte kind;
+    private double param;
+    private int batchSize;
+
+    private double T;
+    private double bestScore;
+    private List<Accession> bestCore;
+    private CompletableFuture<RemoteReplicaPool.Result> pendingRun;
+
+    RemoteReplica(RemoteReplicaPool.Connection con, int id, byte kind, String type, AccessionCollection ac,
+                  PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax, double param){
+        super(type, ac, pm, null, nrOfSteps, -1, sampleMin, sampleMax);
+        this.con = con;
+        this.id = id;
+        this.kind = kind;
+        this.param = param;
+        T = param;
+        batchSize = 1;
+        pendingRun = null;
+    }
+
+    @Override
+    public String type(){
+        if(kind == RemoteProtocol.MONTE_CARLO){
+            return type + " (T = " + T + ", remote)";
+        }
+        return type + " (remote)";
+    }
+
+    /**
+     * Nr of neighbors scored at once by a Monte Carlo replica, to be set
+     * before the replica is created on the worker by init.
+     */
+    void setBatchSize(int batchSize){
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void init(){
+        apply(await(con.requestCreate(id, kind, nrOfSteps, sampleMin, sampleMax, param, batchSize, null)));
+    }
+
+    @Override
+    public void init(List<Accession> core){
+        apply(await(con.requestCreate(id, kind, nrOfSteps, sampleMin, sampleMax, param, batchSize, core)));
+    }
+
+    /**
+     * Send a RUN request without waiting for the reply.
+     */
+    public void start(){
+        if(pendingRun == null){
+            pendingRun = con.requestRun(id, T);
+        }
+    }
+
+    /**
+     * Wait until the current run is finished.
+     */
+    public void finish(){
+        if(pendingRun != null){
+            apply(await(pendingRun));
+            pendingRun = null;
+        }
+    }
+
+    @Override
+    public void doSteps(){
+        start();
+        finish();
+    }
+
+    /**
+     * The run is executed by the worker: the first slice only sends the
+     * request, so that a scheduler can start runs on all workers at once;
+     * later slices wait (at most the slice time) for the reply.
+     */
+    @Override
+    public boolean doSlice(long sliceTime){
+        if(pendingRun == null){
+            start();
+            return false;
+        }
+        try {
+            apply(pendingRun.get(Math.max(1, sliceTime), TimeUnit.MILLISECONDS));
+            pendingRun = null;
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            fail(ex);
+        } catch (ExecutionException ex) {
+            fail(ex);
+        }
+        return false;
+    }
+
+    /**
+     * Release the replica on the worker; it can not be used afterwards.
+     */
+    @Override
+    public void dispose(){
+        finish();
+        con.discard(id);
+    }
+
+    private RemoteReplicaPool.Result await(CompletableFuture<RemoteReplicaPool.Result> res){
+        try {
+            return res.get();
+        } catch (InterruptedException ex) {
+            fail(ex);
+        } catch (ExecutionException ex) {
+            fail(ex);
+        }
+        return null;
+    }
+
+    private void apply(RemoteReplicaPool.Result res){
+        score = res.score;
+        bestScore = res.bestScore;
+        stuck = res.stuck;
+        bestCore = res.bestCore;
+    }
+
+    private void fail(Exception ex){
+        System.err.println("Error in remote replica: " + ex);
+        ex.printStackTrace();
+        System.exit(1);
+    }
+
+    @Override
+    public double getBestScore(){
+        return bestScore;
+    }
+
+    @Override
+    public List<Accession> getBestCore(){
+        return bestCore;
+    }
+
+    public double getScore(){
+        return score;
+    }
+
+    public double getTemperature(){
+        return T;
+    }
+
+    /**
+     * Set the temperature used by the next run (Monte Carlo replicas only).
+     */
+    public void setTemperature(double temp){
+        T = Math.max(0, temp);
+    }
+
+    public void swapTemperature(RemoteReplica other){
+        double temp = T;
+        T = other.T;
+        other.T = temp;
+    }
+}
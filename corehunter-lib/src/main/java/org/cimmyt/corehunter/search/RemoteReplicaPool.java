@@ -0,0 +1,353 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.AccessionCollection;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Coordinator side of distributed replica search: accepts connections from
+ * worker processes (see RemoteReplicaServer) and creates replicas on them,
+ * spread evenly over the workers. The replicas are returned as proxies
+ * (RemoteReplica) that can be used by the search algorithms like any other
+ * replica.
+ *
+ * By default, the pool only listens on the loopback interface. A worker has to
+ * present the shared secret of the search and a matching fingerprint of the
+ * collection and measures, else it is turned away; a client that does not
+ * complete the handshake in time is dropped as well, without affecting the
+ * search.
+ *
+ * @author hermandebeukelaer
+ */
+public class RemoteReplicaPool {
+
+    // max. time (milliseconds) for a worker to complete the handshake
+    private final static int HANDSHAKE_TIMEOUT = 10000;
+
+    private AccessionCollection ac;
+    private RemoteProtocol protocol;
+    private String secret;
+    private ServerSocket server;
+    private List<Connection> connections;
+    private int nextId;
+
+    /**
+     * Listen for workers on the given port (0 selects a free port) of the
+     * loopback interface.
+     *
+     * @param ac
+     * @param pm
+     * @param port
+     * @param secret
+     */
+    public RemoteReplicaPool(AccessionCollection ac, PseudoMeasure pm, int port, String secret) {
+        this(ac, pm, port, secret, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Listen for workers on the given port (0 selects a free port) of the
+     * given local address (null for all interfaces).
+     *
+     * @param ac
+     * @param pm
+     * @param port
+     * @param secret
+     * @param address
+     */
+    public RemoteReplicaPool(AccessionCollection ac, PseudoMeasure pm, int port, String secret,
+                             InetAddress address) {
+        this.ac = ac;
+        this.secret = secret;
+        protocol = new RemoteProtocol(ac.getAccessions(), pm);
+        connections = new ArrayList<Connection>();
+        nextId = 0;
+        try {
+            server = new ServerSocket(port, 50, address);
+        } catch (IOException ex) {
+            System.err.println("Error opening port for replica workers: " + ex);
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public int getPort(){
+        return server.getLocalPort();
+    }
+
+    public int size(){
+        return connections.size();
+    }
+
+    /**
+     * Wait until the given nr of workers have connected. Clients that fail
+     * the handshake are closed and skipped.
+     *
+     * @param nrOfWorkers
+     */
+    public void acceptWorkers(int nrOfWorkers) {
+        try {
+            while(connections.size() < nrOfWorkers){
+                Socket socket = server.accept();
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                    Connection con = new Connection(socket);
+                    socket.setSoTimeout(0);
+                    connections.add(con);
+                    con.start();
+                } catch (IOException ex) {
+                    System.err.println("Rejected replica worker " + socket.getRemoteSocketAddress() + ": " + ex);
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // ignore, client is dropped anyway
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Error connecting to replica worker: " + ex);
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Shut down all workers and stop listening.
+     */
+    public void close() {
+        for(Connection con : connections){
+            con.close();
+        }
+        connections.clear();
+        try {
+            server.close();
+        } catch (IOException ex) {
+            // ignore, no more workers are accepted anyway
+        }
+    }
+
+    public RemoteReplica createLocalSearchReplica(PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax){
+        return createReplica(RemoteProtocol.LOCAL, "Local", pm, nrOfSteps, sampleMin, sampleMax, 0.0);
+    }
+
+    public RemoteReplica createMonteCarloReplica(PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax,
+                                                 double T){
+        return createMonteCarloReplica(pm, nrOfSteps, sampleMin, sampleMax, T, 1);
+    }
+
+    /**
+     * Monte Carlo replica that scores up to batchSize random neighbors at once
+     * (see SimpleMonteCarloReplica.setBatchSize).
+     */
+    public RemoteReplica createMonteCarloReplica(PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax,
+                                                 double T, int batchSize){
+        RemoteReplica rep = createReplica(RemoteProtocol.MONTE_CARLO, "MC", pm, nrOfSteps, sampleMin, sampleMax, T);
+        rep.setBatchSize(batchSize);
+        return rep;
+    }
+
+    public RemoteReplica createTabuReplica(PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax,
+                                           int tabuListSize){
+        return createReplica(RemoteProtocol.TABU, "Tabu", pm, nrOfSteps, sampleMin, sampleMax, tabuListSize);
+    }
+
+    public RemoteReplica createVNSReplica(PseudoMeasure pm, int nrOfSteps, int sampleMin, int sampleMax,
+                                          int maxK){
+        return createReplica(RemoteProtocol.VNS, "VNS", pm, nrOfSteps, sampleMin, sampleMax, maxK);
+    }
+
+    private synchronized RemoteReplica createReplica(byte kind, String type, PseudoMeasure pm, int nrOfSteps,
+                                                     int sampleMin, int sampleMax, double param){
+        int id = nextId++;
+        Connection con = connections.get(id % connections.size());
+        return new RemoteReplica(con, id, kind, type, ac, pm, nrOfSteps, sampleMin, sampleMax, param);
+    }
+
+    /**
+     * State of a remote replica after a CREATE or RUN request.
+     */
+    static class Result {
+
+        final double score;
+        final double bestScore;
+        final boolean stuck;
+        final List<Accession> bestCore;
+
+        Result(double score, double bestScore, boolean stuck, List<Accession> bestCore){
+            this.score = score;
+            this.bestScore = bestScore;
+            this.stuck = stuck;
+            this.bestCore = bestCore;
+        }
+    }
+
+    /**
+     * Connection to a single worker. A worker answers requests in the order
+     * in which they were sent, so pending replies are kept in a queue and
+     * completed by a reader thread.
+     */
+    class Connection extends Thread {
+
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private LinkedList<CompletableFuture<Result>> pending;
+        private volatile boolean closed;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            pending = new LinkedList<CompletableFuture<Result>>();
+            closed = false;
+            setDaemon(true);
+
+            // check handshake
+            if(in.readByte() != RemoteProtocol.HELLO || in.readInt() != RemoteProtocol.VERSION){
+                throw new IOException("Invalid handshake from replica worker");
+            }
+            // read the complete message before checking it, so that the worker
+            // sees the connection being closed rather than reset
+            String received = in.readUTF();
+            int fingerprint = in.readInt();
+            if(!RemoteProtocol.checkSecret(received, secret)){
+                throw new IOException("Replica worker has a wrong secret");
+            }
+            if(fingerprint != protocol.fingerprint()){
+                throw new IOException("Replica worker has loaded a different collection or measures");
+            }
+        }
+
+        public synchronized CompletableFuture<Result> requestCreate(int id, byte kind, int nrOfSteps,
+                                                                    int sampleMin, int sampleMax, double param,
+                                                                    int batchSize, List<Accession> core){
+            CompletableFuture<Result> res = new CompletableFuture<Result>();
+            try {
+                out.writeByte(RemoteProtocol.CREATE);
+                out.writeInt(id);
+                out.writeByte(kind);
+                out.writeInt(nrOfSteps);
+                out.writeInt(sampleMin);
+                out.writeInt(sampleMax);
+                out.writeDouble(param);
+                out.writeInt(batchSize);
+                out.writeBoolean(core != null);
+                if(core != null){
+                    protocol.writeCore(out, core);
+                }
+                send(res);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+            return res;
+        }
+
+        public synchronized CompletableFuture<Result> requestRun(int id, double T){
+            CompletableFuture<Result> res = new CompletableFuture<Result>();
+            try {
+                out.writeByte(RemoteProtocol.RUN);
+                out.writeInt(id);
+                out.writeDouble(T);
+                send(res);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+            return res;
+        }
+
+        public synchronized void discard(int id){
+            if(closed){
+                return;
+            }
+            try {
+                out.writeByte(RemoteProtocol.DISCARD);
+                out.writeInt(id);
+                out.flush();
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        private void send(CompletableFuture<Result> res) throws IOException {
+            synchronized(pending){
+                pending.add(res);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void run(){
+            try {
+                while(!closed){
+                    if(in.readByte() != RemoteProtocol.RESULT){
+                        throw new IOException("Unexpected reply from replica worker");
+                    }
+                    in.readInt(); // replica id, replies arrive in request order
+                    double score = in.readDouble();
+                    double bestScore = in.readDouble();
+                    boolean stuck = in.readBoolean();
+                    List<Accession> bestCore = protocol.readCore(in);
+                    CompletableFuture<Result> res;
+                    synchronized(pending){
+                        res = pending.poll();
+                    }
+                    if(res == null){
+                        throw new IOException("Unexpected reply from replica worker");
+                    }
+                    res.complete(new Result(score, bestScore, stuck, bestCore));
+                }
+            } catch (IOException ex) {
+                if(!closed){
+                    fail(ex);
+                }
+            }
+        }
+
+        synchronized void close(){
+            closed = true;
+            try {
+                out.writeByte(RemoteProtocol.SHUTDOWN);
+                out.flush();
+            } catch (IOException ex) {
+                // worker has gone already
+            }
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore, connection is no longer used
+            }
+        }
+
+        private void fail(IOException ex){
+            System.err.println("Error in connection with replica worker: " + ex);
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
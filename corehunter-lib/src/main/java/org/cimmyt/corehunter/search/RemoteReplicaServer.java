@@ -0,0 +1,171 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.AccessionCollection;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Worker side of distributed replica search: connects to a coordinator (see
+ * RemoteReplicaPool) and hosts the replicas it creates, running them one
+ * request at a time. The worker has to load the same collection and use the
+ * same measures as the coordinator.
+ *
+ * @author hermandebeukelaer
+ */
+public final class RemoteReplicaServer {
+
+    // this class should not be instantiable from outside class
+    private RemoteReplicaServer() {
+
+    }
+
+    /**
+     * Connect to the coordinator at the given host and port, presenting the
+     * given shared secret, and serve its requests until it sends SHUTDOWN or
+     * closes the connection.
+     *
+     * @param ac
+     * @param pm
+     * @param host
+     * @param port
+     * @param secret
+     */
+    public static void serve(AccessionCollection ac, PseudoMeasure pm, String host, int port, String secret) {
+        RemoteProtocol protocol = new RemoteProtocol(ac.getAccessions(), pm);
+        Map<Integer, Replica> replicas = new HashMap<Integer, Replica>();
+
+        Socket socket = null;
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            out.writeByte(RemoteProtocol.HELLO);
+            out.writeInt(RemoteProtocol.VERSION);
+            out.writeUTF(secret);
+            out.writeInt(protocol.fingerprint());
+            out.flush();
+
+            boolean accepted = false;
+            while(true){
+                byte cmd;
+                try {
+                    cmd = in.readByte();
+                } catch (EOFException ex) {
+                    // coordinator has gone
+                    if(!accepted){
+                        System.err.println("Replica worker rejected by coordinator (different secret, " +
+                                           "collection or measures?)");
+                    }
+                    return;
+                }
+                accepted = true;
+                if(cmd == RemoteProtocol.CREATE){
+                    int id = in.readInt();
+                    byte kind = in.readByte();
+                    int nrOfSteps = in.readInt();
+                    int sampleMin = in.readInt();
+                    int sampleMax = in.readInt();
+                    double param = in.readDouble();
+                    int batchSize = in.readInt();
+                    List<Accession> core = in.readBoolean() ? protocol.readCore(in) : null;
+
+                    Replica rep = createReplica(kind, ac, pm, nrOfSteps, sampleMin, sampleMax, param);
+                    if(rep instanceof SimpleMonteCarloReplica){
+                        ((SimpleMonteCarloReplica) rep).setBatchSize(batchSize);
+                    }
+                    if(core == null){
+                        rep.init();
+                    } else {
+                        rep.init(core);
+                    }
+                    replicas.put(id, rep);
+                    writeResult(out, protocol, id, rep);
+                } else if(cmd == RemoteProtocol.RUN){
+                    int id = in.readInt();
+                    double T = in.readDouble();
+                    Replica rep = replicas.get(id);
+                    if(rep instanceof SimpleMonteCarloReplica){
+                        ((SimpleMonteCarloReplica) rep).setTemperature(T);
+                    }
+                    rep.doSteps();
+                    writeResult(out, protocol, id, rep);
+                } else if(cmd == RemoteProtocol.DISCARD){
+                    replicas.remove(in.readInt());
+                } else if(cmd == RemoteProtocol.SHUTDOWN){
+                    return;
+                } else {
+                    throw new IOException("Unknown request: " + cmd);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Error in replica worker: " + ex);
+            ex.printStackTrace();
+            System.exit(1);
+        } finally {
+            if(socket != null){
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // ignore, connection is no longer used
+                }
+            }
+        }
+    }
+
+    private static Replica createReplica(byte kind, AccessionCollection ac, PseudoMeasure pm,
+                                         int nrOfSteps, int sampleMin, int sampleMax, double param)
+                                         throws IOException {
+        if(kind == RemoteProtocol.LOCAL){
+            return new LocalSearchReplica(ac, pm, new RandomSingleNeighborhood(sampleMin, sampleMax),
+                                          nrOfSteps, -1, sampleMin, sampleMax);
+        } else if(kind == RemoteProtocol.MONTE_CARLO){
+            return new SimpleMonteCarloReplica(ac, pm, new RandomSingleNeighborhood(sampleMin, sampleMax),
+                                               nrOfSteps, -1, sampleMin, sampleMax, param);
+        } else if(kind == RemoteProtocol.TABU){
+            HeuristicSingleNeighborhood nh = new HeuristicSingleNeighborhood(sampleMin, sampleMax);
+            nh.setCandidateListSize(HeuristicSingleNeighborhood.defaultCandidateListSize(ac.size()));
+            return new TabuReplica(ac, pm, nh, nrOfSteps, -1, sampleMin, sampleMax, (int) param);
+        } else if(kind == RemoteProtocol.VNS){
+            return new VNSReplica(ac, pm, new MultiSwapNeighborhood(sampleMin, sampleMax, (int) param),
+                                  nrOfSteps, -1, sampleMin, sampleMax);
+        }
+        throw new IOException("Unknown replica type: " + kind);
+    }
+
+    private static void writeResult(DataOutputStream out, RemoteProtocol protocol, int id, Replica rep)
+                                    throws IOException {
+        out.writeByte(RemoteProtocol.RESULT);
+        out.writeInt(id);
+        out.writeDouble(rep.score);
+        out.writeDouble(rep.getBestScore());
+        out.writeBoolean(rep.stuck());
+        protocol.writeCore(out, rep.getBestCore());
+        out.flush();
+    }
+}
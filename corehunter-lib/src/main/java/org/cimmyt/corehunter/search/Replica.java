@@ -110,6 +110,27 @@ public abstract class Replica implements Runnable {
         doSteps();
     }
 
+    /**
+     * Continue the current run for about the given time (milliseconds), so
+     * that a scheduler can interleave long runs with other replicas. Returns
+     * true if the run is finished, false if it has to be resumed by another
+     * call. By default, a run can not be interrupted and is completed at once.
+     *
+     * @param sliceTime
+     * @return
+     */
+    public boolean doSlice(long sliceTime){
+        doSteps();
+        return true;
+    }
+
+    /**
+     * Release any resources held by the replica when it is removed from the
+     * search; nothing to do for replicas that run in this process.
+     */
+    public void dispose(){
+    }
+
     public boolean stuck(){
         return stuck;
     }
@@ -122,6 +143,13 @@ public abstract class Replica implements Runnable {
         return core;
     }
 
+    /**
+     * Size of the best core, without materializing it.
+     */
+    public int getBestSize(){
+        return getBestCore().size();
+    }
+
     public String type(){
         return shortType();
     }
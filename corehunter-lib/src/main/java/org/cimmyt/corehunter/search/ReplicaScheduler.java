@@ -0,0 +1,173 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Runs replicas on a fixed number of worker threads (by default one per
+ * available core), no matter how many replicas are submitted. A replica run
+ * is executed in time slices (see Replica.doSlice): after each slice the
+ * worker yields and picks the queued run that has received the least CPU
+ * time relative to its weight (stride scheduling). A replica with weight 2
+ * thus gets about twice the CPU time of a replica with weight 1 while both
+ * are runnable, without relying on OS thread priorities.
+ *
+ * If a slice fails, the future of its run completes exceptionally and the
+ * worker moves on to the next run.
+ *
+ * @author hermandebeukelaer
+ */
+public class ReplicaScheduler {
+
+    // Length (milliseconds) of a time slice
+    private final static long SLICE_TIME = 20;
+
+    private final PriorityQueue<Run> ready;
+    private double virtualTime;
+    private long seq;
+    private boolean shutdown;
+
+    private Thread workers[];
+
+    public ReplicaScheduler(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReplicaScheduler(int nrOfWorkers){
+        ready = new PriorityQueue<Run>();
+        virtualTime = 0.0;
+        seq = 0;
+        shutdown = false;
+        workers = new Thread[Math.max(1, nrOfWorkers)];
+        for(int i=0; i<workers.length; i++){
+            workers[i] = new Thread(new Worker(), "replica-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Schedule one run of the given replica. The returned future completes
+     * when the run is finished.
+     */
+    public synchronized Future<Void> submit(Replica rep, double weight){
+        Run run = new Run(rep, weight);
+        if(shutdown){
+            run.future.cancel(false);
+        } else {
+            // start at the current virtual time, so that new runs neither
+            // monopolize the workers nor wait behind all other runs
+            run.pass = virtualTime;
+            run.seq = seq++;
+            ready.add(run);
+            notify();
+        }
+        return run.future;
+    }
+
+    /**
+     * Stop the workers after their current slice; queued and unfinished runs
+     * are cancelled.
+     */
+    public synchronized void shutdown(){
+        shutdown = true;
+        for(Run run : ready){
+            run.future.cancel(false);
+        }
+        ready.clear();
+        notifyAll();
+    }
+
+    private synchronized Run take() throws InterruptedException {
+        while(!shutdown && ready.isEmpty()){
+            wait();
+        }
+        if(shutdown){
+            return null;
+        }
+        Run run = ready.poll();
+        virtualTime = Math.max(virtualTime, run.pass);
+        return run;
+    }
+
+    private synchronized void requeue(Run run){
+        if(shutdown){
+            run.future.cancel(false);
+        } else {
+            run.seq = seq++;
+            ready.add(run);
+            notify();
+        }
+    }
+
+    /**
+     * A run of a replica, ordered by pass (CPU time divided by weight).
+     */
+    private static class Run implements Comparable<Run> {
+
+        final Replica rep;
+        final double weight;
+        final CompletableFuture<Void> future;
+        double pass;
+        long seq;
+
+        Run(Replica rep, double weight){
+            this.rep = rep;
+            this.weight = weight;
+            future = new CompletableFuture<Void>();
+        }
+
+        public int compareTo(Run other){
+            if(pass != other.pass){
+                return pass < other.pass ? -1 : 1;
+            }
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        public void run(){
+            try {
+                Run run;
+                while((run = take()) != null){
+                    long start = System.currentTimeMillis();
+                    boolean done;
+                    try {
+                        done = run.rep.doSlice(SLICE_TIME);
+                    } catch (Throwable ex) {
+                        // also errors, else the worker dies and the run never completes
+                        run.future.completeExceptionally(ex);
+                        continue;
+                    }
+                    // charge at least one millisecond, so that short runs advance too
+                    run.pass += Math.max(1, System.currentTimeMillis() - start) / run.weight;
+                    if(done){
+                        run.future.complete(null);
+                    } else {
+                        requeue(run);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                System.err.println("Error in replica scheduler: " + ex);
+                ex.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -27,22 +27,28 @@ import org.cimmyt.corehunter.measures.PseudoMeasure;
 public class SimpleMonteCarloReplica extends Replica {
     private final static double K_b  = 7.213475e-7;
 
-    private double T;
+    // volatile: may be changed by another replica during asynchronous tempering
+    private volatile double T;
 
-    private List<Accession> bestCore;
-    private double bestScore;
+    private BestCoreTracker best;
 
     private int accepts;
     private int rejects;
     private int improvements;
     private int totSteps;
 
+    // max nr of neighbors scored at once (1: one step at a time), and the
+    // size of the next batch
+    private int batchSize;
+    private int batch;
+
     public SimpleMonteCarloReplica(AccessionCollection ac, PseudoMeasure pm, Neighborhood nh,
                        int mcSteps, int repTime, int minSize, int maxSize, double T) {
         super("MC", ac, pm, nh, mcSteps, repTime, minSize, maxSize);
 
         this.T = T;
         accepts = rejects = improvements = totSteps = 0;
+        batchSize = batch = 1;
     }
 
     @Override
@@ -53,17 +59,15 @@ public class SimpleMonteCarloReplica extends Replica {
     @Override
     public void init(){
         super.init();
-        bestCore = new ArrayList<Accession>();
-        bestCore.addAll(core);
-        bestScore = score;
+        best = new BestCoreTracker();
+        core = best.track(core, score);
     }
 
     @Override
     public void init(List<Accession> core){
         super.init(core);
-        bestCore = new ArrayList<Accession>();
-        bestCore.addAll(core);
-        bestScore = score;
+        best = new BestCoreTracker();
+        this.core = best.track(core, score);
     }
 
     @Override
@@ -72,6 +76,11 @@ public class SimpleMonteCarloReplica extends Replica {
     }
 
     public void doSteps() {
+        if (batchSize > 1 && nh instanceof RandomSingleNeighborhood) {
+            doBatchedSteps((RandomSingleNeighborhood) nh);
+            return;
+        }
+
         stuck = true;
         double etime = System.currentTimeMillis() + repTime;
         int i=0;
@@ -83,60 +92,135 @@ public class SimpleMonteCarloReplica extends Replica {
             newScore = pm.calculate(core, cacheId);
             newSize = core.size();
 
-            double deltaScore = newScore - score;
-
-            if (deltaScore > 0) {
-                // accept new core!
-                improvements++;
+            if (accept(newScore - score, newSize - size)) {
                 score = newScore;
                 size = newSize;
             } else {
-                double deltaSize = newSize - size;
-
-                if (deltaSize > 0) {
-                    // new core is bigger than old core and has no better
-                    // score --> reject new core, stick with old core
-                    rejects++;
-                    nh.undoLastPerturbation(core, unselected);
-                } else {
-                    // new core is not bigger, but has lower score
-                    // accept or reject new core based on temperature
-                    double P = Math.exp(deltaScore/(T*K_b));
-                    double Q = rg.nextDouble();
-                    if ( Q > P ) {
-                        rejects++;
-                        nh.undoLastPerturbation(core, unselected);
-                    } else {
-                        // accept new core!
-                        // reassign newCore to the old core, which can now be overwritten
-                        accepts++;
-                        score = newScore;
-                        size = newSize;
-                    }
-                }
+                nh.undoLastPerturbation(core, unselected);
             }
 
             // check if new best core was found
-            if (score > bestScore || (score == bestScore && size < bestCore.size())) {
-                stuck = false;
-                bestScore = score;
-                bestCore.clear();
-                bestCore.addAll(core);
-            }
+            checkBest();
 
             totSteps++;
             i++;
         }
     }
 
+    /**
+     * Batched steps: propose a batch of random neighbors of the current core
+     * without changing it, score them all through the read-only delta API
+     * (in parallel for large batches) and apply the Metropolis criterion to
+     * them in turn. The first accepted neighbor becomes the new core; the
+     * rest of the batch is then outdated and dropped. Every rejected neighbor
+     * counts as a step, as in the sequential version. The batch size adapts
+     * to the position of the first acceptance, so that little work is thrown
+     * away at high temperatures.
+     */
+    private void doBatchedSteps(RandomSingleNeighborhood rnh) {
+        stuck = true;
+        double etime = System.currentTimeMillis() + repTime;
+        int i=0;
+
+        while((  (nrOfSteps > 0 && i < nrOfSteps)
+                  || (repTime > 0 && System.currentTimeMillis() < etime) )){
+
+            int b = batch;
+            if (nrOfSteps > 0 && repTime <= 0) {
+                b = Math.min(b, nrOfSteps - i);
+            }
+
+            // propose b neighbors of the current core
+            int moves[][] = new int[b][];
+            List<List<Accession>> added = new ArrayList<List<Accession>>(b);
+            List<List<Accession>> removed = new ArrayList<List<Accession>>(b);
+            for (int k=0; k<b; k++) {
+                moves[k] = rnh.proposeRandomNeighbor(core, unselected);
+                List<Accession> add = new ArrayList<Accession>(1);
+                List<Accession> rem = new ArrayList<Accession>(1);
+                if (moves[k][1] != -1) {
+                    add.add(unselected.get(moves[k][1]));
+                }
+                if (moves[k][0] != -1) {
+                    rem.add(core.get(moves[k][0]));
+                }
+                added.add(add);
+                removed.add(rem);
+            }
+            double scores[] = pm.calculateNeighbors(core, added, removed, cacheId);
+
+            // sequential acceptance against the current core
+            int k = 0;
+            boolean accepted = false;
+            while (k < b && !accepted) {
+                newSize = size + added.get(k).size() - removed.get(k).size();
+                accepted = accept(scores[k] - score, newSize - size);
+                totSteps++;
+                i++;
+                k++;
+            }
+
+            if (accepted) {
+                k--;
+                rnh.performPerturbation(core, moves[k][0], unselected, moves[k][1]);
+                score = pm.calculate(core, added.get(k), removed.get(k), cacheId);
+                size = core.size();
+                checkBest();
+                batch = Math.max(1, Math.min(batchSize, 2*(k+1)));
+            } else {
+                batch = Math.min(batchSize, 2*batch);
+            }
+        }
+    }
+
+    /**
+     * Metropolis criterion for a neighbor with the given change in score and
+     * size; updates the acceptance statistics.
+     */
+    private boolean accept(double deltaScore, int deltaSize) {
+        if (deltaScore > 0) {
+            // accept new core!
+            improvements++;
+            return true;
+        } else if (deltaSize > 0) {
+            // new core is bigger than old core and has no better
+            // score --> reject new core, stick with old core
+            rejects++;
+            return false;
+        } else {
+            // new core is not bigger, but has lower score
+            // accept or reject new core based on temperature
+            double P = Math.exp(deltaScore/(T*K_b));
+            double Q = rg.nextDouble();
+            if ( Q > P ) {
+                rejects++;
+                return false;
+            } else {
+                accepts++;
+                return true;
+            }
+        }
+    }
+
+    private void checkBest() {
+        if (best.update(score)) {
+            stuck = false;
+        }
+    }
+
     @Override
     public List<Accession> getBestCore(){
-        return bestCore;
+        return best.getBestCore();
+    }
+
+    @Override
+    public int getBestSize(){
+        return best.getBestSize();
     }
 
     @Override
     public double getBestScore(){
-        return bestScore;
+        return best.getBestScore();
     }
 
     public void printStats() {
@@ -144,6 +228,19 @@ public class SimpleMonteCarloReplica extends Replica {
                            accepts + "\trejects: " + rejects);
     }
 
+    /**
+     * Score up to the given nr of random neighbors at once; only applies to
+     * the random single neighborhood.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        batch = this.batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     public double getScore() {
         return score;
     }
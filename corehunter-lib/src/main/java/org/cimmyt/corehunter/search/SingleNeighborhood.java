@@ -27,14 +27,28 @@ public abstract class SingleNeighborhood extends Neighborhood {
 
     protected LinkedList<SinglePerturbation> history;
 
+    // scan for the best neighbor in parallel (see NeighborScan)
+    protected boolean parallelScan;
+
     public SingleNeighborhood(int minSize, int maxSize, int historySize){
         super(minSize, maxSize, historySize);
         history = new LinkedList<SinglePerturbation>();
+        parallelScan = false;
+    }
+
+    /**
+     * If true, genBestNeighbor scores the candidate perturbations in parallel
+     * on the common fork/join pool, without changing the core while scanning.
+     * The selected neighbor is the same as with the serial scan.
+     *
+     * @param parallelScan
+     */
+    public void setParallelScan(boolean parallelScan){
+        this.parallelScan = parallelScan;
     }
     
     protected int performBestPerturbation(List<Accession> core, int bestRemIndex,
-                                          List<Accession> unselected, int bestAddIndex,
-                                          List<Integer> tabu){
+                                          List<Accession> unselected, int bestAddIndex){
         SinglePerturbation pert;
         if (bestAddIndex != -1){
             if (bestRemIndex == -1){
@@ -52,16 +66,8 @@ public abstract class SingleNeighborhood extends Neighborhood {
         } else {
             // only remove element
             unselected.add(core.remove(bestRemIndex));
-            // update tabu indices!
-            if (tabu != null){
-                for (int i=0; i<tabu.size(); i++){
-                    if (tabu.get(i) > bestRemIndex){
-                        tabu.set(i, tabu.get(i)-1);
-                    }
-                }
-            }
             // create history item
-            pert = new Deletion(bestRemIndex, tabu);
+            pert = new Deletion(bestRemIndex);
         }
         //update history
         addHistoryItem(pert);
@@ -99,7 +105,7 @@ public abstract class SingleNeighborhood extends Neighborhood {
 
     @Override
     public abstract int genBestNeighbor(List<Accession> core, List<Accession> unselected,
-                                        List<Integer> tabu, double curBestScore, PseudoMeasure pm, String cacheID);
+                                        TabuList tabu, double curBestScore, PseudoMeasure pm, String cacheID);
 
     @Override
     public abstract int genRandomNeighbor(List<Accession> core, List<Accession> unselected);
@@ -0,0 +1,109 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.measures.DistanceMeasure;
+
+/**
+ * Stratified sampling without agglomerative clustering. The strata are found
+ * with k-center greedy (farthest point sampling): starting from a random
+ * accession, the accession farthest from all centers chosen so far becomes the
+ * next center, which takes O(m*k) (memoized) distances for m accessions and k
+ * strata. Every accession belongs to the stratum of its nearest center, and
+ * one random accession is drawn from each stratum.
+ *
+ * The distance to the nearest center and its index are kept in plain arrays,
+ * no cluster objects are created. A sampler can be used by several threads
+ * at once.
+ *
+ * @author hermandebeukelaer
+ */
+public class StratifiedSampler {
+
+    private DistanceMeasure dm;
+
+    public StratifiedSampler(DistanceMeasure dm){
+        this.dm = dm;
+    }
+
+    /**
+     * Draw one accession from each of k strata of the given accessions (all
+     * accessions if there are at most k).
+     *
+     * @param accessions
+     * @param k
+     * @param rg
+     * @return
+     */
+    public List<Accession> sample(Collection<Accession> accessions, int k, Random rg){
+        List<Accession> acc = new ArrayList<Accession>(accessions);
+        int m = acc.size();
+        if(k >= m){
+            return acc;
+        }
+
+        double dist[] = new double[m];  // distance to nearest center
+        int nearest[] = new int[m];     // stratum of nearest center
+        boolean center[] = new boolean[m];
+
+        // first center at random
+        int c = rg.nextInt(m);
+        for(int s=0; s<k; s++){
+            center[c] = true;
+            dist[c] = 0.0;
+            nearest[c] = s;
+            Accession ca = acc.get(c);
+            int next = -1;
+            double farthest = -1.0;
+            for(int i=0; i<m; i++){
+                if(center[i]){
+                    continue;
+                }
+                double d = dm.calculate(ca, acc.get(i));
+                if(s == 0 || d < dist[i]){
+                    dist[i] = d;
+                    nearest[i] = s;
+                }
+                if(dist[i] > farthest){
+                    farthest = dist[i];
+                    next = i;
+                }
+            }
+            c = next;
+        }
+
+        // one random accession of each stratum (reservoir sampling)
+        Accession sample[] = new Accession[k];
+        int count[] = new int[k];
+        for(int i=0; i<m; i++){
+            int s = nearest[i];
+            count[s]++;
+            if(rg.nextInt(count[s]) == 0){
+                sample[s] = acc.get(i);
+            }
+        }
+
+        List<Accession> strat = new ArrayList<Accession>(k);
+        for(int s=0; s<k; s++){
+            strat.add(sample[s]);
+        }
+        return strat;
+    }
+}
@@ -0,0 +1,154 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.Arrays;
+import java.util.List;
+import org.cimmyt.corehunter.Accession;
+
+/**
+ * Tabu list of a tabu search, holding the moves of the last 'tenure' steps.
+ * For each step, the accession which was added to the core (if any) is tabu:
+ * it cannot be removed from the core (deleted or swapped out) as long as the
+ * step is in the list. A step without addition (pure deletion) makes pure
+ * additions tabu instead, to prevent immediately re-adding the accession which
+ * was removed.
+ *
+ * Tabu status is keyed on accession identity (see Accession.getId), so it is
+ * not affected by reordering the core. The steps are kept as accession ids in
+ * a ring buffer, and every accession has a stamp with the step until which it
+ * is tabu, so both checks are O(1) for any tenure.
+ *
+ * Checks may be done concurrently, as long as no step is added.
+ *
+ * @author hermandebeukelaer
+ */
+public class TabuList {
+
+    // ring buffer entry of a step without addition
+    private static final int NO_ACCESSION = -1;
+
+    private int tenure;
+
+    // accession ids of the last steps, the oldest at 'head'
+    private int steps[];
+    private int head, size;
+
+    // nr of steps in the ring buffer without addition
+    private int nrOfDeletions;
+
+    // nr of steps added so far
+    private long step;
+
+    // accession id -> step until which it is tabu (exclusive)
+    private long tabuUntil[];
+
+    public TabuList(int tenure){
+        this.tenure = Math.max(tenure, 0);
+        steps = new int[this.tenure];
+        tabuUntil = new long[0];
+        step = 0;
+        clear();
+    }
+
+    public int getTenure(){
+        return tenure;
+    }
+
+    /**
+     * Nr of steps currently in the list.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Add a step, in which the given accession was added to the core (null
+     * in case of a pure deletion). The oldest step is dropped if the tenure
+     * is reached.
+     *
+     * @param added
+     */
+    public void add(Accession added){
+        if(tenure == 0){
+            return;
+        }
+        if(size == tenure){
+            // drop oldest step, its accession is no longer tabu at the next step
+            if(steps[head] == NO_ACCESSION){
+                nrOfDeletions--;
+            }
+            head = (head + 1) % tenure;
+            size--;
+        }
+        step++;
+        int id;
+        if(added == null){
+            id = NO_ACCESSION;
+            nrOfDeletions++;
+        } else {
+            id = added.getId();
+            if(id >= tabuUntil.length){
+                tabuUntil = Arrays.copyOf(tabuUntil, Math.max(id + 1, 2 * tabuUntil.length));
+            }
+            tabuUntil[id] = step + tenure;
+        }
+        steps[(head + size) % tenure] = id;
+        size++;
+    }
+
+    /**
+     * Add the step in which the core was perturbed as reported by
+     * Neighborhood.genBestNeighbor.
+     *
+     * @param core the perturbed core
+     * @param addIndex index in the core where an accession was added, -1 if none
+     */
+    public void add(List<Accession> core, int addIndex){
+        add(addIndex == -1 ? null : core.get(addIndex));
+    }
+
+    /**
+     * True if the given accession cannot be removed from the core.
+     *
+     * @param a
+     * @return
+     */
+    public boolean isTabu(Accession a){
+        int id = a.getId();
+        return id >= 0 && id < tabuUntil.length && tabuUntil[id] > step;
+    }
+
+    /**
+     * True if a pure addition (without removal) is tabu.
+     *
+     * @return
+     */
+    public boolean isAdditionTabu(){
+        return nrOfDeletions > 0;
+    }
+
+    /**
+     * Remove all steps.
+     */
+    public void clear(){
+        head = 0;
+        size = 0;
+        nrOfDeletions = 0;
+        // expire all stamps by skipping ahead
+        step += tenure;
+    }
+
+}
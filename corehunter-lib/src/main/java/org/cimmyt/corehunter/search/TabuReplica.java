@@ -14,8 +14,6 @@
 
 package org.cimmyt.corehunter.search;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import org.cimmyt.corehunter.Accession;
 import org.cimmyt.corehunter.AccessionCollection;
@@ -27,15 +25,18 @@ import org.cimmyt.corehunter.measures.PseudoMeasure;
  */
 public class TabuReplica extends Replica {
 
-    private LinkedList<Integer> tabuList;
+    private TabuList tabuList;
     private int tabuListSize;
 
-    private List<Accession> bestCore;
-    private double bestScore;
+    private BestCoreTracker best;
     private double lastImpr;
 
     private static final double MIN_PROG = 10e-9;
 
+    // nr of steps taken in the current (suspended) run, -1 if no run in progress
+    private int runStep = -1;
+    private long runEnd;
+
 
     /**
      * Create a TabuReplica which starts with the given core. If given core
@@ -67,72 +68,94 @@ public class TabuReplica extends Replica {
     @Override
     public void init(){
         super.init();
-        tabuList = new LinkedList<Integer>();
-        bestCore = new ArrayList<Accession>();
-        bestCore.addAll(core);
-        bestScore = score;
+        tabuList = new TabuList(tabuListSize);
+        best = new BestCoreTracker();
+        core = best.track(core, score);
     }
 
     @Override
     public void init(List<Accession> core){
         super.init(core);
-        tabuList = new LinkedList<Integer>();
-        bestCore = new ArrayList<Accession>();
-        bestCore.addAll(core);
-        bestScore = score;
+        tabuList = new TabuList(tabuListSize);
+        best = new BestCoreTracker();
+        this.core = best.track(core, score);
     }
 
     @Override
     public void doSteps(){
-        if(lastImpr >= MIN_PROG){
+        doSlice(-1);
+    }
+
+    /**
+     * Tabu runs are long (each step samples the entire neighborhood), so they
+     * can be suspended after any step and resumed later.
+     *
+     * @param sliceTime slice length in milliseconds, no limit if not positive
+     * @return
+     */
+    @Override
+    public boolean doSlice(long sliceTime){
+        if(runStep < 0){
+            // start a new run
+            if(lastImpr < MIN_PROG){
+                return true;
+            }
             stuck = true;
-            int addIndex;
-            double etime = System.currentTimeMillis() + repTime;
-            int i=0;
-
-            while((  (nrOfSteps > 0 && i < nrOfSteps)
-                      || (repTime > 0 && System.currentTimeMillis() < etime) )){
-
-                // run Tabu Search step
-
-                // ALWAYS accept new core, even it is not an improvement
-                addIndex = nh.genBestNeighbor(core, unselected, tabuList, bestScore, pm, cacheId);
-                score = pm.calculate(core, cacheId);
-                size = core.size();
-
-
-                // check for improvement
-                if(score > bestScore || (score == bestScore && size < bestCore.size())){
-                    //System.out.println(coreHash);
-                    stuck = false;
-                    bestCore.clear();
-                    bestCore.addAll(core);
-                    lastImpr =  score - bestScore;
-                    bestScore = score;
-                }
-
-                // finally, update tabu list
-                if(tabuList.size() == tabuListSize){
-                    // capacity reached, remove oldest tabu index
-                    tabuList.poll();
-                }
-                // add new tabu index
-                //tabuList.offer(addIndex);
-                tabuList.offer(addIndex);
-
-                i++;
+            runStep = 0;
+            runEnd = System.currentTimeMillis() + repTime;
+        }
+        long sliceEnd = sliceTime > 0 ? System.currentTimeMillis() + sliceTime : Long.MAX_VALUE;
+        int addIndex;
+
+        while(runContinues()){
+
+            // run Tabu Search step
+
+            // ALWAYS accept new core, even it is not an improvement
+            addIndex = nh.genBestNeighbor(core, unselected, tabuList, best.getBestScore(), pm, cacheId);
+            score = pm.calculate(core, cacheId);
+            size = core.size();
+
+
+            // check for improvement
+            double prevBestScore = best.getBestScore();
+            if(best.update(score)){
+                stuck = false;
+                lastImpr =  score - prevBestScore;
+            }
+
+            // finally, update tabu list (oldest step is dropped when capacity is reached)
+            tabuList.add(core, addIndex);
+
+            runStep++;
+
+            if(System.currentTimeMillis() >= sliceEnd && runContinues()){
+                // suspend run
+                return false;
             }
         }
+        runStep = -1;
+        return true;
+    }
+
+    private boolean runContinues(){
+        return (nrOfSteps > 0 && runStep < nrOfSteps)
+               || (repTime > 0 && System.currentTimeMillis() < runEnd);
     }
 
     @Override
     public List<Accession> getBestCore(){
-        return bestCore;
+        return best.getBestCore();
+    }
+
+    @Override
+    public int getBestSize(){
+        return best.getBestSize();
     }
 
     @Override
     public double getBestScore(){
-        return bestScore;
+        return best.getBestScore();
     }
 
     @Override
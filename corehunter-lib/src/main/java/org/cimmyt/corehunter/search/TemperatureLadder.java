@@ -0,0 +1,176 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.Arrays;
+
+/**
+ * Temperatures of the replicas in REMC search, ordered from cold to hot.
+ * Swap attempts between adjacent temperatures are counted per pair, and once
+ * each pair has enough attempts the ladder is re-spaced: the gap between two
+ * temperatures is widened if they swap more often than the target rate and
+ * narrowed if they swap less often, while the minimum and maximum temperature
+ * stay fixed. A pair that hardly ever swaps, or one that nearly always swaps,
+ * can be resolved by inserting or removing a temperature.
+ *
+ * @author hermandebeukelaer
+ */
+class TemperatureLadder {
+
+    // Target acceptance rate of swaps between adjacent temperatures
+    private final static double TARGET_ACCEPTANCE = 0.25;
+    // Acceptance rates outside this range suggest inserting/removing a temperature
+    private final static double MIN_ACCEPTANCE = 0.05;
+    private final static double MAX_ACCEPTANCE = 0.90;
+    // Nr of swap attempts per pair before the ladder is re-spaced
+    private final static int MIN_ATTEMPTS = 20;
+    // Strength of a single re-spacing step
+    private final static double GAIN = 1.0;
+
+    private double temperatures[];
+    private int attempts[];
+    private int accepts[];
+    // acceptance rates measured before the last re-spacing, NaN if unknown
+    private double rates[];
+
+    /**
+     * Create a ladder of n temperatures, evenly spaced between minT and maxT.
+     */
+    public TemperatureLadder(double minT, double maxT, int n){
+        temperatures = new double[n];
+        for(int i=0; i<n; i++){
+            temperatures[i] = (n > 1) ? minT + i*(maxT - minT)/(n - 1) : minT;
+        }
+        resetCounts();
+    }
+
+    private void resetCounts(){
+        int pairs = Math.max(0, temperatures.length-1);
+        attempts = new int[pairs];
+        accepts = new int[pairs];
+        if(rates == null || rates.length != pairs){
+            rates = new double[pairs];
+            Arrays.fill(rates, Double.NaN);
+        }
+    }
+
+    public synchronized int size(){
+        return temperatures.length;
+    }
+
+    public synchronized double getTemperature(int i){
+        return temperatures[i];
+    }
+
+    /**
+     * Record a swap attempt between temperature i and i+1.
+     */
+    public synchronized void recordSwap(int i, boolean accepted){
+        attempts[i]++;
+        if(accepted){
+            accepts[i]++;
+        }
+    }
+
+    /**
+     * Re-space the temperatures towards the target acceptance rate, if every
+     * pair has been attempted often enough since the previous adaptation.
+     * Returns true if the temperatures have changed.
+     */
+    public synchronized boolean adapt(){
+        int pairs = attempts.length;
+        if(pairs < 2){
+            return false;
+        }
+        for(int i=0; i<pairs; i++){
+            if(attempts[i] < MIN_ATTEMPTS){
+                return false;
+            }
+        }
+        double minT = temperatures[0];
+        double maxT = temperatures[pairs];
+        double gaps[] = new double[pairs];
+        double total = 0.0;
+        for(int i=0; i<pairs; i++){
+            rates[i] = accepts[i] / (double) attempts[i];
+            gaps[i] = (temperatures[i+1] - temperatures[i]) * Math.exp(GAIN * (rates[i] - TARGET_ACCEPTANCE));
+            total += gaps[i];
+        }
+        // rescale gaps so that the extreme temperatures are preserved
+        double t = minT;
+        for(int i=0; i<pairs-1; i++){
+            t += gaps[i] * (maxT - minT) / total;
+            temperatures[i+1] = t;
+        }
+        temperatures[pairs] = maxT;
+        resetCounts();
+        return true;
+    }
+
+    /**
+     * Pair (i, i+1) with the lowest measured acceptance rate, if that rate is
+     * below the minimum acceptance rate; else -1. A new temperature should be
+     * inserted between both temperatures of this pair.
+     */
+    public synchronized int getPairToSplit(){
+        int worst = -1;
+        for(int i=0; i<rates.length; i++){
+            if(rates[i] < MIN_ACCEPTANCE && (worst < 0 || rates[i] < rates[worst])){
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * Interior temperature whose pairs with both neighbours have a measured
+     * acceptance rate above the maximum acceptance rate (the replica at this
+     * temperature is redundant); else -1.
+     */
+    public synchronized int getTemperatureToRemove(){
+        for(int i=1; i<rates.length; i++){
+            if(rates[i-1] > MAX_ACCEPTANCE && rates[i] > MAX_ACCEPTANCE){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Insert a new temperature halfway between temperature i and i+1; it gets
+     * index i+1.
+     */
+    public synchronized void split(int i){
+        double t[] = new double[temperatures.length+1];
+        System.arraycopy(temperatures, 0, t, 0, i+1);
+        t[i+1] = (temperatures[i] + temperatures[i+1]) / 2.0;
+        System.arraycopy(temperatures, i+1, t, i+2, temperatures.length-i-1);
+        temperatures = t;
+        rates = null;
+        resetCounts();
+    }
+
+    /**
+     * Remove temperature i.
+     */
+    public synchronized void remove(int i){
+        double t[] = new double[temperatures.length-1];
+        System.arraycopy(temperatures, 0, t, 0, i);
+        System.arraycopy(temperatures, i+1, t, i, temperatures.length-i-1);
+        temperatures = t;
+        rates = null;
+        resetCounts();
+    }
+}
@@ -0,0 +1,117 @@
+//  Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.cimmyt.corehunter.search;
+
+import java.util.List;
+import org.cimmyt.corehunter.Accession;
+import org.cimmyt.corehunter.AccessionCollection;
+import org.cimmyt.corehunter.measures.PseudoMeasure;
+
+/**
+ * Variable neighborhood search on the k-exchange neighborhoods of a
+ * MultiSwapNeighborhood. Each step scores a random move of the current
+ * exchange size k through the delta API of the pseudomeasure (without
+ * changing the core), and only performs it if it improves the core. After as
+ * many rejected moves in a row as the sample size of the neighborhood (see
+ * MultiSwapNeighborhood.setSampleSize), the core is considered stuck in
+ * neighborhood k and the next steps try k+1; after an improvement, the search
+ * returns to k = 1. When the largest neighborhood fails as well, the search
+ * starts over at k = 1. One step scores one neighbor.
+ *
+ * As with local search, only improvements are accepted, so the current core
+ * is the best core.
+ *
+ * @author hermandebeukelaer
+ */
+public class VNSReplica extends Replica {
+
+    private MultiSwapNeighborhood vnh;
+
+    // nr of rejected moves in the current neighborhood
+    private int failures;
+
+    /**
+     * Create a new VNSReplica.
+     *
+     * @param ac
+     * @param pm
+     * @param nh
+     * @param nrOfSteps
+     * @param repTime
+     * @param sampleMin
+     * @param sampleMax
+     */
+    public VNSReplica(AccessionCollection ac, PseudoMeasure pm, MultiSwapNeighborhood nh,
+                      int nrOfSteps, int repTime, int sampleMin, int sampleMax){
+        super("VNS", ac, pm, nh, nrOfSteps, repTime, sampleMin, sampleMax);
+        vnh = nh;
+    }
+
+    @Override
+    public String type(){
+        return type + " (max k = " + vnh.getMaxK() + ")";
+    }
+
+    @Override
+    public void init(){
+        super.init();
+        vnh.setK(1);
+        failures = 0;
+    }
+
+    @Override
+    public void init(List<Accession> core){
+        super.init(core);
+        vnh.setK(1);
+        failures = 0;
+    }
+
+    @Override
+    public void doSteps(){
+        stuck = true;
+        double etime = System.currentTimeMillis() + repTime;
+        int i = 0;
+
+        while((  (nrOfSteps > 0 && i < nrOfSteps)
+                  || (repTime > 0 && System.currentTimeMillis() < etime) )){
+
+            // score a random move in the current neighborhood
+            MultiSwap move = vnh.proposeRandomNeighbor(core, unselected);
+            List<Accession> added = move.getAdded(unselected);
+            List<Accession> removed = move.getRemoved(core);
+            newScore = pm.calculateNeighbor(core, added, removed, cacheId);
+            newSize = size + added.size() - removed.size();
+
+            if (newScore > score || (newScore == score && newSize < size)) {
+                // Accept new (better) core!
+                vnh.performPerturbation(core, unselected, move);
+                score = pm.calculate(core, added, removed, cacheId);
+                size = core.size();
+                // Improvement! Back to the smallest neighborhood
+                stuck = false;
+                failures = 0;
+                vnh.setK(1);
+            } else if (++failures >= vnh.getSampleSize()) {
+                // stuck in this neighborhood: try a larger one, or start
+                // over if all neighborhoods failed
+                failures = 0;
+                vnh.setK(vnh.getK() < vnh.getMaxK() ? vnh.getK()+1 : 1);
+            }
+
+            i++;
+        }
+    }
+
+}
@@ -4,7 +4,9 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses; 
 
 @RunWith(Suite.class) 
-@SuiteClasses({TestDArTDataset.class, TestSSRDataset.class, TestSSRMeasures.class, TestAccessionCollection.class}) 
+@SuiteClasses({TestDArTDataset.class, TestSSRDataset.class, TestSSRMeasures.class, TestAccessionCollection.class,
+		TestKSubsetGenerator.class, TestRemoteReplicas.class, TestNeighborhoods.class,
+		TestClustering.class, TestCoreSubsetSearch.class, TestReplicaScheduler.class}) 
 public class CorehunterTestSuite {
 	
 } 
@@ -0,0 +1,89 @@
+package org.cimmyt.corehunter.test;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.cimmyt.corehunter.*;
+
+/**
+ * Random SSR collections shared by the tests: accessions A0, A1, ... with
+ * alleles allele0, allele1, ... at markers M0, M1, ... The values are drawn
+ * from a Random seeded with 42, so each collection is the same in every run.
+ *
+ * @author hermandebeukelaer
+ */
+final class SSRCollections {
+
+	private SSRCollections() {
+	}
+
+	/**
+	 * Collection with random allele frequencies that sum to one at each marker.
+	 */
+	static AccessionCollection createCollection(int nrOfAccessions, int nrOfMarkers, int nrOfAlleles)
+	                                            throws Exception {
+		Random rg = new Random(42);
+		SSRDataset ssrData = createDataset(nrOfAccessions, nrOfMarkers, nrOfAlleles);
+		for (int a = 0; a < nrOfAccessions; a++) {
+			for (int m = 0; m < nrOfMarkers; m++) {
+				// random frequencies that sum to one
+				double values[] = new double[nrOfAlleles];
+				double total = 0.0;
+				for (int l = 0; l < nrOfAlleles; l++) {
+					values[l] = rg.nextDouble();
+					total += values[l];
+				}
+				for (int l = 0; l < nrOfAlleles; l++) {
+					ssrData.setValue("A" + a, "M" + m, "allele" + l, values[l] / total);
+				}
+			}
+		}
+		return createCollection(ssrData);
+	}
+
+	/**
+	 * Collection where each accession has a single allele at each marker,
+	 * accession a having allele a % nrOfAlleles at marker 0 and random
+	 * alleles at the other markers.
+	 */
+	static AccessionCollection createHomozygousCollection(int nrOfAccessions, int nrOfMarkers, int nrOfAlleles)
+	                                                      throws Exception {
+		Random rg = new Random(42);
+		SSRDataset ssrData = createDataset(nrOfAccessions, nrOfMarkers, nrOfAlleles);
+		for (int a = 0; a < nrOfAccessions; a++) {
+			for (int m = 0; m < nrOfMarkers; m++) {
+				int allele = (m == 0) ? a % nrOfAlleles : rg.nextInt(nrOfAlleles);
+				for (int l = 0; l < nrOfAlleles; l++) {
+					ssrData.setValue("A" + a, "M" + m, "allele" + l, l == allele ? 1.0 : 0.0);
+				}
+			}
+		}
+		return createCollection(ssrData);
+	}
+
+	private static SSRDataset createDataset(int nrOfAccessions, int nrOfMarkers, int nrOfAlleles)
+	                                        throws Exception {
+		Collection<String> accessionNames = new HashSet<String>();
+		for (int a = 0; a < nrOfAccessions; a++) {
+			accessionNames.add("A" + a);
+		}
+		Map<String, List<String>> markersToAlleles = new HashMap<String, List<String>>();
+		for (int m = 0; m < nrOfMarkers; m++) {
+			markersToAlleles.put("M" + m, new ArrayList<String>());
+			for (int l = 0; l < nrOfAlleles; l++) {
+				markersToAlleles.get("M" + m).add("allele" + l);
+			}
+		}
+		return new SSRDataset(accessionNames, markersToAlleles);
+	}
+
+	private static AccessionCollection createCollection(SSRDataset ssrData) throws Exception {
+		AccessionCollection ac = new AccessionCollection();
+		ac.addDataset(ssrData);
+		return ac;
+	}
+}
@@ -0,0 +1,167 @@
+package org.cimmyt.corehunter.test;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.cimmyt.corehunter.*;
+import org.cimmyt.corehunter.measures.*;
+import org.cimmyt.corehunter.search.AccessionCluster;
+import org.cimmyt.corehunter.search.AgglomerativeClustering;
+import org.cimmyt.corehunter.search.ClusterCentroid;
+import org.cimmyt.corehunter.search.Clustering;
+import org.cimmyt.corehunter.search.Dendrogram;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestClustering {
+
+	@Test
+	public void verifyDendrogramCuts() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(20, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		Dendrogram d = new AgglomerativeClustering(new GroupAverageClusterDistance(
+				new ModifiedRogersDistance(ac.size()))).cluster(accessions);
+
+		// merges in order of increasing height
+		for (int i = 1; i < d.size()-1; i++) {
+			assertTrue(d.getHeight(i-1) <= d.getHeight(i));
+		}
+
+		// each cut is a partition of all accessions into k clusters
+		verifyCuts(d, accessions);
+
+		// cached dendrograms are reused
+		assertSame(Dendrogram.forAccessions(accessions), Dendrogram.forAccessions(new ArrayList<Accession>(accessions)));
+	}
+
+	@Test
+	public void verifyNearestNeighborChain() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(40, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		ClusterDistanceMeasure cm = new GroupAverageClusterDistance(new ModifiedRogersDistance(ac.size()));
+
+		AgglomerativeClustering chain = new AgglomerativeClustering(cm);
+		AgglomerativeClustering generic = new AgglomerativeClustering(cm);
+		generic.setNearestNeighborChain(false);
+		Dendrogram d1 = chain.cluster(accessions);
+		Dendrogram d2 = generic.cluster(accessions);
+
+		// same heights and cuts for both algorithms
+		for (int i = 0; i < d1.size()-1; i++) {
+			assertEquals(d2.getHeight(i), d1.getHeight(i), 1e-5);
+		}
+		for (int k = 1; k <= accessions.size(); k++) {
+			assertEquals(new HashSet<List<Accession>>(d2.cut(k)), new HashSet<List<Accession>>(d1.cut(k)));
+		}
+	}
+
+	@Test
+	public void verifyCentroidClustering() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(30, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		Dendrogram d = new AgglomerativeClustering(new CentroidClusterDistance(
+				new ModifiedRogersDistance(ac.size()))).cluster(accessions);
+		verifyCuts(d, accessions);
+	}
+
+	@Test
+	public void verifyCentroids() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(10, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		DistanceMeasure mr = new ModifiedRogersDistance(ac.size());
+		DistanceMeasure ce = new CavalliSforzaEdwardsDistance(ac.size());
+
+		// singleton centroids have the distances of their accessions
+		ClusterCentroid c1 = new ClusterCentroid();
+		ClusterCentroid c2 = new ClusterCentroid();
+		c1.add(accessions.get(0));
+		c2.add(accessions.get(1));
+		assertEquals(mr.calculate(accessions.get(0), accessions.get(1)), mr.calculate(c1, c2), 1e-12);
+		assertEquals(ce.calculate(accessions.get(0), accessions.get(1)), ce.calculate(c1, c2), 1e-12);
+
+		// merging centroids is the same as adding all accessions
+		ClusterCentroid all = new ClusterCentroid();
+		ClusterCentroid first = new ClusterCentroid();
+		ClusterCentroid second = new ClusterCentroid();
+		for (int i = 0; i < accessions.size(); i++) {
+			all.add(accessions.get(i));
+			(i < 5 ? first : second).add(accessions.get(i));
+		}
+		first.merge(second);
+		assertEquals(0.0, mr.calculate(all, first), 1e-12);
+		assertEquals(accessions.size(), first.size());
+	}
+
+	@Test
+	public void verifyStreamingClustering() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(60, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		Clustering clustering = new Clustering(5, new CentroidClusterDistance(new ModifiedRogersDistance(0)));
+		clustering.setMaxMicroClusters(12);
+		for (Accession a : accessions) {
+			clustering.addAccession(a);
+			assertTrue(clustering.getClusters().size() <= 12);
+		}
+		clustering.macroCluster();
+		assertEquals(5, clustering.getClusters().size());
+
+		// the clusters are a partition of all accessions
+		Set<Accession> all = new HashSet<Accession>();
+		int total = 0;
+		for (AccessionCluster clust : clustering.getClusters()) {
+			assertFalse(clust.getAccessions().isEmpty());
+			all.addAll(clust.getAccessions());
+			total += clust.size();
+		}
+		assertEquals(accessions.size(), total);
+		assertEquals(new HashSet<Accession>(accessions), all);
+	}
+
+	@Test
+	public void verifyGroupAverageSums() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(40, 5, 3);
+		DistanceMeasure mr = new ModifiedRogersDistance(ac.size());
+		GroupAverageClusterDistance cm = new GroupAverageClusterDistance(mr);
+		Clustering clustering = new Clustering(5, cm);
+		for (Accession a : ac.getAccessions()) {
+			clustering.addAccession(a);
+		}
+
+		// cached (merged) sums give the mean distance over all pairs
+		List<AccessionCluster> clusters = new ArrayList<AccessionCluster>(clustering.getClusters());
+		for (int i = 0; i < clusters.size(); i++) {
+			for (int j = i+1; j < clusters.size(); j++) {
+				double sum = 0.0;
+				for (Accession a : clusters.get(i).getAccessions()) {
+					for (Accession b : clusters.get(j).getAccessions()) {
+						sum += mr.calculate(a, b);
+					}
+				}
+				double mean = sum / (clusters.get(i).size() * clusters.get(j).size());
+				assertEquals(mean, cm.calculate(clusters.get(i), clusters.get(j)), 1e-9);
+			}
+		}
+	}
+
+	private void verifyCuts(Dendrogram d, List<Accession> accessions) {
+		for (int k = 1; k <= accessions.size(); k++) {
+			List<List<Accession>> clusters = d.cut(k);
+			assertEquals(k, clusters.size());
+			Set<Accession> all = new HashSet<Accession>();
+			int total = 0;
+			for (List<Accession> clust : clusters) {
+				assertFalse(clust.isEmpty());
+				all.addAll(clust);
+				total += clust.size();
+			}
+			assertEquals(accessions.size(), total);
+			assertEquals(new HashSet<Accession>(accessions), all);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.cimmyt.corehunter.test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.cimmyt.corehunter.*;
+import org.cimmyt.corehunter.measures.*;
+import org.cimmyt.corehunter.search.CoreSubsetSearch;
+import org.cimmyt.corehunter.search.LRReplica;
+import org.cimmyt.corehunter.search.StratifiedSampler;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestCoreSubsetSearch {
+
+	@Test
+	public void verifyExhaustiveWithoutComparableScores() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(8, 5, 3);
+		// no core has a comparable score
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new Measure("NaN", "Not a number") {
+			public double calculate(List<Accession> accessions) {
+				return Double.NaN;
+			}
+		}, 1.0);
+		assertNull(CoreSubsetSearch.exhaustiveSearch(ac, pm, 3, 3, false));
+	}
+
+	@Test
+	public void verifyBranchAndBoundMatchesExhaustive() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(14, 5, 3);
+		PseudoMeasure pms[] = new PseudoMeasure[3];
+		pms[0] = createMRSHMeasure(ac);
+		pms[1] = new PseudoMeasure();
+		pms[1].addMeasure(new ModifiedRogersDistance(ac.size(), DistanceMeasureType.MIN_DISTANCE), 1.0);
+		pms[2] = new PseudoMeasure();
+		pms[2].addMeasure(new HeterozygousLociDiversity(), 0.5);
+		pms[2].addMeasure(new NumberEffectiveAlleles(), 0.5);
+		for (PseudoMeasure pm : pms) {
+			AccessionCollection exh = CoreSubsetSearch.exhaustiveSearch(ac, pm, 4, 4, false);
+			AccessionCollection bb = CoreSubsetSearch.branchAndBoundSearch(ac, pm, 4, 4, 60.0);
+			assertEquals(4, bb.size());
+			assertEquals(pm.calculate(exh.getAccessions()), pm.calculate(bb.getAccessions()), 1e-9);
+		}
+	}
+
+	@Test
+	public void verifyIslandGeneticSearch() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(20, 5, 3);
+		PseudoMeasure pm = createMRSHMeasure(ac);
+		AccessionCollection best = CoreSubsetSearch.islandGeneticSearch(ac, pm, 3, 6, 1.5, 0.0, 1000.0,
+		                                                                10, 10, 2, 0.5, 2, 5, 2);
+		List<Accession> core = best.getAccessions();
+		assertTrue(core.size() >= 3 && core.size() <= 6);
+		assertEquals(core.size(), new HashSet<Accession>(core).size());
+		assertTrue(ac.getAccessions().containsAll(core));
+
+		// islands share the measure, so compare with a measure without caches
+		double score = pm.calculate(core);
+		assertEquals(createMRSHMeasure(ac).calculate(core), score, 1e-9);
+
+		// better than a random core
+		Random rg = new Random(42);
+		List<Accession> random = new ArrayList<Accession>(ac.getAccessions());
+		double total = 0.0;
+		for (int i = 0; i < 20; i++) {
+			Collections.shuffle(random, rg);
+			total += pm.calculate(random.subList(0, 6));
+		}
+		assertTrue(score >= total / 20);
+	}
+
+	@Test
+	public void verifyLazyGreedyMatchesExact() throws Exception {
+		// coverage has diminishing returns
+		AccessionCollection ac = SSRCollections.createHomozygousCollection(30, 8, 5);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new Coverage(), 1.0);
+		assertTrue(pm.hasDiminishingReturns());
+
+		List<Accession> cores[] = new List[2];
+		double scores[] = new double[2];
+		for (int i = 0; i < 2; i++) {
+			LRReplica lr = new LRReplica(ac, pm, -1, -1, 2, 20, 2, 1, true);
+			lr.setLazyGreedy(i == 1);
+			lr.init();
+			lr.doSteps();
+			cores[i] = lr.getBestCore();
+			scores[i] = lr.getBestScore();
+		}
+		assertEquals(cores[0], cores[1]);
+		assertEquals(scores[0], scores[1], 1e-9);
+		assertEquals(pm.calculate(cores[1]), scores[1], 1e-9);
+	}
+
+	@Test
+	public void verifyLRSelectingAllAccessions() throws Exception {
+		// every accession adds a new allele, so LR grows the core until
+		// no accessions are left to add
+		AccessionCollection ac = SSRCollections.createHomozygousCollection(6, 1, 6);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new Coverage(), 1.0);
+		for (int i = 0; i < 2; i++) {
+			LRReplica lr = new LRReplica(ac, pm, -1, -1, 2, ac.size(), 2, 1, true);
+			lr.setLazyGreedy(i == 1);
+			lr.init();
+			lr.doSteps();
+			assertTrue(lr.getBestSize() <= ac.size());
+			assertEquals(pm.calculate(lr.getBestCore()), lr.getBestScore(), 1e-9);
+		}
+	}
+
+	@Test
+	public void verifyStratifiedSample() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(15, 5, 3);
+		List<Accession> accessions = ac.getAccessions();
+		StratifiedSampler sampler = new StratifiedSampler(new ModifiedRogersDistance(ac.size()));
+		Random rg = new Random(42);
+		for (int k = 1; k < accessions.size(); k++) {
+			List<Accession> sample = sampler.sample(accessions, k, rg);
+			assertEquals(k, sample.size());
+			assertEquals(k, new HashSet<Accession>(sample).size());
+			assertTrue(accessions.containsAll(sample));
+		}
+		// at most k accessions: all of them, in the same order
+		assertEquals(accessions, sampler.sample(accessions, accessions.size(), rg));
+		assertEquals(accessions, sampler.sample(accessions, accessions.size() + 5, rg));
+	}
+
+	@Test
+	public void verifyStratifiedSampleCoversStrata() throws Exception {
+		// three groups of identical accessions, one allele per group
+		AccessionCollection ac = SSRCollections.createHomozygousCollection(12, 1, 3);
+		StratifiedSampler sampler = new StratifiedSampler(new ModifiedRogersDistance(ac.size()));
+		Coverage cv = new Coverage();
+		Random rg = new Random(42);
+		for (int i = 0; i < 10; i++) {
+			List<Accession> sample = sampler.sample(ac.getAccessions(), 3, rg);
+			assertEquals(1.0, cv.calculate(sample), 1e-9);
+		}
+	}
+
+	private PseudoMeasure createMRSHMeasure(AccessionCollection ac) throws Exception {
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(ac.size()), 0.7);
+		pm.addMeasure(new ShannonsDiversity(), 0.3);
+		return pm;
+	}
+}
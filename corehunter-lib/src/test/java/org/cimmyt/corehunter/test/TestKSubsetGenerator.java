@@ -0,0 +1,81 @@
+package org.cimmyt.corehunter.test;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test; 
+import static org.junit.Assert.*; 
+
+import org.cimmyt.corehunter.search.KSubsetGenerator;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestKSubsetGenerator {
+
+	@Test
+	public void verifyPrimitiveSuccessor() throws Exception {
+		int n = 9;
+		for (int k = 1; k <= 5; k++) {
+			KSubsetGenerator ksub = new KSubsetGenerator(k, n);
+			long nr = ksub.getNrOfKSubsets();
+			
+			Integer[] boxed = ksub.first();
+			int[] T = ksub.firstSubset();
+			Set<String> seen = new HashSet<String>();
+			seen.add(asString(T));
+			for (long i = 1; i < nr; i++) {
+				int[] prev = T.clone();
+				ksub.successor(boxed);
+				ksub.successor(T);
+				
+				// same order as the boxed implementation
+				for (int j = 0; j < k; j++) {
+					assertEquals(boxed[j].intValue(), T[j]);
+				}
+				// revolving door: exactly one element swapped
+				assertTrue(contains(prev, ksub.getRemoved()));
+				assertFalse(contains(T, ksub.getRemoved()));
+				assertTrue(contains(T, ksub.getAdded()));
+				assertFalse(contains(prev, ksub.getAdded()));
+				
+				seen.add(asString(T));
+			}
+			// every k-subset generated exactly once
+			assertEquals(nr, seen.size());
+		}
+	}
+	
+	@Test
+	public void verifyUnrank() throws Exception {
+		int n = 10;
+		for (int k = 1; k <= 6; k++) {
+			KSubsetGenerator ksub = new KSubsetGenerator(k, n);
+			long nr = ksub.getNrOfKSubsets();
+			
+			// unranking must follow the successor order
+			int[] T = ksub.firstSubset();
+			for (long rank = 0; rank < nr; rank++) {
+				assertArrayEquals(T, ksub.unrank(rank));
+				ksub.successor(T);
+			}
+		}
+	}
+	
+	private boolean contains(int[] T, int x) {
+		for (int t : T) {
+			if (t == x) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private String asString(int[] T) {
+		StringBuilder sb = new StringBuilder();
+		for (int t : T) {
+			sb.append(t).append(',');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,241 @@
+package org.cimmyt.corehunter.test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.cimmyt.corehunter.*;
+import org.cimmyt.corehunter.measures.*;
+import org.cimmyt.corehunter.search.BestCoreTracker;
+import org.cimmyt.corehunter.search.HeuristicSingleNeighborhood;
+import org.cimmyt.corehunter.search.MultiSwap;
+import org.cimmyt.corehunter.search.MultiSwapNeighborhood;
+import org.cimmyt.corehunter.search.RandomSingleNeighborhood;
+import org.cimmyt.corehunter.search.Replica;
+import org.cimmyt.corehunter.search.SimpleMonteCarloReplica;
+import org.cimmyt.corehunter.search.SingleNeighborhood;
+import org.cimmyt.corehunter.search.TabuList;
+import org.cimmyt.corehunter.search.TabuReplica;
+import org.cimmyt.corehunter.search.VNSReplica;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestNeighborhoods {
+
+	@Test
+	public void verifyParallelScanMatchesSerial() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(12, 5, 3);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(ac.size()), 0.7);
+		pm.addMeasure(new ShannonsDiversity(), 0.3);
+
+		SingleNeighborhood neighborhoods[] = {new RandomSingleNeighborhood(3, 5),
+		                                      new HeuristicSingleNeighborhood(3, 5)};
+		for (SingleNeighborhood serial : neighborhoods) {
+			SingleNeighborhood parallel = (SingleNeighborhood) serial.clone();
+			parallel.setParallelScan(true);
+
+			// with and without tabu removals and additions
+			for (int t = 0; t < 3; t++) {
+				List<Accession> core1 = new ArrayList<Accession>(ac.getAccessions().subList(0, 4));
+				List<Accession> unselected1 = new ArrayList<Accession>(ac.getAccessions().subList(4, ac.size()));
+				List<Accession> core2 = new ArrayList<Accession>(core1);
+				List<Accession> unselected2 = new ArrayList<Accession>(unselected1);
+				TabuList tabu = new TabuList(2);
+				if (t > 0) {
+					tabu.add(core1.get(1));
+					tabu.add(t == 1 ? core1.get(2) : null);
+				}
+
+				String id1 = PseudoMeasure.getUniqueId();
+				String id2 = PseudoMeasure.getUniqueId();
+				double score = pm.calculate(core1, id1);
+				pm.calculate(core2, id2);
+
+				int r1 = serial.genBestNeighbor(core1, unselected1, tabu, score, pm, id1);
+				int r2 = parallel.genBestNeighbor(core2, unselected2, tabu, score, pm, id2);
+				assertEquals(r1, r2);
+				assertEquals(core1, core2);
+				assertEquals(unselected1, unselected2);
+			}
+		}
+	}
+
+	@Test
+	public void verifyTabuList() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(6, 2, 2);
+		List<Accession> acc = ac.getAccessions();
+		TabuList tabu = new TabuList(3);
+
+		// added accessions stay tabu for 'tenure' steps
+		tabu.add(acc.get(0));
+		tabu.add(null);
+		assertTrue(tabu.isTabu(acc.get(0)));
+		assertFalse(tabu.isTabu(acc.get(1)));
+		assertTrue(tabu.isAdditionTabu());
+		tabu.add(acc.get(1));
+		assertEquals(3, tabu.size());
+		tabu.add(acc.get(2));
+		assertEquals(3, tabu.size());
+		assertFalse(tabu.isTabu(acc.get(0)));
+		assertTrue(tabu.isTabu(acc.get(1)));
+		assertTrue(tabu.isAdditionTabu());
+		tabu.add(acc.get(1));
+		assertFalse(tabu.isAdditionTabu());
+
+		// re-adding an accession renews its tenure
+		tabu.add(acc.get(3));
+		tabu.add(acc.get(4));
+		assertTrue(tabu.isTabu(acc.get(1)));
+		assertFalse(tabu.isTabu(acc.get(2)));
+		tabu.add(acc.get(5));
+		assertFalse(tabu.isTabu(acc.get(1)));
+
+		// steps reported by the neighborhood, by index in the core
+		List<Accession> core = new ArrayList<Accession>(acc.subList(0, 3));
+		tabu.clear();
+		assertEquals(0, tabu.size());
+		assertFalse(tabu.isTabu(acc.get(5)));
+		tabu.add(core, 2);
+		core.remove(0);
+		assertTrue(tabu.isTabu(core.get(1)));
+		assertFalse(tabu.isTabu(core.get(0)));
+		tabu.add(core, -1);
+		assertTrue(tabu.isAdditionTabu());
+	}
+
+	@Test
+	public void verifyTrackedBestCores() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(20, 5, 3);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(ac.size()), 0.7);
+		pm.addMeasure(new ShannonsDiversity(), 0.3);
+
+		Replica replicas[] = {new SimpleMonteCarloReplica(ac, pm, new RandomSingleNeighborhood(3, 8), 200, -1, 3, 8, 50.0),
+		                      new TabuReplica(ac, pm, new HeuristicSingleNeighborhood(3, 8), 10, -1, 3, 8, 2)};
+		for (Replica rep : replicas) {
+			rep.init();
+			double prevBest = rep.getBestScore();
+			for (int r = 0; r < 5; r++) {
+				rep.doSteps();
+				// the materialized best core has the best score and size
+				List<Accession> best = rep.getBestCore();
+				assertEquals(rep.getBestSize(), best.size());
+				assertEquals(best.size(), new HashSet<Accession>(best).size());
+				assertEquals(pm.calculate(best), rep.getBestScore(), 1e-9);
+				assertTrue(rep.getBestScore() >= prevBest);
+				prevBest = rep.getBestScore();
+			}
+		}
+	}
+
+	@Test
+	public void verifyTrackedBestCoreAfterDeletionScan() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(5, 5, 3);
+		List<Accession> all = ac.getAccessions();
+		List<Accession> bestCore = new ArrayList<Accession>(all.subList(0, 3));
+
+		BestCoreTracker tracker = new BestCoreTracker();
+		List<Accession> core = tracker.track(bestCore, 1.0);
+		// rejected (non-improving) swap of the last accession
+		core.set(2, all.get(4));
+		assertFalse(tracker.update(0.5));
+		// deletion scan of the single neighborhoods: re-add at the end and
+		// reverse, which briefly holds an accession twice
+		for (int i = core.size() - 1; i >= 0; i--) {
+			core.add(core.remove(i));
+		}
+		Collections.reverse(core);
+
+		List<Accession> best = tracker.getBestCore();
+		assertEquals(tracker.getBestSize(), best.size());
+		assertEquals(new HashSet<Accession>(bestCore), new HashSet<Accession>(best));
+
+		// same when the log outgrows the best core while an accession is
+		// held twice, which materializes the best core in that state
+		tracker = new BestCoreTracker();
+		core = tracker.track(bestCore, 1.0);
+		core.set(2, all.get(4));
+		Collections.swap(core, 0, 1);
+		best = tracker.getBestCore();
+		assertEquals(tracker.getBestSize(), best.size());
+		assertEquals(new HashSet<Accession>(bestCore), new HashSet<Accession>(best));
+	}
+
+	@Test
+	public void verifyMultiSwapNeighborhood() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(20, 5, 3);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(ac.size()), 0.7);
+		pm.addMeasure(new ShannonsDiversity(), 0.3);
+
+		MultiSwapNeighborhood nh = new MultiSwapNeighborhood(4, 8, 3);
+		List<Accession> core = new ArrayList<Accession>(ac.getAccessions().subList(0, 6));
+		List<Accession> unselected = new ArrayList<Accession>(ac.getAccessions().subList(6, ac.size()));
+		String id = PseudoMeasure.getUniqueId();
+		pm.calculate(core, id);
+		for (int i = 0; i < 200; i++) {
+			nh.setK(1 + i % 3);
+			List<Accession> prevCore = new ArrayList<Accession>(core);
+			List<Accession> prevUnselected = new ArrayList<Accession>(unselected);
+
+			// moves exchange at most k accessions, within the size limits
+			MultiSwap move = nh.proposeRandomNeighbor(core, unselected);
+			assertTrue(Math.max(move.nrOfAdded(), move.nrOfRemoved()) <= nh.getK());
+			assertTrue(Math.abs(move.nrOfAdded() - move.nrOfRemoved()) <= 1);
+			List<Accession> added = move.getAdded(unselected);
+			List<Accession> removed = move.getRemoved(core);
+
+			// delta score of the move equals the score of the perturbed core
+			double delta = pm.calculateNeighbor(core, added, removed, id);
+			int addIndex = nh.performPerturbation(core, unselected, move);
+			assertTrue(core.size() >= 4 && core.size() <= 8);
+			assertEquals(ac.size(), core.size() + unselected.size());
+			assertTrue(core.containsAll(added) && unselected.containsAll(removed));
+			if (!added.isEmpty()) {
+				assertTrue(added.contains(core.get(addIndex)));
+			} else {
+				assertEquals(-1, addIndex);
+			}
+			assertEquals(pm.calculate(core), delta, 1e-9);
+
+			if (i % 2 == 0) {
+				// undo restores both lists
+				assertTrue(nh.undoLastPerturbation(core, unselected));
+				assertEquals(prevCore, core);
+				assertEquals(prevUnselected, unselected);
+				pm.calculate(core, id);
+			} else {
+				pm.calculate(core, added, removed, id);
+			}
+		}
+	}
+
+	@Test
+	public void verifyVNSReplica() throws Exception {
+		AccessionCollection ac = SSRCollections.createCollection(30, 5, 3);
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(ac.size()), 0.7);
+		pm.addMeasure(new ShannonsDiversity(), 0.3);
+
+		MultiSwapNeighborhood nh = new MultiSwapNeighborhood(5, 8, 3);
+		nh.setSampleSize(20);
+		VNSReplica rep = new VNSReplica(ac, pm, nh, 100, -1, 5, 8);
+		rep.init();
+		double prevScore = rep.getBestScore();
+		for (int r = 0; r < 5; r++) {
+			rep.doSteps();
+			// only improvements are accepted, and the incremental score is exact
+			List<Accession> best = rep.getBestCore();
+			assertTrue(best.size() >= 5 && best.size() <= 8);
+			assertEquals(pm.calculate(best), rep.getBestScore(), 1e-9);
+			assertTrue(rep.getBestScore() >= prevScore);
+			prevScore = rep.getBestScore();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.cimmyt.corehunter.test;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.cimmyt.corehunter.*;
+import org.cimmyt.corehunter.measures.*;
+import org.cimmyt.corehunter.search.RemoteReplica;
+import org.cimmyt.corehunter.search.RemoteReplicaPool;
+import org.cimmyt.corehunter.search.RemoteReplicaServer;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestRemoteReplicas {
+	private static final double precision = 0.00001;
+
+	@Test
+	public void verifyRemoteReplicasOnLocalWorkers() throws Exception {
+		AccessionCollection ac = createCollection();
+		PseudoMeasure pm = createMeasure();
+		RemoteReplicaPool pool = new RemoteReplicaPool(ac, pm, 0, "secret");
+
+		// each worker loads its own copy of the collection
+		List<Thread> servers = new ArrayList<Thread>();
+		for (int i = 0; i < 2; i++) {
+			final AccessionCollection workerAc = createCollection();
+			final PseudoMeasure workerPm = createMeasure();
+			final int port = pool.getPort();
+			Thread server = new Thread(new Runnable() {
+				public void run() {
+					RemoteReplicaServer.serve(workerAc, workerPm, InetAddress.getLoopbackAddress().getHostAddress(),
+					                          port, "secret");
+				}
+			});
+			server.start();
+			servers.add(server);
+		}
+		pool.acceptWorkers(2);
+		assertEquals(2, pool.size());
+
+		List<Accession> start = new ArrayList<Accession>();
+		start.add(ac.getAccessions().get(0));
+		start.add(ac.getAccessions().get(1));
+
+		RemoteReplica mc = pool.createMonteCarloReplica(pm, 10, 2, 2, 100.0);
+		RemoteReplica tabu = pool.createTabuReplica(pm, 5, 2, 2, 1);
+		RemoteReplica vns = pool.createVNSReplica(pm, 10, 2, 2, 2);
+		mc.init(start);
+		tabu.init(start);
+		vns.init(start);
+		assertEquals(pm.calculate(start), mc.getScore(), precision);
+
+		// run all replicas simultaneously
+		mc.start();
+		tabu.start();
+		vns.start();
+		mc.finish();
+		tabu.finish();
+		vns.finish();
+
+		for (RemoteReplica rep : new RemoteReplica[]{mc, tabu, vns}) {
+			List<Accession> best = rep.getBestCore();
+			assertEquals(2, best.size());
+			assertTrue(ac.getAccessions().containsAll(best));
+			assertEquals(pm.calculate(best), rep.getBestScore(), precision);
+		}
+
+		pool.close();
+		for (Thread server : servers) {
+			server.join(5000);
+			assertFalse(server.isAlive());
+		}
+	}
+
+	@Test
+	public void verifyBadWorkersRejected() throws Exception {
+		AccessionCollection ac = createCollection();
+		final RemoteReplicaPool pool = new RemoteReplicaPool(ac, createMeasure(), 0, "secret");
+		final int port = pool.getPort();
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				pool.acceptWorkers(1);
+			}
+		});
+		acceptor.start();
+
+		// a client that does not speak the protocol is dropped
+		Socket stray = new Socket(InetAddress.getLoopbackAddress(), port);
+		stray.getOutputStream().write(new byte[]{99, 0, 0, 0, 0});
+		stray.getOutputStream().flush();
+		assertEquals(-1, stray.getInputStream().read());
+		stray.close();
+
+		// workers with a wrong secret or different measures are turned away
+		PseudoMeasure otherWeights = new PseudoMeasure();
+		otherWeights.addMeasure(new ModifiedRogersDistance(4), 0.5);
+		otherWeights.addMeasure(new Coverage(), 0.5);
+		Thread wrongSecret = startWorker(createCollection(), createMeasure(), port, "guess");
+		wrongSecret.join(5000);
+		assertFalse(wrongSecret.isAlive());
+		Thread wrongMeasure = startWorker(createCollection(), otherWeights, port, "secret");
+		wrongMeasure.join(5000);
+		assertFalse(wrongMeasure.isAlive());
+		assertTrue(acceptor.isAlive());
+
+		// the search goes on with a valid worker
+		Thread worker = startWorker(createCollection(), createMeasure(), port, "secret");
+		acceptor.join(5000);
+		assertFalse(acceptor.isAlive());
+		assertEquals(1, pool.size());
+
+		pool.close();
+		worker.join(5000);
+		assertFalse(worker.isAlive());
+	}
+
+	private Thread startWorker(final AccessionCollection ac, final PseudoMeasure pm, final int port,
+	                           final String secret) {
+		Thread server = new Thread(new Runnable() {
+			public void run() {
+				RemoteReplicaServer.serve(ac, pm, InetAddress.getLoopbackAddress().getHostAddress(), port, secret);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private PseudoMeasure createMeasure() throws Exception {
+		PseudoMeasure pm = new PseudoMeasure();
+		pm.addMeasure(new ModifiedRogersDistance(4), 0.7);
+		pm.addMeasure(new Coverage(), 0.3);
+		return pm;
+	}
+
+	private AccessionCollection createCollection() throws Exception {
+		Collection<String> accessionNames = new HashSet<String>();
+		accessionNames.add("A1");
+		accessionNames.add("A2");
+		accessionNames.add("A3");
+		accessionNames.add("A4");
+
+		Map<String, List<String>> markersToAlleles = new HashMap<String, List<String>>();
+		markersToAlleles.put("M1", new ArrayList<String>());
+		markersToAlleles.get("M1").add("allele1");
+		markersToAlleles.get("M1").add("allele2");
+		markersToAlleles.get("M1").add("allele3");
+		markersToAlleles.put("M2", new ArrayList<String>());
+		markersToAlleles.get("M2").add("allele1");
+		markersToAlleles.get("M2").add("allele2");
+
+		SSRDataset ssrData = new SSRDataset(accessionNames, markersToAlleles);
+
+		ssrData.setValue("A1", "M1", "allele1", 0.3);
+		ssrData.setValue("A1", "M1", "allele2", 0.2);
+		ssrData.setValue("A1", "M1", "allele3", 0.5);
+		ssrData.setValue("A1", "M2", "allele1", 0.8);
+		ssrData.setValue("A1", "M2", "allele2", 0.2);
+
+		ssrData.setValue("A2", "M1", "allele1", 0.1);
+		ssrData.setValue("A2", "M1", "allele2", 0.0);
+		ssrData.setValue("A2", "M1", "allele3", 0.9);
+		ssrData.setValue("A2", "M2", "allele1", 0.4);
+		ssrData.setValue("A2", "M2", "allele2", 0.6);
+
+		ssrData.setValue("A3", "M1", "allele1", 0.3);
+		ssrData.setValue("A3", "M1", "allele2", 0.3);
+		ssrData.setValue("A3", "M1", "allele3", 0.4);
+		ssrData.setValue("A3", "M2", "allele1", 0.7);
+		ssrData.setValue("A3", "M2", "allele2", 0.3);
+
+		ssrData.setValue("A4", "M1", "allele1", 0.8);
+		ssrData.setValue("A4", "M1", "allele2", 0.0);
+		ssrData.setValue("A4", "M1", "allele3", 0.2);
+		ssrData.setValue("A4", "M2", "allele1", 0.5);
+		ssrData.setValue("A4", "M2", "allele2", 0.5);
+
+		AccessionCollection ac = new AccessionCollection();
+		ac.addDataset(ssrData);
+		return ac;
+	}
+}
@@ -0,0 +1,123 @@
+package org.cimmyt.corehunter.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.cimmyt.corehunter.*;
+import org.cimmyt.corehunter.search.Replica;
+import org.cimmyt.corehunter.search.ReplicaScheduler;
+
+/**
+ * <<Class summary>>
+ *
+ * @author hermandebeukelaer
+ */
+public final class TestReplicaScheduler {
+
+	@Test
+	public void verifyShortRunsInterleavedWithLongRun() throws Exception {
+		ReplicaScheduler scheduler = new ReplicaScheduler(1);
+		try {
+			SlicedReplica longRep = new SlicedReplica(25, null);
+			Future<Void> longFuture = scheduler.submit(longRep, 1.0);
+			List<SlicedReplica> shortReps = new ArrayList<SlicedReplica>();
+			List<Future<Void>> shortFutures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 3; i++) {
+				SlicedReplica rep = new SlicedReplica(1, longRep);
+				shortReps.add(rep);
+				shortFutures.add(scheduler.submit(rep, 1.0));
+			}
+			for (Future<Void> f : shortFutures) {
+				f.get(10, TimeUnit.SECONDS);
+			}
+			// the short runs do not wait until the long run is finished
+			for (SlicedReplica rep : shortReps) {
+				assertTrue(rep.otherSlicesDone < 5);
+			}
+			longFuture.get(10, TimeUnit.SECONDS);
+			assertEquals(25, longRep.slicesDone);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void verifyCpuTimeProportionalToWeight() throws Exception {
+		ReplicaScheduler scheduler = new ReplicaScheduler(1);
+		try {
+			SlicedReplica light = new SlicedReplica(60, null);
+			SlicedReplica heavy = new SlicedReplica(30, light);
+			Future<Void> heavyFuture = scheduler.submit(heavy, 2.0);
+			Future<Void> lightFuture = scheduler.submit(light, 1.0);
+			heavyFuture.get(10, TimeUnit.SECONDS);
+			// about half as many slices for the replica with half the weight
+			assertTrue(heavy.otherSlicesDone >= 8 && heavy.otherSlicesDone <= 22);
+			lightFuture.get(10, TimeUnit.SECONDS);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void verifyFailingSliceCompletesRun() throws Exception {
+		ReplicaScheduler scheduler = new ReplicaScheduler(1);
+		try {
+			SlicedReplica failing = new SlicedReplica(1, null) {
+				public boolean doSlice(long sliceTime) {
+					throw new AssertionError("slice failed");
+				}
+			};
+			try {
+				scheduler.submit(failing, 1.0).get(10, TimeUnit.SECONDS);
+				fail("run of failing replica did not complete exceptionally");
+			} catch (ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof AssertionError);
+			}
+			// the worker is still alive
+			SlicedReplica rep = new SlicedReplica(2, null);
+			scheduler.submit(rep, 1.0).get(10, TimeUnit.SECONDS);
+			assertEquals(2, rep.slicesDone);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Replica whose run takes a fixed nr of slices, each of which sleeps
+	 * for the slice time. Records how many slices another replica had done
+	 * when this replica did its last slice.
+	 */
+	private static class SlicedReplica extends Replica {
+
+		private final int nrOfSlices;
+		private final SlicedReplica other;
+		private volatile int slicesDone;
+		private volatile int otherSlicesDone;
+
+		SlicedReplica(int nrOfSlices, SlicedReplica other) {
+			super("Sliced", new AccessionCollection(), null, null, -1, -1, 0, 0);
+			this.nrOfSlices = nrOfSlices;
+			this.other = other;
+		}
+
+		public void doSteps() {
+		}
+
+		public boolean doSlice(long sliceTime) {
+			try {
+				Thread.sleep(sliceTime);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			slicesDone++;
+			if (other != null) {
+				otherSlicesDone = other.slicesDone;
+			}
+			return slicesDone >= nrOfSlices;
+		}
+	}
+}
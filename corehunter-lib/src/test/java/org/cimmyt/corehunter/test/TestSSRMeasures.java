@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 import java.util.Map;
 import org.junit.Before; 
 import org.junit.Ignore;
@@ -105,4 +106,204 @@ public final class TestSSRMeasures {
 		assertEquals(0.322580592628, mr.calculate(accessions), precision);
 	}
 	
+	@Test
+	public void verifyHEAndNEAllAccessions() throws Exception {
+		assertEquals(0.542430555556, new HeterozygousLociDiversity().calculate(accessions), precision);
+		assertEquals(2.213301981861, new NumberEffectiveAlleles().calculate(accessions), precision);
+	}
+	
+	@Test
+	public void verifySHAllAccessions() throws Exception {
+		assertEquals(1.532901577110, new ShannonsDiversity().calculate(accessions), precision);
+	}
+	
+	@Test
+	public void verifyCachedSH() throws Exception {
+		verifyCachedAgainstFresh(new ShannonsDiversity());
+
+		// long random walk through the delta API, across the periodic exact
+		// reductions and through the empty core
+		Measure sh = new ShannonsDiversity();
+		Random rg = new Random(42);
+		List<Accession> core = new ArrayList<Accession>();
+		core.add(accessions.get(0));
+		sh.calculate(core, "walk");
+		for (int step = 0; step < 20000; step++) {
+			Accession a = accessions.get(rg.nextInt(accessions.size()));
+			List<Accession> added = new ArrayList<Accession>();
+			List<Accession> removed = new ArrayList<Accession>();
+			if (core.contains(a)) {
+				removed.add(a);
+			} else {
+				added.add(a);
+			}
+			double neighbor = sh.calculateNeighbor(core, added, removed, "walk");
+			core.addAll(added);
+			core.removeAll(removed);
+			double score = sh.calculate(core, added, removed, "walk");
+			assertEquals(score, neighbor, 1e-9);
+			if (core.isEmpty()) {
+				assertEquals(0.0, score, 0.0);
+			} else {
+				assertEquals(sh.calculate(core), score, 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void verifyCachedHEAndNE() throws Exception {
+		verifyCachedAgainstFresh(new HeterozygousLociDiversity());
+		verifyCachedAgainstFresh(new NumberEffectiveAlleles());
+		
+		// long walks, across the periodic exact reductions of the loci
+		Measure he = new HeterozygousLociDiversity();
+		Measure ne = new NumberEffectiveAlleles();
+		for (int r = 0; r < 200; r++) {
+			verifyCachedAgainstFresh(he);
+			verifyCachedAgainstFresh(ne);
+		}
+	}
+	
+	@Test
+	public void verifyCachedPNAndCVAgainstAlleleCounts() throws Exception {
+		Measure pn = new ProportionNonInformativeAlleles();
+		Measure cv = new Coverage();
+		int cores[][] = {{1}, {1, 3}, {0, 1, 3}, {2, 3}, {0, 1, 2, 3}, {3}, {1, 3}};
+		for (int c[] : cores) {
+			List<Accession> core = new ArrayList<Accession>();
+			for (int i : c) {
+				core.add(accessions.get(i));
+			}
+			
+			// brute force: count the alleles absent from the core
+			int counts[] = Accession.getAlleleCounts(core);
+			int zeros = 0;
+			for (int count : counts) {
+				if (count == 0) {
+					zeros++;
+				}
+			}
+			double expected = (double)zeros / (double)counts.length;
+			
+			assertEquals(expected, pn.calculate(core, "cached"), precision);
+			assertEquals(1.0 - expected, cv.calculate(core, "cached"), precision);
+		}
+	}
+	
+	@Test
+	public void verifyDeltaAgainstFresh() throws Exception {
+		Measure measures[] = {new HeterozygousLociDiversity(), new NumberEffectiveAlleles(),
+		                      new ShannonsDiversity(), new ProportionNonInformativeAlleles(),
+		                      new Coverage(), new ModifiedRogersDistance(4),
+		                      new ModifiedRogersDistance(4, DistanceMeasureType.MIN_DISTANCE)};
+		for (Measure m : measures) {
+			List<Accession> core = new ArrayList<Accession>();
+			core.add(accessions.get(0));
+			core.add(accessions.get(1));
+			m.calculate(core, "delta");
+			
+			// swap A1 for A3, then add A4, then remove A2
+			int moves[][] = {{2, 0}, {3, -1}, {-1, 1}};
+			for (int move[] : moves) {
+				List<Accession> added = new ArrayList<Accession>();
+				List<Accession> removed = new ArrayList<Accession>();
+				if (move[0] >= 0) {
+					added.add(accessions.get(move[0]));
+				}
+				if (move[1] >= 0) {
+					removed.add(accessions.get(move[1]));
+				}
+				core.removeAll(removed);
+				core.addAll(added);
+				assertEquals(m.getName(), m.calculate(core), m.calculate(core, added, removed, "delta"), precision);
+			}
+		}
+	}
+	
+	@Test
+	public void verifyNeighborsAgainstFresh() throws Exception {
+		Measure measures[] = {new HeterozygousLociDiversity(), new NumberEffectiveAlleles(),
+		                      new ShannonsDiversity(), new ProportionNonInformativeAlleles(),
+		                      new Coverage(), new ModifiedRogersDistance(4),
+		                      new ModifiedRogersDistance(4, DistanceMeasureType.MIN_DISTANCE)};
+		for (Measure m : measures) {
+			List<Accession> core = new ArrayList<Accession>(accessions.subList(0, 3));
+			double score = m.calculate(core, "neighbor");
+
+			// swap each accession for A4, remove each accession, add A4
+			for (int i = -1; i < core.size(); i++) {
+				for (int add = 0; add < 2; add++) {
+					List<Accession> added = new ArrayList<Accession>();
+					List<Accession> removed = new ArrayList<Accession>();
+					if (add == 1) {
+						added.add(accessions.get(3));
+					}
+					if (i >= 0) {
+						removed.add(core.get(i));
+					}
+					List<Accession> neighbor = new ArrayList<Accession>(core);
+					neighbor.removeAll(removed);
+					neighbor.addAll(added);
+					if (neighbor.size() < 2) {
+						continue;
+					}
+					assertEquals(m.getName(), m.calculate(neighbor),
+					             m.calculateNeighbor(core, added, removed, "neighbor"), precision);
+				}
+			}
+			// the cached core is left untouched
+			assertEquals(m.getName(), score, m.calculate(core, new ArrayList<Accession>(),
+			                                             new ArrayList<Accession>(), "neighbor"), precision);
+		}
+	}
+
+	@Test
+	public void verifyBoundsAdmissible() throws Exception {
+		Measure measures[] = {new HeterozygousLociDiversity(), new NumberEffectiveAlleles(),
+		                      new ShannonsDiversity(), new ProportionNonInformativeAlleles(),
+		                      new Coverage(), new ModifiedRogersDistance(4),
+		                      new ModifiedRogersDistance(4, DistanceMeasureType.MIN_DISTANCE)};
+		List<Accession> selected = new ArrayList<Accession>();
+		selected.add(accessions.get(0));
+		List<Accession> candidates = accessions.subList(1, accessions.size());
+		
+		// every core of size 3 containing A1 completes A1 with two of A2, A3, A4
+		int completions[][] = {{1, 2}, {1, 3}, {2, 3}};
+		for (Measure m : measures) {
+			double bound = m.getBound(selected, candidates, 3);
+			for (int c[] : completions) {
+				List<Accession> core = new ArrayList<Accession>(selected);
+				for (int i : c) {
+					core.add(accessions.get(i));
+				}
+				double score = m.calculate(core);
+				// bounds with data precomputed for all accessions
+				double searchBound = m.getBound(selected, candidates, 3, "bound");
+				if (m.isMinimizing()) {
+					assertTrue(m.getName(), bound <= score + precision);
+					assertTrue(m.getName(), searchBound <= score + precision);
+				} else {
+					assertTrue(m.getName(), bound >= score - precision);
+					assertTrue(m.getName(), searchBound >= score - precision);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Walk a cached measure through a sequence of cores (including moves that
+	 * add and remove the accession with a missing marker) and compare each
+	 * score to the one computed from scratch.
+	 */
+	private void verifyCachedAgainstFresh(Measure m) throws Exception {
+		int cores[][] = {{0, 1}, {0, 1, 2}, {1, 2, 3}, {0, 2, 3}, {0, 1, 2, 3}, {2, 3}, {0, 3}, {0, 1, 2, 3}};
+		String id = "cached";
+		for (int c[] : cores) {
+			List<Accession> core = new ArrayList<Accession>();
+			for (int i : c) {
+				core.add(accessions.get(i));
+			}
+			assertEquals(m.calculate(core), m.calculate(core, id), precision);
+		}
+	}
 }